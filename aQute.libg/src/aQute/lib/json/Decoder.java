@@ -9,8 +9,12 @@ import java.util.zip.*;
 import aQute.lib.converter.*;
 
 public class Decoder implements Closeable {
+	final static int	BUFFER_SIZE	= 8192;
 	final JSONCodec		codec;
 	Reader				reader;
+	final char[]		buffer		= new char[BUFFER_SIZE];
+	int					position;
+	int					limit;
 	int					current;
 	MessageDigest		digest;
 	Map<String,Object>	extra;
@@ -48,6 +52,7 @@ public class Decoder implements Closeable {
 
 	public Decoder from(Reader in) throws Exception {
 		reader = in;
+		position = limit = 0;
 		read();
 		return this;
 	}
@@ -119,8 +124,94 @@ public class Decoder implements Closeable {
 		return this;
 	}
 	
+	/**
+	 * Iterate over the elements of an array without holding the whole array
+	 * in memory, the elements are decoded one at a time when they are
+	 * requested. This is intended for large top level arrays. The iterator
+	 * throws an IllegalArgumentException when the input is not a valid array
+	 * and wraps any other exception in a RuntimeException. When the end of
+	 * the array is reached the decoder is closed unless {@link #keepOpen()}
+	 * was called.
+	 * 
+	 * @param type
+	 *            the type of the elements
+	 */
+	public <T> Iterator<T> iterator(final Type type) throws Exception {
+		if (skipWs() != '[')
+			throw new IllegalArgumentException("Expected an array but got " + (char) current());
+		next();
+
+		return new Iterator<T>() {
+			boolean	done;
+
+			public boolean hasNext() {
+				if (done)
+					return false;
+
+				try {
+					int c = skipWs();
+					if (c == ']') {
+						done = true;
+						read(); // skip closing
+						if (!keepOpen)
+							close();
+						return false;
+					}
+					if (JSONCodec.START_CHARACTERS.indexOf(c) < 0)
+						throw new IllegalArgumentException(
+								"Invalid character in parsing list, expected a value or ] but found " + (char) c);
+					return true;
+				}
+				catch (RuntimeException e) {
+					throw e;
+				}
+				catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+			}
+
+			@SuppressWarnings("unchecked")
+			public T next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+
+				try {
+					T value = (T) codec.decode(type, Decoder.this);
+					int c = skipWs();
+					if (c == ',')
+						Decoder.this.next();
+					else if (c != ']')
+						throw new IllegalArgumentException(
+								"Invalid character in parsing list, expected ] or , but found " + (char) c);
+					return value;
+				}
+				catch (RuntimeException e) {
+					throw e;
+				}
+				catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
 	int read() throws Exception {
-		current = reader.read();
+		if (position < limit)
+			current = buffer[position++];
+		else {
+			limit = reader.read(buffer, 0, buffer.length);
+			if (limit > 0) {
+				position = 1;
+				current = buffer[0];
+			} else {
+				limit = position = 0;
+				current = -1;
+			}
+		}
 		if (digest != null) {
 			digest.update((byte) (current / 256));
 			digest.update((byte) (current % 256));
@@ -3,6 +3,7 @@ package aQute.lib.json;
 import java.io.*;
 import java.lang.reflect.*;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.regex.*;
 
 /**
@@ -42,6 +43,7 @@ public class JSONCodec {
 
 	// Handlers
 	private final static WeakHashMap<Type,Handler>	handlers			= new WeakHashMap<Type,Handler>();
+	private final static ConcurrentMap<Type,Handler>	localHandlers		= new ConcurrentHashMap<Type,Handler>();
 	private static StringHandler					sh					= new StringHandler();
 	private static BooleanHandler					bh					= new BooleanHandler();
 	private static CharacterHandler					ch					= new CharacterHandler();
@@ -137,7 +139,10 @@ public class JSONCodec {
 				return byteh;
 		}
 		
-		Handler h;
+		Handler h = localHandlers.get(type);
+		if (h != null)
+			return h;
+
 		synchronized (handlers) {
 			h = handlers.get(type);
 		}
@@ -213,14 +218,45 @@ public class JSONCodec {
 			} else
 				throw new IllegalArgumentException("Found a parameterized type that is not a map or collection");
 		}
-		synchronized (handlers) {
-			// We might actually have duplicates
-			// but who cares? They should be identical
-			handlers.put(type, h);
-		}
+		// We might actually have duplicates
+		// but who cares? They should be identical
+		if (isLocal(type))
+			localHandlers.put(type, h);
+		else
+			synchronized (handlers) {
+				handlers.put(type, h);
+			}
 		return h;
 	}
 
+	/*
+	 * Types that only refer to classes of our own class loader or the boot
+	 * class loader cannot be unloaded while this class is loaded. Their
+	 * handlers are kept in a map that is read without locking, the handlers
+	 * of other types are kept weakly.
+	 */
+	private static boolean isLocal(Type type) {
+		if (type instanceof Class) {
+			ClassLoader loader = ((Class< ? >) type).getClassLoader();
+			return loader == null || loader == JSONCodec.class.getClassLoader();
+		}
+
+		if (type instanceof ParameterizedType) {
+			ParameterizedType pt = (ParameterizedType) type;
+			if (!isLocal(pt.getRawType()))
+				return false;
+			for (Type argument : pt.getActualTypeArguments())
+				if (!isLocal(argument))
+					return false;
+			return true;
+		}
+
+		if (type instanceof GenericArrayType)
+			return isLocal(((GenericArrayType) type).getGenericComponentType());
+
+		return false;
+	}
+
 	Object decode(Type type, Decoder isr) throws Exception {
 		int c = isr.skipWs();
 		Handler h;
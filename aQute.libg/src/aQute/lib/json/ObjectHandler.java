@@ -10,6 +10,7 @@ public class ObjectHandler extends Handler {
 	final Type		types[];
 	final Object	defaults[];
 	final Field		extra;
+	final Map<String,Field>	index	= new HashMap<String,Field>();
 
 	ObjectHandler(@SuppressWarnings("unused") JSONCodec codec, Class< ? > c) throws Exception {
 		rawClass = c;
@@ -30,6 +31,14 @@ public class ObjectHandler extends Handler {
 			if (fields[i].getName().equals("__extra"))
 				x = fields[i];
 			types[i] = fields[i].getGenericType();
+			index.put(fields[i].getName(), fields[i]);
+			try {
+				// Skip the access check on every get and set
+				fields[i].setAccessible(true);
+			}
+			catch (SecurityException e) {
+				// Ignore
+			}
 		}
 		if (x != null && Map.class.isAssignableFrom(x.getType()))
 			extra = x;
@@ -144,14 +153,7 @@ public class ObjectHandler extends Handler {
 	}
 
 	private Field getField(String key) {
-		for (int i = 0; i < fields.length; i++) {
-			int n = key.compareTo(fields[i].getName());
-			if (n == 0)
-				return fields[i];
-			if (n < 0)
-				return null;
-		}
-		return null;
+		return index.get(key);
 	}
 
 }
@@ -3,7 +3,9 @@ package aQute.libg.cafs;
 import static aQute.lib.io.IO.*;
 
 import java.io.*;
+import java.nio.*;
 import java.nio.channels.*;
+import java.nio.channels.FileChannel.MapMode;
 import java.security.*;
 import java.util.*;
 import java.util.concurrent.atomic.*;
@@ -21,6 +23,10 @@ import aQute.libg.cryptography.*;
  * naming scheme. An added advantage is that it is always easy to verify you get
  * the right stuff. The SHA-1 Content Addressable File Store is the core
  * underlying idea in Git.
+ * <p>
+ * Readers do not lock, they read the entries from a memory mapped view of the
+ * store. Writers compress the content outside any lock and are only serialized
+ * while the entry is appended to the store and inserted in the index.
  */
 public class CAFS implements Closeable, Iterable<SHA1> {
 	final static byte[]	CAFS;
@@ -36,12 +42,36 @@ public class CAFS implements Closeable, Iterable<SHA1> {
 												+ KEYLENGTH // key
 												+ 2 // header checksum
 										;
+	/**
+	 * Compressed content up to this size is kept in memory before it is
+	 * appended to the store, larger content is spooled to a temporary file.
+	 */
+	final static int	SPOOLTHRESHOLD	= 64 * 1024;
 
 	final File			home;
 	Index				index;
 	RandomAccessFile	store;
 	FileChannel			channel;
 
+	/**
+	 * Guards the index, the index pages are cached and not thread safe
+	 */
+	final Object		indexLock		= new Object();
+
+	/**
+	 * Serializes the writers around the append to the store
+	 */
+	final Object		writeLock		= new Object();
+
+	/**
+	 * Read only view of the store. It is only remapped when an entry is read
+	 * beyond the mapped part and the store has at least doubled since it was
+	 * mapped, the mappings that are replaced stay until they are collected.
+	 * Entries that lie beyond the mapped part otherwise, or in a store too large
+	 * to be mapped, are read with positional reads.
+	 */
+	volatile MappedByteBuffer	mapped;
+
 	static {
 		try {
 		CAFS = "CAFS".getBytes("UTF-8");
@@ -106,54 +136,64 @@ public class CAFS implements Closeable, Iterable<SHA1> {
 		Deflater deflater = new Deflater();
 		MessageDigest md = MessageDigest.getInstance(ALGORITHM);
 		DigestInputStream din = new DigestInputStream(in, md);
-		ByteArrayOutputStream bout = new ByteArrayOutputStream();
-		DeflaterOutputStream dout = new DeflaterOutputStream(bout, deflater);
-		copy(din, dout);
+		Spool spool = new Spool();
+		try {
+			DeflaterOutputStream dout = new DeflaterOutputStream(spool, deflater);
+			copy(din, dout);
+			dout.finish();
 
-		synchronized (store) {
-			// First check if it already exists
 			SHA1 sha1 = new SHA1(md.digest());
-
-			long search = index.search(sha1.digest());
-			if (search > 0)
+			if (search(sha1.digest()) >= 0)
 				return sha1;
 
-			byte[] compressed = bout.toByteArray();
-
-			// we need to append this file to our store,
-			// which requires a lock. However, we are in a race
-			// so others can get the lock between us getting
-			// the length and someone else getting the lock.
-			// So we must verify after we get the lock that the
-			// length was unchanged.
-			FileLock lock = null;
-			try {
-				long insertPoint;
-				int recordLength = compressed.length + HEADERLENGTH;
-
-				while (true) {
-					insertPoint = store.length();
-					lock = channel.lock(insertPoint, recordLength, false);
-
-					if (store.length() == insertPoint)
-						break;
-
-					// We got the wrong lock, someone else
-					// got in between reading the length
-					// and locking
-					lock.release();
+			if (spool.size() > Integer.MAX_VALUE - HEADERLENGTH)
+				throw new IOException("Content is too large to store: " + sha1);
+
+			synchronized (writeLock) {
+				// Check again, another thread could have stored it
+				// since we searched
+				if (search(sha1.digest()) >= 0)
+					return sha1;
+
+				// we need to append this file to our store,
+				// which requires a lock. However, we are in a race
+				// so others can get the lock between us getting
+				// the length and someone else getting the lock.
+				// So we must verify after we get the lock that the
+				// length was unchanged.
+				FileLock lock = null;
+				try {
+					long insertPoint;
+					long recordLength = spool.size() + HEADERLENGTH;
+
+					while (true) {
+						insertPoint = channel.size();
+						lock = channel.lock(insertPoint, recordLength, false);
+
+						if (channel.size() == insertPoint)
+							break;
+
+						// We got the wrong lock, someone else
+						// got in between reading the length
+						// and locking
+						lock.release();
+					}
+					update(insertPoint, sha1.digest(), spool, deflater.getTotalIn());
+					synchronized (indexLock) {
+						index.insert(sha1.digest(), insertPoint);
+					}
+					return sha1;
+				}
+				finally {
+					if (lock != null)
+						lock.release();
 				}
-				int totalLength = deflater.getTotalIn();
-				store.seek(insertPoint);
-				update(sha1.digest(), compressed, totalLength);
-				index.insert(sha1.digest(), insertPoint);
-				return sha1;
-			}
-			finally {
-				if (lock != null)
-					lock.release();
 			}
 		}
+		finally {
+			spool.delete();
+			deflater.end();
+		}
 	}
 
 	/**
@@ -165,48 +205,46 @@ public class CAFS implements Closeable, Iterable<SHA1> {
 	 * @throws Exception
 	 */
 	public InputStream read(final SHA1 sha1) throws Exception {
-		synchronized (store) {
-			long offset = index.search(sha1.digest());
-			if (offset < 0)
-				return null;
-
-			byte[] readSha1;
-			byte[] buffer;
-			store.seek(offset);
-			if (!verifySignature(store, CAFE))
-				throw new IllegalArgumentException("No signature");
-
-			int flags = store.readInt();
-			int compressedLength = store.readInt();
-			int uncompressedLength = store.readInt();
-			readSha1 = new byte[KEYLENGTH];
-			store.read(readSha1);
-			SHA1 rsha1 = new SHA1(readSha1);
-
-			if (!sha1.equals(rsha1))
-				throw new IOException("SHA1 read and asked mismatch: " + sha1 + " " + rsha1);
-
-			short crc = store.readShort(); // Read CRC
-			if (crc != checksum(flags, compressedLength, uncompressedLength, readSha1))
-				throw new IllegalArgumentException("Invalid header checksum: " + sha1);
-
-			buffer = new byte[compressedLength];
-			store.readFully(buffer);
-			return getSha1Stream(sha1, buffer, uncompressedLength);
-		}
+		long offset = search(sha1.digest());
+		if (offset < 0)
+			return null;
+
+		ByteBuffer header = view(offset, HEADERLENGTH);
+		if (!verifySignature(header, CAFE))
+			throw new IllegalArgumentException("No signature");
+
+		int flags = header.getInt();
+		int compressedLength = header.getInt();
+		int uncompressedLength = header.getInt();
+		byte[] readSha1 = new byte[KEYLENGTH];
+		header.get(readSha1);
+		SHA1 rsha1 = new SHA1(readSha1);
+
+		if (!sha1.equals(rsha1))
+			throw new IOException("SHA1 read and asked mismatch: " + sha1 + " " + rsha1);
+
+		short crc = header.getShort(); // Read CRC
+		if (crc != checksum(flags, compressedLength, uncompressedLength, readSha1))
+			throw new IllegalArgumentException("Invalid header checksum: " + sha1);
+
+		ByteBuffer data = view(offset + HEADERLENGTH, compressedLength);
+		return getSha1Stream(sha1, new ByteBufferInputStream(data), uncompressedLength);
 	}
 
 	public boolean exists(byte[] sha1) throws Exception {
-		return index.search(sha1) >= 0;
+		return search(sha1) >= 0;
 	}
 
-	public void reindex() throws Exception {
-		long length;
-		synchronized (store) {
-			length = store.length();
-			if (length < 0x100)
-				throw new IllegalArgumentException("Store file is too small, need to be at least 256 bytes: " + store);
+	private long search(byte[] sha1) throws Exception {
+		synchronized (indexLock) {
+			return index.search(sha1);
 		}
+	}
+
+	public void reindex() throws Exception {
+		long length = channel.size();
+		if (length < 0x100)
+			throw new IllegalArgumentException("Store file is too small, need to be at least 256 bytes: " + store);
 
 		RandomAccessFile in = new RandomAccessFile(new File(home, STOREFILE), "r");
 		try {
@@ -225,7 +263,7 @@ public class CAFS implements Closeable, Iterable<SHA1> {
 				index.insert(sha1.digest(), entry);
 			}
 
-			synchronized (store) {
+			synchronized (indexLock) {
 				index.close();
 				File indexFile = new File(home, INDEXFILE);
 				ixf.renameTo(indexFile);
@@ -238,12 +276,15 @@ public class CAFS implements Closeable, Iterable<SHA1> {
 	}
 
 	public void close() throws IOException {
-		synchronized (store) {
-			try {
-				store.close();
-			}
-			finally {
-				index.close();
+		synchronized (writeLock) {
+			synchronized (indexLock) {
+				mapped = null;
+				try {
+					store.close();
+				}
+				finally {
+					index.close();
+				}
 			}
 		}
 	}
@@ -261,10 +302,11 @@ public class CAFS implements Closeable, Iterable<SHA1> {
 		in.readFully(key);
 		SHA1 sha1 = new SHA1(key);
 
+		/* short crc = */in.readShort();
 		byte[] buffer = new byte[compressedSize];
 		in.readFully(buffer);
 
-		InputStream xin = getSha1Stream(sha1, buffer, uncompressedSize);
+		InputStream xin = getSha1Stream(sha1, new ByteArrayInputStream(buffer), uncompressedSize);
 		xin.skip(uncompressedSize);
 		xin.close();
 		return sha1;
@@ -276,8 +318,53 @@ public class CAFS implements Closeable, Iterable<SHA1> {
 		return Arrays.equals(read, org);
 	}
 
-	private InputStream getSha1Stream(final SHA1 sha1, byte[] buffer, final int total) throws NoSuchAlgorithmException {
-		ByteArrayInputStream in = new ByteArrayInputStream(buffer);
+	private boolean verifySignature(ByteBuffer bb, byte[] org) {
+		byte[] read = new byte[org.length];
+		bb.get(read);
+		return Arrays.equals(read, org);
+	}
+
+	/**
+	 * Answer a buffer with a part of the store. The buffer is a slice of the
+	 * mapped store when possible so reading does not copy or lock.
+	 */
+	private ByteBuffer view(long position, int length) throws IOException {
+		MappedByteBuffer m = mapped;
+		if (m == null || position + length > m.capacity())
+			m = remap(position + length);
+
+		if (m != null) {
+			ByteBuffer bb = m.duplicate();
+			bb.limit((int) position + length);
+			bb.position((int) position);
+			return bb.slice();
+		}
+
+		ByteBuffer bb = ByteBuffer.allocate(length);
+		while (bb.hasRemaining()) {
+			if (channel.read(bb, position + bb.position()) < 0)
+				throw new EOFException("Store ends before " + (position + length));
+		}
+		bb.flip();
+		return bb;
+	}
+
+	private synchronized MappedByteBuffer remap(long required) throws IOException {
+		MappedByteBuffer m = mapped;
+		if (m != null && required <= m.capacity())
+			return m;
+
+		long size = channel.size();
+		if (size > Integer.MAX_VALUE || required > size)
+			return null;
+
+		if (m != null && size < 2L * m.capacity())
+			return null;
+
+		return mapped = channel.map(MapMode.READ_ONLY, 0, size);
+	}
+
+	private InputStream getSha1Stream(final SHA1 sha1, InputStream in, final int total) throws NoSuchAlgorithmException {
 		InflaterInputStream iin = new InflaterInputStream(in) {
 			int					count		= 0;
 			final MessageDigest	digestx		= MessageDigest.getInstance(ALGORITHM);
@@ -331,27 +418,33 @@ public class CAFS implements Closeable, Iterable<SHA1> {
 	}
 
 	/**
-	 * Update a record in the store, assuming the store is at the right
-	 * position.
+	 * Write a record to the store at the given position.
 	 * 
+	 * @param position
+	 *            The position of the record
 	 * @param sha1
 	 *            The checksum
 	 * @param compressed
-	 *            The compressed length
+	 *            The compressed content
 	 * @param totalLength
 	 *            The uncompressed length
 	 * @throws IOException
 	 *             The exception
 	 */
-	private void update(byte[] sha1, byte[] compressed, int totalLength) throws IOException {
-		// System.err.println("pos: " + store.getFilePointer());
-		store.write(CAFE); // 00-03 Signature
-		store.writeInt(0); // 04-07 Flags for the future
-		store.writeInt(compressed.length); // 08-11 Length deflated data
-		store.writeInt(totalLength); // 12-15 Length
-		store.write(sha1); // 16-35
-		store.writeShort(checksum(0, compressed.length, totalLength, sha1));
-		store.write(compressed);
+	private void update(long position, byte[] sha1, Spool compressed, int totalLength) throws IOException {
+		int compressedLength = (int) compressed.size();
+		ByteBuffer header = ByteBuffer.allocate(HEADERLENGTH);
+		header.put(CAFE); // 00-03 Signature
+		header.putInt(0); // 04-07 Flags for the future
+		header.putInt(compressedLength); // 08-11 Length deflated data
+		header.putInt(totalLength); // 12-15 Length
+		header.put(sha1); // 16-35
+		header.putShort(checksum(0, compressedLength, totalLength, sha1));
+		header.flip();
+		while (header.hasRemaining())
+			channel.write(header, position + header.position());
+
+		compressed.transferTo(channel, position + HEADERLENGTH);
 		channel.force(false);
 	}
 
@@ -379,40 +472,34 @@ public class CAFS implements Closeable, Iterable<SHA1> {
 			long	position	= 0x100;
 
 			public boolean hasNext() {
-				synchronized (store) {
-					try {
-						return position < store.length();
-					}
-					catch (IOException e) {
-						throw new RuntimeException(e);
-					}
+				try {
+					return position < channel.size();
+				}
+				catch (IOException e) {
+					throw new RuntimeException(e);
 				}
 			}
 
 			public SHA1 next() {
-				synchronized (store) {
-					try {
-						store.seek(position);
-						byte[] signature = new byte[4];
-						store.readFully(signature);
-						if (!Arrays.equals(CAFE, signature))
-							throw new IllegalArgumentException("No signature");
-
-						int flags = store.readInt();
-						int compressedLength = store.readInt();
-						int totalLength = store.readInt();
-						byte[] sha1 = new byte[KEYLENGTH];
-						store.readFully(sha1);
-						short crc = store.readShort();
-						if (crc != checksum(flags, compressedLength, totalLength, sha1))
-							throw new IllegalArgumentException("Header checksum fails");
-
-						position += HEADERLENGTH + compressedLength;
-						return new SHA1(sha1);
-					}
-					catch (IOException e) {
-						throw new RuntimeException(e);
-					}
+				try {
+					ByteBuffer header = view(position, HEADERLENGTH);
+					if (!verifySignature(header, CAFE))
+						throw new IllegalArgumentException("No signature");
+
+					int flags = header.getInt();
+					int compressedLength = header.getInt();
+					int totalLength = header.getInt();
+					byte[] sha1 = new byte[KEYLENGTH];
+					header.get(sha1);
+					short crc = header.getShort();
+					if (crc != checksum(flags, compressedLength, totalLength, sha1))
+						throw new IllegalArgumentException("Header checksum fails");
+
+					position += HEADERLENGTH + compressedLength;
+					return new SHA1(sha1);
+				}
+				catch (IOException e) {
+					throw new RuntimeException(e);
 				}
 			}
 
@@ -423,8 +510,112 @@ public class CAFS implements Closeable, Iterable<SHA1> {
 	}
 
 	public boolean isEmpty() throws IOException {
-		synchronized (store) {
-			return store.getFilePointer() <= 256;
+		return channel.size() <= 0x100;
+	}
+
+	/**
+	 * Holds the compressed content until it is appended to the store. Small
+	 * content is kept in memory, when the content exceeds the
+	 * {@link #SPOOLTHRESHOLD} it is written to a temporary file in the home
+	 * directory so large entries are never buffered as a whole.
+	 */
+	class Spool extends OutputStream {
+		final ByteArrayOutputStream	buffer	= new ByteArrayOutputStream();
+		File						file;
+		OutputStream				out		= buffer;
+		long						size;
+
+		@Override
+		public void write(int b) throws IOException {
+			spill(1);
+			out.write(b);
+			size++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			spill(len);
+			out.write(b, off, len);
+			size += len;
+		}
+
+		private void spill(int len) throws IOException {
+			if (file != null || size + len <= SPOOLTHRESHOLD)
+				return;
+
+			file = File.createTempFile("cafs", ".tmp", home);
+			out = new BufferedOutputStream(new FileOutputStream(file));
+			buffer.writeTo(out);
+			buffer.reset();
+		}
+
+		@Override
+		public void close() throws IOException {
+			out.close();
+		}
+
+		long size() {
+			return size;
+		}
+
+		void transferTo(FileChannel target, long position) throws IOException {
+			if (file == null) {
+				ByteBuffer bb = ByteBuffer.wrap(buffer.toByteArray());
+				while (bb.hasRemaining())
+					target.write(bb, position + bb.position());
+				return;
+			}
+
+			out.close();
+			FileInputStream in = new FileInputStream(file);
+			try {
+				FileChannel source = in.getChannel();
+				long done = 0;
+				while (done < size)
+					done += target.transferFrom(source, position + done, size - done);
+			}
+			finally {
+				in.close();
+			}
+		}
+
+		void delete() throws IOException {
+			if (file != null) {
+				out.close();
+				file.delete();
+			}
+		}
+	}
+
+	/**
+	 * An input stream on a (mapped) byte buffer
+	 */
+	static class ByteBufferInputStream extends InputStream {
+		final ByteBuffer	bb;
+
+		ByteBufferInputStream(ByteBuffer bb) {
+			this.bb = bb;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (!bb.hasRemaining())
+				return -1;
+			return bb.get() & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (!bb.hasRemaining())
+				return -1;
+			len = Math.min(len, bb.remaining());
+			bb.get(b, off, len);
+			return len;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return bb.remaining();
 		}
 	}
 }
@@ -165,6 +165,45 @@ public class JSONTest extends TestCase {
 		assertEquals("\"Hello\"", new String(bout.toByteArray()));
 	}
 
+	/**
+	 * Iterate over a large array, the input crosses the decoder buffer many
+	 * times.
+	 */
+	public void testIterator() throws Exception {
+		List<Person> persons = new ArrayList<Person>();
+		for (int i = 0; i < 2000; i++) {
+			Person p = new Person();
+			p.name = "Person " + i;
+			p.sex = i % 2 == 0 ? Sex.MALE : Sex.FEMALE;
+			persons.add(p);
+		}
+		String s = codec.enc().put(persons).toString();
+		assertTrue(s.length() > 5 * Decoder.BUFFER_SIZE);
+
+		Iterator<Person> it = codec.dec().from(new ByteArrayInputStream(s.getBytes("UTF-8"))).iterator(Person.class);
+		int n = 0;
+		while (it.hasNext()) {
+			Person p = it.next();
+			assertEquals("Person " + n, p.name);
+			assertEquals(n % 2 == 0 ? Sex.MALE : Sex.FEMALE, p.sex);
+			n++;
+		}
+		assertEquals(2000, n);
+
+		Iterator<Object> empty = codec.dec().from(" [ ] ").iterator(Object.class);
+		assertFalse(empty.hasNext());
+
+		try {
+			Iterator<Object> bad = codec.dec().from("[1,2 3]").iterator(Integer.class);
+			assertEquals(1, bad.next());
+			bad.next();
+			fail("Expected an invalid character");
+		}
+		catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
 	/**
 	 * Test maps
 	 * 
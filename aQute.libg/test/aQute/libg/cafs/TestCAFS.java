@@ -1,8 +1,13 @@
 package aQute.libg.cafs;
 
 import java.io.*;
+import java.security.*;
+import java.util.*;
+import java.util.concurrent.*;
 
 import junit.framework.*;
+import aQute.lib.io.*;
+import aQute.libg.cryptography.*;
 
 public class TestCAFS extends TestCase {
 	File	tmp;
@@ -15,6 +20,113 @@ public class TestCAFS extends TestCase {
 
 	public void testX() {}
 
+	/**
+	 * Write small and large (spooled) entries from several threads while
+	 * reading them back, then reopen the store.
+	 */
+	public void testConcurrent() throws Exception {
+		File dir = new File(tmp, getClass().getName() + System.currentTimeMillis());
+		try {
+			final CAFS cafs = new CAFS(dir, true);
+			final List<byte[]> contents = new ArrayList<byte[]>();
+			Random random = new Random(42);
+			for (int i = 0; i < 20; i++) {
+				byte[] content = new byte[i % 2 == 0 ? 100 + i : CAFS.SPOOLTHRESHOLD * 3 + i];
+				random.nextBytes(content);
+				contents.add(content);
+			}
+
+			ExecutorService executor = Executors.newFixedThreadPool(4);
+			try {
+				List<Future<SHA1>> futures = new ArrayList<Future<SHA1>>();
+				for (int i = 0; i < 40; i++) {
+					final byte[] content = contents.get(i % contents.size());
+					futures.add(executor.submit(new Callable<SHA1>() {
+						public SHA1 call() throws Exception {
+							SHA1 sha1 = cafs.write(new ByteArrayInputStream(content));
+							assertTrue(Arrays.equals(content, read(cafs.read(sha1))));
+							return sha1;
+						}
+					}));
+				}
+				for (int i = 0; i < futures.size(); i++)
+					assertEquals(sha1(contents.get(i % contents.size())), futures.get(i).get());
+			}
+			finally {
+				executor.shutdown();
+			}
+
+			int n = 0;
+			for (SHA1 key : cafs) {
+				assertNotNull(cafs.read(key));
+				n++;
+			}
+			assertEquals(contents.size(), n);
+			cafs.close();
+
+			CAFS reopened = new CAFS(dir, false);
+			try {
+				assertFalse(reopened.isEmpty());
+				for (byte[] content : contents)
+					assertTrue(Arrays.equals(content, read(reopened.read(sha1(content)))));
+				assertEquals(0, dir.list(new FilenameFilter() {
+					public boolean accept(File d, String name) {
+						return name.endsWith(".tmp");
+					}
+				}).length);
+			}
+			finally {
+				reopened.close();
+			}
+		}
+		finally {
+			IO.delete(dir);
+		}
+	}
+
+	/**
+	 * Appending and reading back entries must not map the store once per
+	 * append.
+	 */
+	public void testRemap() throws Exception {
+		File dir = new File(tmp, getClass().getName() + System.currentTimeMillis());
+		try {
+			CAFS cafs = new CAFS(dir, true);
+			try {
+				Random random = new Random(42);
+				Object mapped = null;
+				int mappings = 0;
+				for (int i = 0; i < 200; i++) {
+					byte[] content = new byte[1000 + i];
+					random.nextBytes(content);
+					SHA1 sha1 = cafs.write(new ByteArrayInputStream(content));
+					assertTrue(Arrays.equals(content, read(cafs.read(sha1))));
+					if (cafs.mapped != mapped) {
+						mapped = cafs.mapped;
+						mappings++;
+					}
+				}
+				assertTrue(mappings < 20);
+			}
+			finally {
+				cafs.close();
+			}
+		}
+		finally {
+			IO.delete(dir);
+		}
+	}
+
+	static byte[] read(InputStream in) throws IOException {
+		ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		IO.copy(in, bout);
+		return bout.toByteArray();
+	}
+
+	static SHA1 sha1(byte[] content) throws Exception {
+		return new SHA1(MessageDigest.getInstance("SHA-1").digest(content));
+	}
+
 	// public void testSimple() throws Exception {
 	// File dir = new File(tmp, getClass().getName() +
 	// System.currentTimeMillis());
@@ -11,7 +11,9 @@ import aQute.bnd.build.Project;
 /**
  * ProjectBuildOrderTask calculates the correct build order for all of the bnd
  * projects in a workspace. The bndFile property can be set to calculate the
- * build order for a specific project instead of the whole workspace.
+ * build order for a specific project instead of the whole workspace, the
+ * order then contains the projects it depends on, directly or indirectly.
+ * Projects that depend on each other fail the task.
  */
 public class ProjectBuildOrderTask extends BaseTask {
 
@@ -56,7 +58,7 @@ public class ProjectBuildOrderTask extends BaseTask {
 			} else {
 				Project p = new Project(workspace, projectLocation, new File(projectLocation, bndFile));
 				try {
-					projects = p.getDependson();
+					projects = new BuildScheduler(workspace, p.getDependson()).getOrder();
 				}
 				finally {
 					p.close();
@@ -13,6 +13,12 @@ import aQute.bnd.build.*;
 import aQute.bnd.build.Project;
 
 public class ProjectTask extends BaseTask {
+	/**
+	 * The staleness of the projects is shared by the project tasks of one ant
+	 * build through this reference.
+	 */
+	static final String	STALENESS	= "aQute.bnd.build.Staleness";
+
 	File	basedir;
 	boolean	underTest;
 
@@ -23,7 +29,7 @@ public class ProjectTask extends BaseTask {
 				throw new BuildException("The given base dir does not exist " + basedir);
 
 			Project project = Workspace.getProject(basedir);
-			project.build(underTest);
+			project.build(underTest, getStaleness());
 			report(project);
 		}
 		catch (Exception e) {
@@ -32,6 +38,16 @@ public class ProjectTask extends BaseTask {
 		}
 	}
 
+	private Staleness getStaleness() {
+		Object staleness = getProject().getReference(STALENESS);
+		if (staleness instanceof Staleness)
+			return (Staleness) staleness;
+
+		Staleness s = new Staleness();
+		getProject().addReference(STALENESS, s);
+		return s;
+	}
+
 	/**
 	 * Set the base directory of the project. This property MUST be set.
 	 * 
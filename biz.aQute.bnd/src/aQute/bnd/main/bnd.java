@@ -681,6 +681,12 @@ public class bnd extends Processor {
 
 		@Description("Build for test")
 		boolean test();
+
+		@Description("Build all projects in the workspace")
+		boolean workspace();
+
+		@Description("Build the project and its dependencies concurrently with at most this number of threads")
+		int jobs();
 	}
 
 	@Description("Build a project. This will create the jars defined in the bnd.bnd and sub-builders.")
@@ -690,6 +696,17 @@ public class bnd extends Processor {
 			messages.NoProject();
 			return;
 		}
+
+		if (opts.workspace() || opts.jobs() > 0) {
+			Collection<Project> projects = opts.workspace() ? project.getWorkspace().getAllProjects() : Collections
+					.singleton(project);
+			BuildScheduler scheduler = new BuildScheduler(this, projects);
+			if (opts.jobs() > 0)
+				scheduler.setParallelism(opts.jobs());
+			scheduler.setTest(opts.test());
+			scheduler.build();
+			return;
+		}
 		project.build(opts.test());
 	}
 
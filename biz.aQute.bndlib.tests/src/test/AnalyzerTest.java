@@ -183,6 +183,76 @@ public class AnalyzerTest extends BndTestCase {
 		assertEquals("1.0.0.x", manifest.getMainAttributes().getValue("Bundle-Version"));
 	}
 
+	/**
+	 * The parallel analysis must result in the same manifest as the sequential
+	 * analysis
+	 * 
+	 * @throws Exception
+	 */
+
+	public static void testParallelAnalysis() throws Exception {
+		Manifest sequential = analyzeSpring(false);
+		Manifest parallel = analyzeSpring(true);
+		for (String header : new String[] {
+				"Export-Package", "Import-Package"
+		}) {
+			assertNotNull(sequential.getMainAttributes().getValue(header));
+			assertEquals(sequential.getMainAttributes().getValue(header), parallel.getMainAttributes()
+					.getValue(header));
+		}
+	}
+
+	/**
+	 * Analyze with a class cache, the second analysis takes all classes from
+	 * the cache and must see the same packages.
+	 */
+	public static void testClassCache() throws Exception {
+		File dir = new File("tmp-classcache");
+		IO.delete(dir);
+		try {
+			ClazzCache cache = new ClazzCache(dir);
+			Manifest plain = analyzeSpring(false);
+			Manifest first = analyzeSpring(false, cache);
+			String[] entries = dir.list();
+			assertNotNull(entries);
+			assertTrue(entries.length > 0);
+			Manifest cached = analyzeSpring(true, cache);
+			assertEquals(entries.length, dir.list().length);
+			for (String header : new String[] {
+					"Export-Package", "Import-Package"
+			}) {
+				assertNotNull(plain.getMainAttributes().getValue(header));
+				assertEquals(plain.getMainAttributes().getValue(header), first.getMainAttributes().getValue(header));
+				assertEquals(plain.getMainAttributes().getValue(header), cached.getMainAttributes().getValue(header));
+			}
+		}
+		finally {
+			IO.delete(dir);
+		}
+	}
+
+	static Manifest analyzeSpring(boolean parallel) throws Exception {
+		return analyzeSpring(parallel, null);
+	}
+
+	static Manifest analyzeSpring(boolean parallel, ClazzCache cache) throws Exception {
+		Analyzer analyzer = new Analyzer();
+		try {
+			if (cache != null)
+				analyzer.addBasicPlugin(cache);
+			analyzer.setJar(new File("jar/spring.jar"));
+			analyzer.setProperty(Constants.PARALLEL, Boolean.toString(parallel));
+			analyzer.setProperty("Export-Package", "*");
+			analyzer.setProperty("Import-Package", "*");
+			Manifest manifest = analyzer.calcManifest();
+			assertTrue(analyzer.check());
+			return manifest;
+		}
+		finally {
+			analyzer.close();
+		}
+	}
+
 	/**
 	 * Make sure packages from embedded directories referenced from
 	 * Bundle-Classpath are considered during import/export calculation.
@@ -278,6 +348,48 @@ public class AnalyzerTest extends BndTestCase {
 		System.err.println(c);
 	}
 
+	/**
+	 * The indexed queries must select the same classes as matching every class
+	 * one by one.
+	 */
+	public static void testIndexedClassQueries() throws Exception {
+		Analyzer a = new Analyzer();
+		a.setJar(new File("bin"));
+		a.analyze();
+
+		String[][] queries = {
+				{
+						"extends", "test.T0"
+				}, {
+						"extends", "junit.framework.*"
+				}, {
+						"implements", "java.io.Serializable"
+				}, {
+						"implements", "java.lang.*"
+				}, {
+						"imports", "java.util"
+				}, {
+						"annotated", "*"
+				}, {
+						"extends", "!junit.framework.*"
+				}
+		};
+		for (String[] query : queries) {
+			Clazz.QUERY type = Clazz.QUERY.valueOf(query[0].toUpperCase());
+			Instruction instr = new Instruction(query[1]);
+			Set<Clazz> expected = new TreeSet<Clazz>(Clazz.NAME_COMPARATOR);
+			for (Clazz c : a.getClassspace().values())
+				if (c.is(type, instr, a))
+					expected.add(c);
+
+			Collection<Clazz> indexed = a.getClasses("", query[0], query[1]);
+			assertEquals(Arrays.toString(query), new ArrayList<Clazz>(expected), new ArrayList<Clazz>(indexed));
+		}
+		assertTrue(a.getClasses("", "extends", "test.T0").size() > 1);
+		assertEquals(new ArrayList<Clazz>(a.getClasses("", "extends", "test.T0", "named", "*T2")),
+				new ArrayList<Clazz>(a.getClasses("", "named", "*T2", "extends", "test.T0")));
+	}
+
 	public static void testMultilevelInheritance() throws Exception {
 		Analyzer a = new Analyzer();
 		a.setJar(new File("bin"));
@@ -8,6 +8,7 @@ import java.util.*;
 import junit.framework.*;
 import aQute.bnd.osgi.*;
 import aQute.bnd.osgi.Descriptors.PackageRef;
+import aQute.bnd.osgi.Descriptors.TypeRef;
 import aQute.bnd.service.*;
 import aQute.lib.io.*;
 import aQute.service.reporter.*;
@@ -135,6 +136,124 @@ public class ClassParserTest extends TestCase {
 		// values.get("clss")).getName());
 	}
 
+	/**
+	 * A second collector must see the same calls as the first without the
+	 * class file being read again.
+	 */
+	public void testReplayCollector() throws Exception {
+		final int[] opened = new int[1];
+		Resource r = new FileResource(IO.getFile(new File("").getAbsoluteFile(), "bin/test/ConstantValues.class")) {
+			@Override
+			public InputStream openInputStream() throws FileNotFoundException {
+				opened[0]++;
+				return super.openInputStream();
+			}
+		};
+		Clazz c = new Clazz(a, "ConstantValues", r);
+		final List<String> first = new ArrayList<String>();
+		final List<String> second = new ArrayList<String>();
+		c.parseClassFileWithCollector(new Trace(first));
+		c.parseClassFileWithCollector(new Trace(second));
+		assertEquals(1, opened[0]);
+		assertTrue(first.contains("field strng"));
+		assertTrue(first.contains("constant blabla"));
+		assertEquals(first, second);
+
+		// A collector that stops at the class start sees nothing else
+		final List<String> stopped = new ArrayList<String>();
+		assertNull(c.parseClassFileWithCollector(new Trace(stopped) {
+			@Override
+			public boolean classStart(int access, TypeRef name) {
+				super.classStart(access, name);
+				return false;
+			}
+		}));
+		assertEquals(first.subList(0, first.indexOf("start test.ConstantValues") + 1), stopped);
+
+		// What a collector sets on a definition is not seen by the next one
+		c.parseClassFileWithCollector(new Trace(new ArrayList<String>()) {
+			@Override
+			public void field(Clazz.FieldDef defined) {
+				defined.setDeprecated(true);
+			}
+		});
+		final List<Boolean> deprecated = new ArrayList<Boolean>();
+		c.parseClassFileWithCollector(new Trace(new ArrayList<String>()) {
+			@Override
+			public void field(Clazz.FieldDef defined) {
+				deprecated.add(defined.isDeprecated());
+			}
+		});
+		assertFalse(deprecated.isEmpty());
+		assertFalse(deprecated.contains(true));
+	}
+
+	/**
+	 * What a collector puts in an annotation is not seen by the next one
+	 */
+	public void testReplayAnnotation() throws Exception {
+		Clazz c = new Clazz(a, "AnnotationsTest$MyComponent", new FileResource(IO.getFile(
+				new File("").getAbsoluteFile(), "bin/test/AnnotationsTest$MyComponent.class")));
+		final List<String> names = new ArrayList<String>();
+		ClassDataCollector changing = new ClassDataCollector() {
+			@Override
+			public void annotation(Annotation annotation) {
+				if (annotation.keySet().contains("name")) {
+					names.add(annotation.<String> get("name"));
+					annotation.put("name", "changed");
+				}
+			}
+		};
+		c.parseClassFileWithCollector(changing);
+		c.parseClassFileWithCollector(changing);
+		c.parseClassFileWithCollector(changing);
+		assertEquals(Arrays.asList("mycomp", "mycomp", "mycomp"), names);
+	}
+
+	static class Trace extends ClassDataCollector {
+		final List<String>	trace;
+
+		Trace(List<String> trace) {
+			this.trace = trace;
+		}
+
+		@Override
+		public void version(int minor, int major) {
+			trace.add("version");
+		}
+
+		@Override
+		public boolean classStart(int access, TypeRef name) {
+			trace.add("start " + name.getFQN());
+			return true;
+		}
+
+		@Override
+		public void field(Clazz.FieldDef defined) {
+			trace.add("field " + defined.getName());
+		}
+
+		@Override
+		public void method(Clazz.MethodDef defined) {
+			trace.add("method " + defined.getName());
+		}
+
+		@Override
+		public void constant(Object value) {
+			trace.add("constant " + value);
+		}
+
+		@Override
+		public void referTo(TypeRef typeRef, int modifiers) {
+			trace.add("refer " + typeRef);
+		}
+
+		@Override
+		public void classEnd() {
+			trace.add("end");
+		}
+	}
+
 	public static void testGeneric() throws Exception {
 		print(System.err, WithGenerics.class.getField("field").getGenericType());
 		System.err.println();
@@ -1,11 +1,14 @@
 package test;
 
 import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
 import java.util.jar.*;
 import java.util.zip.*;
 
 import junit.framework.*;
 import aQute.bnd.osgi.*;
+import aQute.lib.io.*;
 @SuppressWarnings("resource")
 
 public class JarTest extends TestCase {
@@ -107,4 +110,249 @@ public class JarTest extends TestCase {
 
 		assertEquals(expectedValue, parsedValue);
 	}
+
+	/**
+	 * Entries copied from another JAR must be transferred with their compressed
+	 * data and must still be readable as a stream and as a ZIP file.
+	 */
+	public static void testRawCopy() throws Exception {
+		File file = new File("jar/asm.jar");
+		Jar jar = new Jar(file);
+		jar.setManifest(new Manifest());
+		jar.putResource("extra/file.txt", new EmbeddedResource("Hello".getBytes("UTF-8"), 0));
+
+		File tmp = File.createTempFile("rawcopy", ".jar");
+		try {
+			jar.write(tmp);
+
+			ZipFile source = new ZipFile(file);
+			ZipFile copy = new ZipFile(tmp);
+			try {
+				for (String path : jar.getResources().keySet()) {
+					ZipEntry entry = copy.getEntry(path);
+					assertNotNull(path, entry);
+					ZipEntry original = source.getEntry(path);
+					if (original != null && !path.equals("META-INF/MANIFEST.MF")) {
+						assertEquals(original.getCompressedSize(), entry.getCompressedSize());
+						assertEquals(original.getCrc(), entry.getCrc());
+						assertEquals(IO.collect(source.getInputStream(original)),
+								IO.collect(copy.getInputStream(entry)));
+					}
+				}
+				assertEquals("Hello", IO.collect(copy.getInputStream(copy.getEntry("extra/file.txt"))));
+			}
+			finally {
+				source.close();
+				copy.close();
+			}
+
+			JarInputStream jin = new JarInputStream(new FileInputStream(tmp));
+			try {
+				assertNotNull(jin.getManifest());
+				byte[] buffer = new byte[1000];
+				int n = 0;
+				for (JarEntry entry = jin.getNextJarEntry(); entry != null; entry = jin.getNextJarEntry()) {
+					if (!entry.isDirectory()) {
+						while (jin.read(buffer) >= 0)
+							;
+						n++;
+					}
+				}
+				assertEquals(jar.getResources().size() - 1, n);
+			}
+			finally {
+				jin.close();
+			}
+		}
+		finally {
+			jar.close();
+			tmp.delete();
+		}
+	}
+
+	/**
+	 * Digests are calculated in a single pass, a resource that is not
+	 * idempotent must only be written once. The digests must not end up in the
+	 * manifest of the jar itself.
+	 */
+	public static void testDigestsSinglePass() throws Exception {
+		final int[] writes = new int[1];
+		Jar jar = new Jar("dot");
+		jar.setManifest(new Manifest());
+		jar.putResource("a/b.txt", new EmbeddedResource("abc".getBytes("UTF-8"), 0));
+		jar.putResource("a/c.txt", new WriteResource() {
+			@Override
+			public void write(OutputStream out) throws Exception {
+				writes[0]++;
+				out.write(("write " + writes[0]).getBytes("UTF-8"));
+			}
+
+			@Override
+			public long lastModified() {
+				return 0;
+			}
+		});
+		jar.setDigestAlgorithms(new String[] {
+				"SHA", "MD5"
+		});
+
+		ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		jar.write(bout);
+		assertEquals(1, writes[0]);
+		assertTrue(jar.getManifest().getEntries().isEmpty());
+
+		JarInputStream jin = new JarInputStream(new ByteArrayInputStream(bout.toByteArray()));
+		try {
+			Manifest m = jin.getManifest();
+			assertEquals("qZk+NkcGgWq6PiVxeFDCbJzQ2J0=", m.getAttributes("a/b.txt").getValue("SHA-Digest"));
+			assertEquals("kAFQmDzST7DWlj99KOF/cg==", m.getAttributes("a/b.txt").getValue("MD5-Digest"));
+			assertNotNull(m.getAttributes("a/c.txt").getValue("SHA-Digest"));
+		}
+		finally {
+			jin.close();
+		}
+	}
+
+	/**
+	 * A large resource that is not idempotent is buffered in a temporary file
+	 * and still written once with the right digest.
+	 */
+	public static void testDigestsLargeResource() throws Exception {
+		final int[] writes = new int[1];
+		final byte[] block = new byte[64 * 1024];
+		for (int i = 0; i < block.length; i++)
+			block[i] = (byte) i;
+		Jar jar = new Jar("dot");
+		jar.setManifest(new Manifest());
+		jar.putResource("large.bin", new WriteResource() {
+			@Override
+			public void write(OutputStream out) throws Exception {
+				writes[0]++;
+				for (int i = 0; i < 48; i++)
+					out.write(block);
+			}
+
+			@Override
+			public long lastModified() {
+				return 0;
+			}
+		});
+		jar.setDigestAlgorithms(new String[] {
+			"SHA"
+		});
+
+		ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		jar.write(bout);
+		assertEquals(1, writes[0]);
+
+		JarInputStream jin = new JarInputStream(new ByteArrayInputStream(bout.toByteArray()));
+		try {
+			Manifest m = jin.getManifest();
+			assertEquals("large.bin", jin.getNextJarEntry().getName());
+			ByteArrayOutputStream content = new ByteArrayOutputStream();
+			IO.copy(jin, content);
+			assertEquals(48 * block.length, content.size());
+			java.security.MessageDigest sha = java.security.MessageDigest.getInstance("SHA");
+			assertEquals(aQute.lib.base64.Base64.encodeBase64(sha.digest(content.toByteArray())), m.getAttributes(
+					"large.bin").getValue("SHA-Digest"));
+		}
+		finally {
+			jin.close();
+		}
+	}
+
+	/**
+	 * Resources must be copied concurrently, a file copied to a file is
+	 * transferred.
+	 */
+	public static void testConcurrentCopy() throws Exception {
+		final File file = new File("testresources/bnd.jar");
+		final CyclicBarrier barrier = new CyclicBarrier(2);
+		final long overlapping = FileResource.getOverlappingCopies();
+
+		// Both copies must be in progress at the same time to pass the barrier
+		List<Future<byte[]>> copies = new ArrayList<Future<byte[]>>();
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			for (int i = 0; i < 2; i++)
+				copies.add(executor.submit(new Callable<byte[]>() {
+					public byte[] call() throws Exception {
+						FileResource resource = new FileResource(file) {
+							@Override
+							public InputStream openInputStream() throws FileNotFoundException {
+								try {
+									barrier.await(10, TimeUnit.SECONDS);
+								}
+								catch (Exception e) {
+									throw new RuntimeException(e);
+								}
+								return super.openInputStream();
+							}
+						};
+						ByteArrayOutputStream bout = new ByteArrayOutputStream();
+						resource.write(bout);
+						return bout.toByteArray();
+					}
+				}));
+			for (Future<byte[]> copy : copies)
+				assertTrue(Arrays.equals(read(file), copy.get()));
+		}
+		finally {
+			executor.shutdown();
+		}
+		assertTrue(FileResource.getOverlappingCopies() > overlapping);
+
+		File tmp = File.createTempFile("copy", ".jar");
+		try {
+			FileOutputStream out = new FileOutputStream(tmp);
+			try {
+				new FileResource(file).write(out);
+				new FileResource(file).write(out);
+			}
+			finally {
+				out.close();
+			}
+			ByteArrayOutputStream twice = new ByteArrayOutputStream();
+			twice.write(read(file));
+			twice.write(read(file));
+			assertTrue(Arrays.equals(twice.toByteArray(), read(tmp)));
+		}
+		finally {
+			tmp.delete();
+		}
+	}
+
+	/**
+	 * A subclass that provides its own content is not copied from its file
+	 */
+	public static void testCopySubclass() throws Exception {
+		File file = new File("testresources/bnd.jar");
+		File tmp = File.createTempFile("copy", ".txt");
+		try {
+			FileOutputStream out = new FileOutputStream(tmp);
+			try {
+				new FileResource(file) {
+					@Override
+					public InputStream openInputStream() {
+						return new ByteArrayInputStream(new byte[] {
+								'a', 'b', 'c'
+						});
+					}
+				}.write(out);
+			}
+			finally {
+				out.close();
+			}
+			assertEquals("abc", IO.collect(tmp));
+		}
+		finally {
+			tmp.delete();
+		}
+	}
+
+	static byte[] read(File file) throws IOException {
+		ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		IO.copy(file, bout);
+		return bout.toByteArray();
+	}
 }
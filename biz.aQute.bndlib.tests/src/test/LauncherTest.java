@@ -287,6 +287,23 @@ public class LauncherTest extends TestCase {
 		assertExitCode("main.thread.callable", 42);
 	}
 
+	/**
+	 * Install and start the bundles in parallel, the bundles must be refreshed
+	 * and started per start level before the main thread runs
+	 * 
+	 * @throws Exception
+	 */
+	public static void testParallel() throws Exception {
+		Project project = getProject();
+		project.setProperty(Constants.RUNPARALLEL, "true");
+
+		ProjectLauncher l = project.getProjectLauncher();
+		l.setTimeout(5000, TimeUnit.MILLISECONDS);
+		l.setTrace(true);
+		l.getRunProperties().put("test.cmd", "startlevel");
+		assertEquals(42, l.launch());
+	}
+
 	private static void assertExitCode(String cmd, int rv) throws Exception {
 		Project project = getProject();
 		project.clear();
@@ -619,6 +619,28 @@ public class MacroTest extends TestCase {
 		assertEquals("YES", m.process("${if;${def;set.2};YES;NO}"));
 	}
 
+	/**
+	 * A compiled line must give the same result every time it is used, also
+	 * after the properties changed.
+	 */
+	public static void testCompiledTemplate() throws Exception {
+		Processor p = new Processor();
+		p.setProperty("a", "A");
+		p.setProperty("b", "a");
+		Macro m = p.getReplacer();
+		String line = "x${${b}}y \\${a} $(a)$[a]$<a> ${a";
+		for (int i = 0; i < 2; i++)
+			assertEquals("xAy ${a} AAA ${a", m.process(line));
+
+		p.setProperty("a", "Z");
+		p.propertiesChanged();
+		assertEquals("xZy ${a} ZZZ ${a", m.process(line));
+		String base = p.getBase().getAbsolutePath();
+		assertEquals(base + "/x " + base + "/y a./z", m.process("./x ./y a./z"));
+		assertEquals("a,Z", m.process("${uniq;${b},${b},${a}}"));
+		assertTrue(p.check());
+	}
+
 	/**
 	 * NEW
 	 */
@@ -2,6 +2,7 @@ package test;
 
 import java.applet.*;
 import java.awt.*;
+import java.io.*;
 import java.util.*;
 import java.util.List;
 
@@ -52,6 +53,84 @@ public class PluginTest extends TestCase {
 		}
 	}
 
+	/**
+	 * A refresh must only create the plugins whose clause changed.
+	 */
+	public static void testReusePlugins() {
+		Processor p = new Processor();
+		p.setProperty(Constants.PLUGIN, "test.PluginTest$RPlugin;a=1,test.PluginTest$RPlugin;a=9");
+		RPlugin r = getRPlugin(p, "1");
+		RPlugin s = getRPlugin(p, "9");
+
+		p.refresh();
+		assertSame(r, getRPlugin(p, "1"));
+		assertSame(s, getRPlugin(p, "9"));
+		assertFalse(r.closed);
+
+		p.setProperty(Constants.PLUGIN, "test.PluginTest$RPlugin;a=2,test.PluginTest$RPlugin;a=9");
+		p.refresh();
+		RPlugin changed = getRPlugin(p, "2");
+		assertTrue(r.closed);
+		assertNull(getRPlugin(p, "1"));
+		assertSame(s, getRPlugin(p, "9"));
+
+		p.close();
+		assertTrue(changed.closed);
+		assertTrue(s.closed);
+	}
+
+	// A changed clause keeps its place between the reused plugins
+	public static void testReusePluginsOrder() {
+		Processor p = new Processor();
+		p.setProperty(Constants.PLUGIN,
+				"test.PluginTest$RPlugin;a=1,test.PluginTest$RPlugin;a=2,test.PluginTest$RPlugin;a=3");
+		assertEquals(Arrays.asList("1", "2", "3"), getRPluginOrder(p));
+
+		p.setProperty(Constants.PLUGIN,
+				"test.PluginTest$RPlugin;a=0,test.PluginTest$RPlugin;a=2,test.PluginTest$RPlugin;a=3");
+		p.refresh();
+		assertEquals(Arrays.asList("0", "2", "3"), getRPluginOrder(p));
+
+		p.setProperty(Constants.PLUGIN,
+				"test.PluginTest$RPlugin;a=0,test.PluginTest$RPlugin;a=4,test.PluginTest$RPlugin;a=3");
+		p.refresh();
+		assertEquals(Arrays.asList("0", "4", "3"), getRPluginOrder(p));
+		p.close();
+	}
+
+	static List<String> getRPluginOrder(Processor p) {
+		List<String> order = new ArrayList<String>();
+		for (RPlugin plugin : p.getPlugins(RPlugin.class))
+			order.add(plugin.properties.get("a"));
+		return order;
+	}
+
+	static RPlugin getRPlugin(Processor p, String a) {
+		for (RPlugin plugin : p.getPlugins(RPlugin.class)) {
+			if (a.equals(plugin.properties.get("a")))
+				return plugin;
+		}
+		return null;
+	}
+
+	public static class RPlugin implements Plugin, Closeable {
+		Map<String,String>	properties;
+		boolean				closed;
+
+		@Override
+		public void setProperties(Map<String,String> map) {
+			properties = map;
+		}
+
+		@Override
+		public void setReporter(Reporter processor) {}
+
+		@Override
+		public void close() {
+			closed = true;
+		}
+	}
+
 	public static void testLoadPlugin() {
 		main.setProperty(Constants.PLUGIN, "thinlet.Thinlet;path:=jar/thinlet.jar");
 		for (Applet applet : main.getPlugins(Applet.class)) {
@@ -114,6 +114,32 @@ public class ProcessorTest extends TestCase {
 		assertEquals("", Processor.removeDuplicateMarker("~~~~~~~~~~~~~~"));
 	}
 
+	/**
+	 * Wildcard keys must see keys that are added or removed in the processor
+	 * or its parents after an earlier lookup.
+	 */
+	public static void testWildcardKeys() {
+		Processor top = new Processor();
+		top.setProperty("a.2", "2");
+		Processor p = new Processor(top);
+		p.setProperty("a.1", "1");
+		assertEquals("1,2", p.getProperty("a.*"));
+		assertEquals("1,2", p.getReplacer().process("${a.*}"));
+
+		top.setProperty("a.3", "3");
+		assertEquals("1,2,3", p.getProperty("a.*"));
+		p.getProperties().put("a.0", "0");
+		assertEquals("0,1,2,3", p.getReplacer().process("${a.*}"));
+		p.unsetProperty("a.1");
+		top.getProperties().clear();
+		assertEquals("0", p.getProperty("a.*"));
+
+		Processor other = new Processor();
+		other.setProperty("a.4", "4");
+		p.setParent(other);
+		assertEquals("0,4", p.getProperty("a.*"));
+	}
+
 	public static void appendPathTest() throws Exception {
 		assertEquals("a/b/c", Processor.appendPath("", "a/b/c/"));
 		assertEquals("a/b/c", Processor.appendPath("", "/a/b/c"));
@@ -220,6 +220,44 @@ public class ProjectTest extends TestCase {
 		// assertFalse(bottom.isStale());
 	}
 
+	/**
+	 * A file in the output directory is an input of the project, the result
+	 * is remembered for the rest of the session.
+	 */
+	public static void testStaleness() throws Exception {
+		Workspace ws = Workspace.getWorkspace(new File("testresources/ws"));
+		ws.setOffline(false);
+		Project top = ws.getProject("p-stale");
+		Project bottom = ws.getProject("p-stale-dep");
+		top.clean();
+		bottom.clean();
+		bottom.build();
+		top.build();
+		top.getBuildFiles(false)[0].setLastModified(bottom.getBuildFiles(false)[0].lastModified() + 1000);
+
+		Staleness session = new Staleness();
+		assertFalse(top.isStale(session));
+		assertFalse(bottom.isStale(session));
+
+		File input = new File(bottom.getOutput(), "input.txt");
+		IO.store("input", input);
+		try {
+			input.setLastModified(bottom.getBuildFiles(false)[0].lastModified() + 10000);
+			assertFalse(top.isStale(session));
+
+			session = new Staleness();
+			assertTrue(top.isStale(session));
+			assertTrue(bottom.isStale(session));
+
+			bottom.build(false, session);
+			assertFalse(bottom.isStale(session));
+			assertTrue(top.isStale(session));
+		}
+		finally {
+			input.delete();
+		}
+	}
+
 	private static void stale(Project project, boolean b) throws Exception {
 		File file = project.getBuildFiles(false)[0];
 		if (b)
@@ -228,6 +266,30 @@ public class ProjectTest extends TestCase {
 			file.setLastModified(project.lastModified() + 10000);
 	}
 
+	/**
+	 * Build a project and its dependency with the scheduler, the dependency
+	 * must be built first.
+	 */
+	public static void testBuildScheduler() throws Exception {
+		Workspace ws = Workspace.getWorkspace(new File("testresources/ws"));
+		Project top = ws.getProject("p-stale");
+		Project bottom = ws.getProject("p-stale-dep");
+
+		BuildScheduler scheduler = new BuildScheduler(ws, Collections.singleton(top));
+		scheduler.setParallelism(2);
+		assertEquals(Arrays.asList(bottom, top), scheduler.getOrder());
+
+		top.clean();
+		bottom.clean();
+		Map<Project,File[]> built = scheduler.build();
+		assertEquals(Arrays.asList(bottom, top), new ArrayList<Project>(built.keySet()));
+		assertTrue(built.get(top)[0].isFile());
+		assertTrue(built.get(bottom)[0].isFile());
+
+		List<Project> order = new ArrayList<Project>(ws.getBuildOrder());
+		assertTrue(order.indexOf(bottom) < order.indexOf(top));
+	}
+
 	/**
 	 * Check multiple repos
 	 * 
@@ -247,6 +309,64 @@ public class ProjectTest extends TestCase {
 		assertEquals(1, bundles.size());
 	}
 
+	/**
+	 * The workspace remembers which repository versions the projects resolved
+	 * until a bundle is put in a repository.
+	 */
+	public static void testResolutions() throws Exception {
+		final int[] queries = new int[1];
+		File dir = File.createTempFile("resolutions", "");
+		dir.delete();
+		FileRepo repo = new FileRepo("counting", dir, true) {
+			@Override
+			public SortedSet<Version> versions(String bsn) throws Exception {
+				synchronized (queries) {
+					queries[0]++;
+				}
+				return super.versions(bsn);
+			}
+		};
+		Workspace ws = Workspace.getWorkspace(new File("testresources/ws"));
+		ws.addBasicPlugin(repo);
+		try {
+			ws.propertiesChanged();
+			Project p1 = ws.getProject("p1");
+			Project p2 = ws.getProject("p2");
+			p1.setProperty(Constants.PARALLEL, "true");
+
+			String spec = "org.apache.felix.configadmin;version=1.1.0,osgi.core;version='[4,5)'";
+			List<Container> first = p1.getBundles(Strategy.HIGHEST, spec, "test");
+			assertEquals(2, queries[0]);
+			List<Container> second = p2.getBundles(Strategy.HIGHEST, spec, "test");
+			assertEquals(2, queries[0]);
+			assertEquals(2, first.size());
+			assertEquals(first.get(0).getFile(), second.get(0).getFile());
+			assertEquals(first.get(1).getFile(), second.get(1).getFile());
+
+			// A bsn that is not found is asked again
+			Container notfound = p2.getBundle("does.not.exist", "1.0.0", Strategy.HIGHEST, null);
+			assertEquals(Container.TYPE.ERROR, notfound.getType());
+			assertEquals(3, queries[0]);
+			p1.getBundle("does.not.exist", "1.0.0", Strategy.HIGHEST, null);
+			assertEquals(4, queries[0]);
+
+			repo.put(new FileInputStream("jar/osgi.jar"), new RepositoryPlugin.PutOptions());
+			assertTrue(ws.refreshRepositories());
+			p2.getBundles(Strategy.HIGHEST, spec, "test");
+			assertEquals(6, queries[0]);
+
+			// A refresh of the workspace asks the repositories again
+			ws.refresh();
+			p2.getBundles(Strategy.HIGHEST, spec, "test");
+			assertEquals(8, queries[0]);
+		}
+		finally {
+			ws.removeBasicPlugin(repo);
+			ws.propertiesChanged();
+			IO.delete(dir);
+		}
+	}
+
 	/**
 	 * Check if the getSubBuilders properly predicts the output.
 	 */
@@ -321,6 +441,48 @@ public class ProjectTest extends TestCase {
 		assertEquals("b", mb.getMainAttributes().getValue("Sub-Header"));
 	}
 
+	/**
+	 * Sub bundles built concurrently with a shared classpath must be identical
+	 * to the sequentially built sub bundles.
+	 */
+	public static void testParallelSub() throws Exception {
+		Workspace ws = Workspace.getWorkspace(new File("testresources/ws"));
+		Project project = ws.getProject("p4-sub");
+		List<String> sequentialMessages = new ArrayList<String>();
+		List<String> parallelMessages = new ArrayList<String>();
+		List<Manifest> sequential = buildSubs(project, false, sequentialMessages);
+		List<Manifest> parallel = buildSubs(project, true, parallelMessages);
+		assertEquals(sequentialMessages, parallelMessages);
+		assertEquals(3, sequential.size());
+		assertEquals(sequential.size(), parallel.size());
+		for (int i = 0; i < sequential.size(); i++) {
+			for (String header : new String[] {
+					"Bundle-SymbolicName", "Export-Package", "Import-Package", "Sub-Header"
+			}) {
+				assertEquals(sequential.get(i).getMainAttributes().getValue(header), parallel.get(i)
+						.getMainAttributes().getValue(header));
+			}
+		}
+	}
+
+	private static List<Manifest> buildSubs(Project project, boolean parallel, List<String> messages)
+			throws Exception {
+		ProjectBuilder builder = project.getBuilder(null);
+		try {
+			builder.setProperty(Constants.PARALLEL, Boolean.toString(parallel));
+			builder.setProperty("Bundle-Version", "1.0.0");
+			List<Manifest> manifests = new ArrayList<Manifest>();
+			for (Jar jar : builder.builds())
+				manifests.add(jar.getManifest());
+			messages.addAll(builder.getErrors());
+			messages.addAll(builder.getWarnings());
+			return manifests;
+		}
+		finally {
+			builder.close();
+		}
+	}
+
 	public static void testOutofDate() throws Exception {
 		Workspace ws = Workspace.getWorkspace(new File("testresources/ws"));
 		Project project = ws.getProject("p3");
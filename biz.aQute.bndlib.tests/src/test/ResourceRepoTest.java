@@ -237,6 +237,43 @@ public class ResourceRepoTest extends TestCase {
 		assertEquals( 1, repoImpl.list(null).size());
 	}
 		
+	public void testFindAndFilter() throws Exception {
+		repoImpl.add(create("a", "1.0.0", "first"));
+		repoImpl.add(create("a", "2.0.0", "second"));
+		repoImpl.add(create("a", "2.0.0", "third"));
+		repoImpl.add(create("a", "3.0.0", "fourth"));
+		repoImpl.add(create("b", "1.0.0", "fifth"));
+
+		assertEquals("second", repoImpl.findBestMatch("a", new VersionRange("[1,3)")).description);
+		assertEquals("fourth", repoImpl.findBestMatch("a", new VersionRange("1")).description);
+		assertEquals("first", repoImpl.findBestMatch("a", new VersionRange("[1,2)")).description);
+		assertNull(repoImpl.findBestMatch("a", new VersionRange("[4,5)")));
+		assertNull(repoImpl.findBestMatch("c", new VersionRange("0")));
+
+		assertEquals(5, repoImpl.list(null).size());
+		assertEquals(4, repoImpl.list("(bsn=a)").size());
+		assertEquals(2, repoImpl.list("(&(bsn=a)(version=2.0.0))").size());
+		assertEquals(1, repoImpl.list("(description=fi*h)").size());
+
+		ResourceDescriptor second = repoImpl.findBestMatch("a", new VersionRange("[1,3)"));
+		assertSame(second, repoImpl.getResourceDescriptor(second.id));
+		repoImpl.delete(second.id);
+		assertNull(repoImpl.getResourceDescriptor(second.id));
+		assertEquals("third", repoImpl.findBestMatch("a", new VersionRange("[1,3)")).description);
+		assertEquals(3, repoImpl.list("(bsn=a)").size());
+	}
+
+	private SearchableRepository.ResourceDescriptor create(String bsn, String version, String description)
+			throws Exception {
+		SearchableRepository.ResourceDescriptor rd = new SearchableRepository.ResourceDescriptor();
+		rd.id = SHA1.digest(description.getBytes("UTF-8")).digest();
+		rd.url = IO.getFile("jar/osgi.jar").toURI();
+		rd.description = description;
+		rd.bsn = bsn;
+		rd.version = new Version(version);
+		return rd;
+	}
+
 	private SearchableRepository.ResourceDescriptor create(String path) throws NoSuchAlgorithmException, Exception {
 		SearchableRepository.ResourceDescriptor rd = new SearchableRepository.ResourceDescriptor();
 		File f = IO.getFile(path);
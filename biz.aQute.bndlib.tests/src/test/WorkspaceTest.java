@@ -1,9 +1,13 @@
 package test;
 
 import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
 
 import junit.framework.*;
 import aQute.bnd.build.*;
+import aQute.bnd.osgi.*;
+import aQute.lib.io.*;
 
 public class WorkspaceTest extends TestCase {
 
@@ -32,4 +36,151 @@ public class WorkspaceTest extends TestCase {
 		assertEquals("project", p.getProperty("myprop3"));
 	}
 
+	/**
+	 * The workspace shares the classpath Jars, a Jar is closed when it is no
+	 * longer used and too many Jars are open.
+	 */
+	public static void testJarCache() throws Exception {
+		File a = File.createTempFile("jarcache", ".jar");
+		File b = File.createTempFile("jarcache", ".jar");
+		try {
+			IO.copy(new File("testresources/bnd.jar"), a);
+			IO.copy(new File("testresources/bnd.jar"), b);
+
+			JarCache cache = new JarCache(1);
+			Jar ja = cache.acquire(a);
+			assertSame(ja, cache.acquire(a));
+			ja.close();
+			assertNotNull(ja.getManifest());
+			try {
+				ja.putResource("x", new EmbeddedResource(new byte[0], 0));
+				fail("shared Jar must be read only");
+			}
+			catch (UnsupportedOperationException e) {
+				// expected
+			}
+
+			// Both are in use, nothing can be closed
+			Jar jb = cache.acquire(b);
+			assertEquals(2, cache.size());
+			assertEquals(2, cache.getOpen());
+
+			// Once a is no longer used it is closed, there are too many open
+			cache.release(ja);
+			assertNotNull(ja.getManifest());
+			cache.release(ja);
+			assertEquals(1, cache.size());
+			assertEquals(1, cache.getOpen());
+			try {
+				ja.getManifest();
+				fail("unused Jar must be closed when too many are open");
+			}
+			catch (RuntimeException e) {
+				// expected
+			}
+
+			// A changed file is read again, the old Jar is closed when released
+			assertTrue(b.setLastModified(b.lastModified() - 10000));
+			Jar changed = cache.acquire(b);
+			assertNotSame(jb, changed);
+			assertNotNull(jb.getManifest());
+			assertEquals(2, cache.getOpen());
+			cache.release(jb);
+			assertEquals(1, cache.getOpen());
+
+			// An unused Jar stays open while there are not too many
+			cache.release(changed);
+			assertEquals(1, cache.size());
+			assertNotNull(changed.getManifest());
+			assertSame(changed, cache.acquire(b));
+			cache.release(changed);
+
+			cache.clear();
+			assertEquals(0, cache.size());
+			assertEquals(0, cache.getOpen());
+		}
+		finally {
+			a.delete();
+			b.delete();
+		}
+	}
+
+	/**
+	 * Builders that need the same JAR at the same time get the same Jar, a JAR
+	 * that cannot be read is not cached
+	 */
+	public static void testJarCacheConcurrent() throws Exception {
+		final File a = File.createTempFile("jarcache", ".jar");
+		File bad = File.createTempFile("jarcache", ".jar");
+		try {
+			IO.copy(new File("testresources/bnd.jar"), a);
+			IO.store("not a jar", bad);
+
+			final JarCache cache = new JarCache();
+			List<Future<Jar>> jars = new ArrayList<Future<Jar>>();
+			ExecutorService executor = Executors.newFixedThreadPool(4);
+			try {
+				for (int i = 0; i < 4; i++)
+					jars.add(executor.submit(new Callable<Jar>() {
+						public Jar call() throws Exception {
+							return cache.acquire(a);
+						}
+					}));
+				Jar jar = jars.get(0).get();
+				for (Future<Jar> f : jars)
+					assertSame(jar, f.get());
+			}
+			finally {
+				executor.shutdown();
+			}
+			assertEquals(1, cache.size());
+			assertEquals(1, cache.getOpen());
+
+			try {
+				cache.acquire(bad);
+				fail("a JAR that cannot be read must fail");
+			}
+			catch (IOException e) {
+				// expected
+			}
+			assertEquals(1, cache.size());
+			assertEquals(1, cache.getOpen());
+			cache.clear();
+		}
+		finally {
+			a.delete();
+			bad.delete();
+		}
+	}
+
+	/**
+	 * Only repository JARs are shared, other files can change while the
+	 * workspace is open
+	 */
+	public static void testJarCacheRepositoryOnly() throws Exception {
+		Workspace ws = Workspace.getWorkspace(new File("testresources/ws"));
+		Project p3 = ws.getProject("p3");
+		String buildpath = p3.getProperty(Constants.BUILDPATH);
+		p3.setProperty(Constants.BUILDPATH, buildpath + ",../../../jar/osgi.jar;version=file");
+		p3.propertiesChanged();
+		JarCache cache = ws.getJarCache();
+		cache.clear();
+		ProjectBuilder builder = p3.getBuilder(null);
+		try {
+			List<String> files = new ArrayList<String>();
+			for (Jar jar : builder.getClasspath()) {
+				if (jar.getSource().isFile())
+					files.add(jar.getSource().getName());
+			}
+			assertEquals(2, files.size());
+			assertTrue(files.contains("osgi.jar"));
+			assertEquals(1, cache.size());
+		}
+		finally {
+			builder.close();
+			p3.setProperty(Constants.BUILDPATH, buildpath);
+			p3.propertiesChanged();
+			cache.clear();
+		}
+	}
 }
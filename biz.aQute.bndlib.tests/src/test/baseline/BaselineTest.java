@@ -289,4 +289,60 @@ public class BaselineTest extends TestCase {
 		assertEquals("dummy.api", info.packageName);
 		assertEquals("2.0.0", info.suggestedVersion.toString());
 	}
+
+	// The tree of the baseline JAR is read from the cache by the next baseline
+	public static void testTreeCache() throws Exception {
+		File dir = new File("tmp-treecache");
+		IO.delete(dir);
+		try {
+			DiffPluginImpl differ = new DiffPluginImpl();
+			TreeCache cache = new TreeCache(dir, null);
+
+			Jar older = new Jar(new File("testresources/api-orig.jar"));
+			Jar newer = new Jar(new File("testresources/api-providerbump.jar"));
+
+			Tree computed = cache.tree(differ, older);
+			File[] entries = dir.listFiles();
+			assertEquals(1, entries.length);
+			assertEquals(1, entries[0].list().length);
+
+			Tree cached = cache.tree(differ, older);
+			assertNotSame(computed, cached);
+			assertEquals(Delta.UNCHANGED, cached.diff(differ.tree(older)).getDelta());
+
+			// A corrupt entry is calculated again
+			File entry = entries[0].listFiles()[0];
+			for (int length : new int[] {
+					Integer.MAX_VALUE, -1
+			}) {
+				DataOutputStream out = new DataOutputStream(new FileOutputStream(entry));
+				try {
+					out.writeInt(1);
+					out.writeInt(length);
+				}
+				finally {
+					out.close();
+				}
+				cached = cache.tree(differ, older);
+				assertEquals(Delta.UNCHANGED, cached.diff(differ.tree(older)).getDelta());
+			}
+
+			Baseline baseline = new Baseline(new Processor(), differ, cache);
+			Set<Info> infoSet = baseline.baseline(newer, older, null);
+			assertEquals(1, infoSet.size());
+			Info info = infoSet.iterator().next();
+			assertTrue(info.mismatch);
+			assertEquals("1.1.0", info.suggestedVersion.toString());
+
+			// Other ignored headers give another tree
+			new TreeCache(dir, "Bundle-Version").tree(differ, older);
+			int n = 0;
+			for (File f : dir.listFiles())
+				n += f.list().length;
+			assertEquals(2, n);
+		}
+		finally {
+			IO.delete(dir);
+		}
+	}
 }
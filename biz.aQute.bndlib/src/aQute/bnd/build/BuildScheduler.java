@@ -0,0 +1,191 @@
+package aQute.bnd.build;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import aQute.bnd.osgi.*;
+import aQute.libg.tarjan.*;
+
+/**
+ * Builds a set of projects, and the projects they depend on, on a bounded
+ * number of threads. The order is defined by the -dependson and -buildpath
+ * dependencies of the projects: a project is only built after all the
+ * projects it depends on are built, projects that do not depend on each other
+ * are built concurrently. A project is built while holding its lock. All
+ * projects share one {@link Staleness} so every project is only checked once.
+ * <p>
+ * The scheduling and the reporting is done on the calling thread. The
+ * messages of a project are moved to the reporter as soon as the project is
+ * built, prefixed with the name of the project. If a project fails, the
+ * projects that depend on it are not built.
+ */
+public class BuildScheduler {
+	final Processor						reporter;
+	final Collection<Project>			projects;
+	final Map<Project,List<Project>>	graph		= new LinkedHashMap<Project,List<Project>>();
+	final List<Project>					order		= new ArrayList<Project>();
+	final Staleness						staleness	= new Staleness();
+	int									parallelism	= Runtime.getRuntime().availableProcessors();
+	boolean								test;
+
+	/**
+	 * @param reporter
+	 *            receives the messages of the built projects
+	 * @param projects
+	 *            the projects to build, their dependencies are added
+	 */
+	public BuildScheduler(Processor reporter, Collection<Project> projects) {
+		this.reporter = reporter;
+		this.projects = projects;
+	}
+
+	/**
+	 * Set the maximum number of projects that are built at the same time, the
+	 * default is the number of processors.
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+	/**
+	 * Build the projects for test.
+	 */
+	public void setTest(boolean test) {
+		this.test = test;
+	}
+
+	/**
+	 * Answer the projects and all the projects they depend on in an order
+	 * where a project comes after its dependencies.
+	 *
+	 * @throws CircularDependencyException
+	 *             if projects depend on each other
+	 */
+	public List<Project> getOrder() throws Exception {
+		if (graph.isEmpty()) {
+			for (Project project : projects)
+				traverse(project);
+
+			StringBuilder sb = new StringBuilder();
+			for (Collection<Project> component : Tarjan.tarjan(graph)) {
+				if (component.size() > 1)
+					sb.append(component);
+			}
+			if (sb.length() > 0) {
+				graph.clear();
+				order.clear();
+				throw new CircularDependencyException("Circular dependency between projects " + sb);
+			}
+		}
+		return Collections.unmodifiableList(order);
+	}
+
+	private void traverse(Project project) throws Exception {
+		if (graph.containsKey(project))
+			return;
+
+		List<Project> dependencies = new ArrayList<Project>();
+		graph.put(project, dependencies);
+		for (Project dependency : project.getDependson()) {
+			if (dependency == project)
+				continue;
+
+			dependencies.add(dependency);
+			traverse(dependency);
+		}
+		order.add(project);
+	}
+
+	/**
+	 * Build the projects that are stale.
+	 *
+	 * @return the files of the projects that were built successfully
+	 */
+	public Map<Project,File[]> build() throws Exception {
+		Map<Project,Integer> waiting = new HashMap<Project,Integer>();
+		Map<Project,List<Project>> dependents = new HashMap<Project,List<Project>>();
+		for (Project project : getOrder()) {
+			waiting.put(project, graph.get(project).size());
+			dependents.put(project, new ArrayList<Project>());
+		}
+		for (Project project : order)
+			for (Project dependency : graph.get(project))
+				dependents.get(dependency).add(project);
+
+		Map<Project,File[]> result = new LinkedHashMap<Project,File[]>();
+		Set<Project> failed = new HashSet<Project>();
+		Map<Future<File[]>,Project> running = new HashMap<Future<File[]>,Project>();
+
+		ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+		try {
+			CompletionService<File[]> completion = new ExecutorCompletionService<File[]>(executor);
+			for (Project project : order) {
+				if (waiting.get(project) == 0)
+					running.put(completion.submit(new BuildTask(project)), project);
+			}
+
+			while (!running.isEmpty()) {
+				Future<File[]> future = completion.take();
+				Project project = running.remove(future);
+				try {
+					File[] files = future.get();
+					if (project.isOk())
+						result.put(project, files);
+					else
+						fail(project, failed, dependents);
+				}
+				catch (ExecutionException e) {
+					project.error("Building %s failed: %s", project, e.getCause());
+					fail(project, failed, dependents);
+				}
+				reporter.getInfo(project, project.getName() + ": ");
+
+				if (failed.contains(project))
+					continue;
+
+				for (Project dependent : dependents.get(project)) {
+					int n = waiting.get(dependent) - 1;
+					waiting.put(dependent, n);
+					if (n == 0 && !failed.contains(dependent))
+						running.put(completion.submit(new BuildTask(dependent)), dependent);
+				}
+			}
+		}
+		finally {
+			executor.shutdown();
+		}
+		return result;
+	}
+
+	private void fail(Project project, Set<Project> failed, Map<Project,List<Project>> dependents) {
+		failed.add(project);
+		for (Project dependent : dependents.get(project)) {
+			if (failed.contains(dependent))
+				continue;
+
+			reporter.error("%s: Not built because it depends on %s which failed", dependent.getName(),
+					project.getName());
+			fail(dependent, failed, dependents);
+		}
+	}
+
+	class BuildTask implements Callable<File[]> {
+		final Project	project;
+
+		BuildTask(Project project) {
+			this.project = project;
+		}
+
+		public File[] call() throws Exception {
+			if (!project.lock("building"))
+				return null;
+			try {
+				return project.build(test, staleness);
+			}
+			finally {
+				project.unlock();
+			}
+		}
+	}
+}
@@ -0,0 +1,246 @@
+package aQute.bnd.build;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.jar.*;
+
+import aQute.bnd.osgi.*;
+
+/**
+ * The classpath Jars of the projects in a workspace. The projects of a
+ * workspace share the same repository JARs on their classpath; a JAR is read
+ * once and its Jar is handed out to all builders that need it. The shared Jars
+ * are read only, closing them does nothing. A Jar is identified by the
+ * canonical path, size, and last modified time of its file so a changed file is
+ * read again.
+ * <p>
+ * A builder acquires a Jar and must release it when it no longer uses it, the
+ * Jar is only closed when no builder uses it anymore. Every Jar keeps its file
+ * open, so the cache is bounded by the number of open Jars: when there are
+ * more, the least recently used Jars that no builder uses are closed. Only
+ * files that do not change while the workspace is open, like repository JARs,
+ * should be shared; an open file can not be replaced on some platforms.
+ * <p>
+ * A JAR is read outside the lock of the cache, builders that need the same JAR
+ * wait for the first to read it while other JARs are acquired concurrently.
+ */
+public class JarCache {
+	public final static int				DEFAULT_SIZE	= 100;
+
+	final int							max;
+	final LinkedHashMap<String,Entry>	entries			= new LinkedHashMap<String,Entry>(16, 0.75f, true);
+	final Map<Jar,Entry>				acquired		= new IdentityHashMap<Jar,Entry>();
+	int									open;
+
+	static class Entry {
+		final FutureTask<SharedJar>	task;
+		final long					size;
+		final long					lastModified;
+		SharedJar					jar;
+		int							references;
+		boolean						evicted;
+
+		Entry(final File file, long size, long lastModified) {
+			this.task = new FutureTask<SharedJar>(new Callable<SharedJar>() {
+				public SharedJar call() throws IOException {
+					return new SharedJar(file);
+				}
+			});
+			this.size = size;
+			this.lastModified = lastModified;
+		}
+	}
+
+	/**
+	 * A Jar that is shared between builders. It can not be changed after it is
+	 * read and only the cache closes it.
+	 */
+	static class SharedJar extends Jar {
+		boolean	readonly;
+
+		SharedJar(File file) throws IOException {
+			super(file);
+			readonly = true;
+		}
+
+		@Override
+		public boolean putResource(String path, Resource resource, boolean overwrite) {
+			if (readonly)
+				throw new UnsupportedOperationException("Shared classpath JAR is read only: " + getSource());
+			return super.putResource(path, resource, overwrite);
+		}
+
+		@Override
+		public Resource remove(String path) {
+			if (readonly)
+				throw new UnsupportedOperationException("Shared classpath JAR is read only: " + getSource());
+			return super.remove(path);
+		}
+
+		@Override
+		public void setManifest(Manifest manifest) {
+			if (readonly)
+				throw new UnsupportedOperationException("Shared classpath JAR is read only: " + getSource());
+			super.setManifest(manifest);
+		}
+
+		@Override
+		public void close() {
+			// Owned by the cache
+		}
+
+		void dispose() {
+			super.close();
+		}
+	}
+
+	public JarCache() {
+		this(DEFAULT_SIZE);
+	}
+
+	/**
+	 * @param max
+	 *            the number of open Jars above which unused Jars are closed
+	 */
+	public JarCache(int max) {
+		this.max = max;
+	}
+
+	/**
+	 * Answer the shared Jar for a JAR file. The Jar must be released with
+	 * {@link #release(Jar)}.
+	 */
+	public Jar acquire(File file) throws IOException {
+		String key = file.getCanonicalPath();
+		long size = file.length();
+		long lastModified = file.lastModified();
+
+		Entry entry;
+		synchronized (this) {
+			entry = entries.get(key);
+			if (entry != null && (entry.size != size || entry.lastModified != lastModified)) {
+				entries.remove(key);
+				evict(entry);
+				entry = null;
+			}
+
+			if (entry == null) {
+				entry = new Entry(file, size, lastModified);
+				entries.put(key, entry);
+				open++;
+			}
+			entry.references++;
+		}
+
+		// The first builder reads the JAR, the others wait for it
+		SharedJar jar;
+		try {
+			entry.task.run();
+			jar = entry.task.get();
+		}
+		catch (ExecutionException e) {
+			failed(key, entry);
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			throw (Error) cause;
+		}
+		catch (InterruptedException e) {
+			failed(key, entry);
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while reading " + file);
+		}
+
+		synchronized (this) {
+			entry.jar = jar;
+			acquired.put(jar, entry);
+			closeUnused();
+		}
+		return jar;
+	}
+
+	/**
+	 * The JAR of an entry could not be read, the entry is removed so the next
+	 * builder tries again.
+	 */
+	private synchronized void failed(String key, Entry entry) {
+		if (entries.get(key) == entry)
+			entries.remove(key);
+		entry.evicted = true;
+		if (--entry.references == 0)
+			dispose(entry);
+	}
+
+	/**
+	 * Release a Jar acquired from this cache. An evicted Jar is closed when it
+	 * is no longer used, other Jars stay open until there are too many.
+	 */
+	public synchronized void release(Jar jar) {
+		Entry entry = acquired.get(jar);
+		if (entry == null)
+			return;
+
+		if (--entry.references == 0) {
+			acquired.remove(jar);
+			if (entry.evicted)
+				dispose(entry);
+			else
+				closeUnused();
+		}
+	}
+
+	/**
+	 * The number of Jars in the cache.
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * The number of Jars that are open, this includes the evicted Jars that
+	 * are still used.
+	 */
+	public synchronized int getOpen() {
+		return open;
+	}
+
+	/**
+	 * Evict all Jars, the Jars that are in use are closed when they are
+	 * released.
+	 */
+	public synchronized void clear() {
+		for (Entry entry : entries.values())
+			evict(entry);
+		entries.clear();
+	}
+
+	/**
+	 * Close the least recently used Jars that are not used while there are too
+	 * many open Jars.
+	 */
+	private void closeUnused() {
+		Iterator<Entry> i = entries.values().iterator();
+		while (open > max && i.hasNext()) {
+			Entry entry = i.next();
+			if (entry.references == 0) {
+				i.remove();
+				evict(entry);
+			}
+		}
+	}
+
+	private void evict(Entry entry) {
+		entry.evicted = true;
+		if (entry.references == 0)
+			dispose(entry);
+	}
+
+	private void dispose(Entry entry) {
+		if (entry.jar != null)
+			entry.jar.dispose();
+		open--;
+	}
+}
@@ -5,6 +5,7 @@ import java.lang.reflect.*;
 import java.net.*;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.*;
 import java.util.concurrent.locks.*;
 import java.util.jar.*;
 import java.util.regex.*;
@@ -57,7 +58,7 @@ public class Project extends Processor {
 	boolean						inPrepare;
 	int							revision;
 	File						files[];
-	static List<Project>		trail					= new ArrayList<Project>();
+	static List<Project>		trail					= Collections.synchronizedList(new ArrayList<Project>());
 	boolean						delayRunDependencies	= false;
 	final ProjectMessages		msgs					= ReporterMessages.base(this, ProjectMessages.class);
 
@@ -104,6 +105,31 @@ public class Project extends Processor {
 		return project;
 	}
 
+	/**
+	 * Lock this project for an operation that must not run concurrently with
+	 * another operation on this project, like a build. If the lock cannot be
+	 * acquired in time an error is reported.
+	 * 
+	 * @param reason
+	 *            the operation, reported when another thread waits too long
+	 * @return true if the lock was acquired
+	 */
+	public boolean lock(String reason) throws InterruptedException {
+		if (!lock.tryLock(5, TimeUnit.MINUTES)) {
+			error("Could not acquire lock for %s, was locked by %s for %s", reason, lockingThread, lockingReason);
+			return false;
+		}
+		this.lockingReason = reason;
+		this.lockingThread = Thread.currentThread();
+		return true;
+	}
+
+	public void unlock() {
+		lockingReason = null;
+		lockingThread = null;
+		lock.unlock();
+	}
+
 	public synchronized boolean isValid() {
 		return getBase().isDirectory() && getPropertiesFile().isFile();
 	}
@@ -432,6 +458,8 @@ public class Project extends Processor {
 	public List<Container> getBundles(Strategy strategyx, String spec, String source) throws Exception {
 		List<Container> result = new ArrayList<Container>();
 		Parameters bundles = new Parameters(spec);
+		if (isTrue(getProperty(PARALLEL)))
+			resolveConcurrently(strategyx, bundles);
 
 		try {
 			for (Iterator<Entry<String,Attrs>> i = bundles.entrySet().iterator(); i.hasNext();) {
@@ -518,6 +546,49 @@ public class Project extends Processor {
 		return result;
 	}
 
+	/**
+	 * Ask the repositories for the versions of the bundles concurrently. The
+	 * results are kept in the workspace resolutions where
+	 * {@link #getBundle(String, String, Strategy, Map)} finds them, failures
+	 * are reported when the bundles are resolved in order.
+	 */
+	private void resolveConcurrently(Strategy strategy, Parameters bundles) {
+		final List<RepositoryPlugin> plugins = workspace.getRepositories();
+		List<FutureTask<Object>> tasks = new ArrayList<FutureTask<Object>>();
+		for (Entry<String,Attrs> entry : bundles.entrySet()) {
+			final String bsn = removeDuplicateMarker(entry.getKey());
+			String range = entry.getValue().get("version");
+			if (range == null)
+				range = "0";
+			else if (range.equals(VERSION_ATTR_PROJECT) || range.equals(VERSION_ATTR_SNAPSHOT)
+					|| range.equals(VERSION_ATTR_LATEST) || range.equals("file") || !VersionRange.isVersionRange(range))
+				continue;
+
+			final Strategy useStrategy = overrideStrategy(entry.getValue(), strategy);
+			if (useStrategy == Strategy.EXACT)
+				continue;
+
+			final VersionRange versionRange = new VersionRange(range);
+			FutureTask<Object> task = new FutureTask<Object>(new Callable<Object>() {
+				public Object call() throws Exception {
+					return workspace.resolutions.resolve(bsn, versionRange, useStrategy, plugins);
+				}
+			});
+			tasks.add(task);
+			getExecutor().execute(task);
+		}
+
+		for (FutureTask<Object> task : tasks) {
+			try {
+				task.run();
+				task.get();
+			}
+			catch (Exception e) {
+				// reported when the bundle is resolved
+			}
+		}
+	}
+
 	/**
 	 * Just calls a new method with a default parm.
 	 * 
@@ -795,6 +866,7 @@ public class Project extends Processor {
 
 		try {
 			PutResult r = repo.put(jarStream, new RepositoryPlugin.PutOptions());
+			workspace.resolutions.clear();
 			trace("Released %s to %s in repository %s", jarName, r.artifact, repo);
 			return r.artifact;
 		}
@@ -907,67 +979,79 @@ public class Project extends Processor {
 			VersionRange versionRange = VERSION_ATTR_LATEST.equals(range) ? new VersionRange("0") : new VersionRange(
 					range);
 
-			// We have a range search. Gather all the versions in all the repos
-			// and make a decision on that choice. If the same version is found
-			// in
-			// multiple repos we take the first
-
-			SortedMap<Version,RepositoryPlugin> versions = new TreeMap<Version,RepositoryPlugin>();
-			for (RepositoryPlugin plugin : plugins) {
-				try {
-					SortedSet<Version> vs = plugin.versions(bsn);
-					if (vs != null) {
-						for (Version v : vs) {
-							if (!versions.containsKey(v) && versionRange.includes(v))
-								versions.put(v, plugin);
+			// The workspace remembers the resolutions, a resolution is null
+			// when a repository cannot list its versions
+			Resolutions.Resolution resolution = workspace.resolutions.resolve(bsn, versionRange, useStrategy, plugins);
+			if (resolution != null) {
+				if (resolution.version != null) {
+					DownloadBlocker blocker = new DownloadBlocker(this);
+					File result = resolution.repo.get(bsn, resolution.version, attrs, blocker);
+					if (result != null)
+						return toContainer(bsn, resolution.version.toString(), attrs, result, blocker);
+				}
+			} else {
+				// A repository cannot list its versions. Gather all the
+				// versions in all the repos and make a decision on that
+				// choice. If the same version is found in multiple repos we
+				// take the first
+
+				SortedMap<Version,RepositoryPlugin> versions = new TreeMap<Version,RepositoryPlugin>();
+				for (RepositoryPlugin plugin : plugins) {
+					try {
+						SortedSet<Version> vs = plugin.versions(bsn);
+						if (vs != null) {
+							for (Version v : vs) {
+								if (!versions.containsKey(v) && versionRange.includes(v))
+									versions.put(v, plugin);
+							}
 						}
 					}
-				}
-				catch (UnsupportedOperationException ose) {
-					// We have a plugin that cannot list versions, try
-					// if it has this specific version
-					// The main reaosn for this code was the Maven Remote
-					// Repository
-					// To query, we must have a real version
-					if (!versions.isEmpty() && Verifier.isVersion(range)) {
-						Version version = new Version(range);
-						DownloadBlocker blocker = new DownloadBlocker(this);
-						File file = plugin.get(bsn, version, attrs, blocker);
-						// and the entry must exist
-						// if it does, return this as a result
-						if (file != null)
-							return toContainer(bsn, range, attrs, file, blocker);
+					catch (UnsupportedOperationException ose) {
+						// We have a plugin that cannot list versions, try
+						// if it has this specific version
+						// The main reaosn for this code was the Maven Remote
+						// Repository
+						// To query, we must have a real version
+						if (!versions.isEmpty() && Verifier.isVersion(range)) {
+							Version version = new Version(range);
+							DownloadBlocker blocker = new DownloadBlocker(this);
+							File file = plugin.get(bsn, version, attrs, blocker);
+							// and the entry must exist
+							// if it does, return this as a result
+							if (file != null)
+								return toContainer(bsn, range, attrs, file, blocker);
+						}
 					}
 				}
-			}
 
-			// Verify if we found any, if so, we use the strategy to pick
-			// the first or last
+				// Verify if we found any, if so, we use the strategy to pick
+				// the first or last
 
-			if (!versions.isEmpty()) {
-				Version provider = null;
+				if (!versions.isEmpty()) {
+					Version provider = null;
 
-				switch (useStrategy) {
-					case HIGHEST :
-						provider = versions.lastKey();
-						break;
+					switch (useStrategy) {
+						case HIGHEST :
+							provider = versions.lastKey();
+							break;
 
-					case LOWEST :
-						provider = versions.firstKey();
-						break;
-					case EXACT :
-						// TODO need to handle exact better
-						break;
+						case LOWEST :
+							provider = versions.firstKey();
+							break;
+						case EXACT :
+							// TODO need to handle exact better
+							break;
+					}
+					if (provider != null) {
+						RepositoryPlugin repo = versions.get(provider);
+						String version = provider.toString();
+						DownloadBlocker blocker = new DownloadBlocker(this);
+						File result = repo.get(bsn, provider, attrs, blocker);
+						if (result != null)
+							return toContainer(bsn, version, attrs, result, blocker);
+					} else
+						msgs.FoundVersions_ForStrategy_ButNoProvider(versions, useStrategy);
 				}
-				if (provider != null) {
-					RepositoryPlugin repo = versions.get(provider);
-					String version = provider.toString();
-					DownloadBlocker blocker = new DownloadBlocker(this);
-					File result = repo.get(bsn, provider, attrs, blocker);
-					if (result != null)
-						return toContainer(bsn, version, attrs, result, blocker);
-				} else
-					msgs.FoundVersions_ForStrategy_ButNoProvider(versions, useStrategy);
 			}
 		}
 
@@ -1089,6 +1173,7 @@ public class Project extends Processor {
 		if (rp != null) {
 			try {
 				rp.put(new BufferedInputStream(new FileInputStream(file)), new RepositoryPlugin.PutOptions());
+				workspace.resolutions.clear();
 				return;
 			}
 			catch (Exception e) {
@@ -1216,6 +1301,19 @@ public class Project extends Processor {
 	 * @throws Exception
 	 */
 	public File[] build(boolean underTest) throws Exception {
+		return build(underTest, new Staleness());
+	}
+
+	/**
+	 * Build this project if it is stale in the given build session.
+	 * 
+	 * @param underTest
+	 * @param staleness
+	 *            the staleness of the projects in the build session
+	 * @return
+	 * @throws Exception
+	 */
+	public File[] build(boolean underTest, Staleness staleness) throws Exception {
 		if (isNoBundles())
 			return null;
 
@@ -1224,9 +1322,10 @@ public class Project extends Processor {
 			return null;
 		}
 
-		if (isStale()) {
+		if (isStale(staleness)) {
 			trace("building " + this);
 			files = buildLocal(underTest);
+			staleness.built(this);
 		}
 
 		return files;
@@ -1244,59 +1343,22 @@ public class Project extends Processor {
 	 * Check if this project needs building. This is defined as:
 	 */
 	public boolean isStale() throws Exception {
-		if (workspace.isOffline()) {
-			trace("working %s offline, so always stale", this);
-			return true;
-		}
-
-		Set<Project> visited = new HashSet<Project>();
-		return isStale(visited);
+		return isStale(new Staleness());
 	}
 
-	boolean isStale(Set<Project> visited) throws Exception {
-		// When we do not generate anything ...
-		if (isNoBundles())
-			return false;
-
-		if (visited.contains(this)) {
-			msgs.CircularDependencyContext_Message_(this.getName(), visited.toString());
-			return false;
-		}
-
-		visited.add(this);
-
-		long buildTime = 0;
-
-		files = getBuildFiles(false);
-		if (files == null)
+	/**
+	 * Check if this project needs building, reusing the results of the given
+	 * build session.
+	 * 
+	 * @see Staleness
+	 */
+	public boolean isStale(Staleness staleness) throws Exception {
+		if (workspace.isOffline()) {
+			trace("working %s offline, so always stale", this);
 			return true;
-
-		for (File f : files) {
-			if (f.lastModified() < lastModified())
-				return true;
-
-			if (buildTime < f.lastModified())
-				buildTime = f.lastModified();
-		}
-
-		for (Project dependency : getDependson()) {
-			if (dependency == this)
-				continue;
-
-			if (dependency.isStale())
-				return true;
-
-			if (dependency.isNoBundles())
-				continue;
-
-			File[] deps = dependency.getBuildFiles();
-			for (File f : deps) {
-				if (f.lastModified() >= buildTime)
-					return true;
-			}
 		}
 
-		return false;
+		return staleness.isStale(this);
 	}
 
 	/**
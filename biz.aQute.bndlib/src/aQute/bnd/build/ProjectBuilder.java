@@ -21,14 +21,32 @@ public class ProjectBuilder extends Builder {
 	Project							project;
 	boolean							initialized;
 
+	/**
+	 * The Jars of the project classpath, a builder and its sub builders share
+	 * them so a Jar is only read once
+	 */
+	final Map<File,Jar>				classpathJars;
+
+	/**
+	 * The Jars this builder acquired from the workspace {@link JarCache}
+	 */
+	final List<Jar>					acquired		= new ArrayList<Jar>();
+
+	/**
+	 * The files on the classpath that come from a repository
+	 */
+	final Set<File>					repositoryFiles	= new HashSet<File>();
+
 	public ProjectBuilder(Project project) {
 		super(project);
 		this.project = project;
+		this.classpathJars = new HashMap<File,Jar>();
 	}
 
 	public ProjectBuilder(ProjectBuilder builder) {
 		super(builder);
 		this.project = builder.project;
+		this.classpathJars = builder.classpathJars;
 	}
 
 	@Override
@@ -61,15 +79,15 @@ public class ProjectBuilder extends Builder {
 			if (!initialized) {
 				initialized = true;
 				for (Container file : project.getClasspath()) {
-					addClasspath(file.getFile());
+					addClasspath(file);
 				}
 
 				for (Container file : project.getBuildpath()) {
-					addClasspath(file.getFile());
+					addClasspath(file);
 				}
 
 				for (Container file : project.getBootclasspath()) {
-					addClasspath(file.getFile());
+					addClasspath(file);
 				}
 
 				for (File file : project.getAllsourcepath()) {
@@ -83,6 +101,48 @@ public class ProjectBuilder extends Builder {
 		}
 	}
 
+	private void addClasspath(Container container) throws IOException {
+		if (container.getType() == Container.TYPE.REPO)
+			repositoryFiles.add(container.getFile());
+		addClasspath(container.getFile());
+	}
+
+	/**
+	 * Repository JAR files are shared with all builders in the workspace. Other
+	 * files, like the JARs of other projects, and directories can change while
+	 * the workspace is open so they are only shared with the sub builders.
+	 */
+	@Override
+	protected Jar openClasspath(File cp) throws IOException {
+		if (cp.isFile() && repositoryFiles.contains(cp)) {
+			Jar jar = project.getWorkspace().getJarCache().acquire(cp);
+			synchronized (acquired) {
+				acquired.add(jar);
+			}
+			return jar;
+		}
+
+		synchronized (classpathJars) {
+			Jar jar = classpathJars.get(cp);
+			if (jar == null) {
+				jar = super.openClasspath(cp);
+				classpathJars.put(cp, jar);
+			}
+			return jar;
+		}
+	}
+
+	@Override
+	public void close() {
+		super.close();
+		JarCache cache = project.getWorkspace().getJarCache();
+		synchronized (acquired) {
+			for (Jar jar : acquired)
+				cache.release(jar);
+			acquired.clear();
+		}
+	}
+
 	@Override
 	public List<Jar> getClasspath() {
 		init();
@@ -139,7 +199,14 @@ public class ProjectBuilder extends Builder {
 
 		trace("baseline %s-%s against: %s", getBsn(), getVersion(), fromRepo.getName());
 		try {
-			Baseline baseliner = new Baseline(this, differ);
+			//
+			// The baseline does not change between builds, its tree
+			// is kept in the workspace cache
+			//
+
+			TreeCache cache = new TreeCache(getFile(project.getWorkspace().buildDir, Workspace.CACHEDIR + "/baselines"),
+					diffignore);
+			Baseline baseliner = new Baseline(this, differ, cache);
 
 			Set<Info> infos = baseliner.baseline(dot, fromRepo, null);
 			if (infos.isEmpty())
@@ -218,6 +218,10 @@ public abstract class ProjectLauncher {
 		return storageDir;
 	}
 
+	public void setStorageDir(File storageDir) {
+		this.storageDir = storageDir;
+	}
+
 	public abstract String getMainTypeName();
 
 	public abstract void update() throws Exception;
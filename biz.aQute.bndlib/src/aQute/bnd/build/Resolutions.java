@@ -0,0 +1,104 @@
+package aQute.bnd.build;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import aQute.bnd.service.*;
+import aQute.bnd.version.*;
+
+/**
+ * The repository versions the projects of a workspace resolved. The projects
+ * of a workspace refer to the same bundles on their paths; the repositories
+ * are asked for the versions of a bsn once for each bsn, range, strategy and
+ * set of repositories. A bsn that is not found is not remembered. The
+ * resolutions are kept across builds. They are cleared when the workspace is
+ * refreshed or its properties change, when a repository reports a change on
+ * refresh, or when a project puts a bundle in a repository.
+ */
+class Resolutions {
+	final ConcurrentMap<List<Object>,FutureTask<Resolution>>	table	= new ConcurrentHashMap<List<Object>,FutureTask<Resolution>>();
+
+	/**
+	 * The repository and version that provide a bundle, both null when no
+	 * repository has a version in range.
+	 */
+	static class Resolution {
+		final RepositoryPlugin	repo;
+		final Version			version;
+
+		Resolution(RepositoryPlugin repo, Version version) {
+			this.repo = repo;
+			this.version = version;
+		}
+	}
+
+	/**
+	 * Answer the repository and version for a bsn and range, or null when one
+	 * of the repositories cannot list its versions. Concurrent calls for the
+	 * same key wait for the first; a failure or a bsn that is not found is not
+	 * remembered.
+	 */
+	Resolution resolve(final String bsn, final VersionRange range, final Strategy strategy,
+			final List<RepositoryPlugin> plugins) throws Exception {
+		List<Object> key = Arrays.<Object> asList(bsn, range.toString(), strategy, plugins);
+		FutureTask<Resolution> task = table.get(key);
+		if (task == null) {
+			FutureTask<Resolution> created = new FutureTask<Resolution>(new Callable<Resolution>() {
+				public Resolution call() throws Exception {
+					return versions(bsn, range, strategy, plugins);
+				}
+			});
+			task = table.putIfAbsent(key, created);
+			if (task == null)
+				task = created;
+		}
+		task.run();
+		try {
+			Resolution resolution = task.get();
+			if (resolution == null || resolution.repo == null)
+				table.remove(key, task);
+			return resolution;
+		}
+		catch (ExecutionException e) {
+			table.remove(key, task);
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception)
+				throw (Exception) cause;
+			throw (Error) cause;
+		}
+	}
+
+	void clear() {
+		table.clear();
+	}
+
+	/**
+	 * Gather the versions in range in all the repositories and pick one with
+	 * the strategy. If the same version is found in multiple repositories we
+	 * take the first.
+	 */
+	static Resolution versions(String bsn, VersionRange range, Strategy strategy, List<RepositoryPlugin> plugins)
+			throws Exception {
+		SortedMap<Version,RepositoryPlugin> versions = new TreeMap<Version,RepositoryPlugin>();
+		for (RepositoryPlugin plugin : plugins) {
+			try {
+				SortedSet<Version> vs = plugin.versions(bsn);
+				if (vs != null) {
+					for (Version v : vs) {
+						if (!versions.containsKey(v) && range.includes(v))
+							versions.put(v, plugin);
+					}
+				}
+			}
+			catch (UnsupportedOperationException ose) {
+				return null;
+			}
+		}
+
+		if (versions.isEmpty())
+			return new Resolution(null, null);
+
+		Version provider = strategy == Strategy.LOWEST ? versions.firstKey() : versions.lastKey();
+		return new Resolution(versions.get(provider), provider);
+	}
+}
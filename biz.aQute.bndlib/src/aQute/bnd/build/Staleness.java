@@ -0,0 +1,162 @@
+package aQute.bnd.build;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Decides which projects are stale during a build session. A project is
+ * stale when it has no build files, when one of its inputs is newer than its
+ * build files, or when a project it depends on is stale or has newer build
+ * files. The inputs are the bnd file and its includes, the files on the
+ * buildpath, and the files in the source and output directories.
+ * <p>
+ * The modification time of every file is read once per session and the
+ * result for a project is remembered, so a project that is shared by many
+ * projects is only checked once. A session should therefore be short lived,
+ * for example a single build of the workspace. When a project is built during
+ * the session, {@link #built(Project)} must be called so its dependents see
+ * the new build files.
+ * <p>
+ * A session can be used by concurrent builds. Only the remembered results are
+ * shared, the checks do not lock. Two threads may check the same project at the
+ * same time, the first result is kept.
+ */
+public class Staleness {
+	final ConcurrentMap<Project,Boolean>	stale		= new ConcurrentHashMap<Project,Boolean>();
+	final ThreadLocal<Set<Project>>			checking	= new ThreadLocal<Set<Project>>() {
+															@Override
+															protected Set<Project> initialValue() {
+																return new HashSet<Project>();
+															}
+														};
+	final ConcurrentMap<File,Long>			modified	= new ConcurrentHashMap<File,Long>();
+	final ConcurrentMap<File,Long>			newest		= new ConcurrentHashMap<File,Long>();
+
+	/**
+	 * Answer if the project must be built.
+	 */
+	public boolean isStale(Project project) throws Exception {
+		Boolean result = stale.get(project);
+		if (result == null) {
+			Set<Project> checking = this.checking.get();
+			if (!checking.add(project)) {
+				project.msgs.CircularDependencyContext_Message_(project.getName(), checking.toString());
+				return false;
+			}
+			try {
+				result = check(project);
+			}
+			finally {
+				checking.remove(project);
+			}
+			// A project built during the check keeps its result
+			Boolean previous = stale.putIfAbsent(project, result);
+			if (previous != null)
+				result = previous;
+		}
+		return result;
+	}
+
+	/**
+	 * Record that the project was built, its build files are up to date and
+	 * their modification times are read again. A project without build files
+	 * failed and remains stale.
+	 */
+	public void built(Project project) {
+		File[] files = project.getFiles();
+		if (files != null)
+			for (File f : files)
+				modified.remove(f);
+		stale.put(project, files == null);
+	}
+
+	private boolean check(Project project) throws Exception {
+		// When we do not generate anything ...
+		if (project.isNoBundles())
+			return false;
+
+		File[] files = project.getBuildFiles(false);
+		if (files == null)
+			return true;
+
+		long oldest = Long.MAX_VALUE;
+		long buildTime = 0;
+		for (File f : files) {
+			long time = lastModified(f);
+			oldest = Math.min(oldest, time);
+			buildTime = Math.max(buildTime, time);
+		}
+
+		if (oldest < project.lastModified())
+			return true;
+
+		for (Container container : project.getBuildpath()) {
+			switch (container.getType()) {
+				case REPO :
+				case EXTERNAL :
+				case LIBRARY :
+					if (oldest < lastModified(container.getFile()))
+						return true;
+					break;
+
+				default :
+					break;
+			}
+		}
+
+		File target = project.getTarget();
+		if (oldest < newest(project.getSrc(), target) || oldest < newest(project.getOutput(), target))
+			return true;
+
+		for (Project dependency : project.getDependson()) {
+			if (dependency == project)
+				continue;
+
+			if (isStale(dependency))
+				return true;
+
+			if (dependency.isNoBundles())
+				continue;
+
+			File[] deps = dependency.getBuildFiles();
+			for (File f : deps) {
+				if (lastModified(f) >= buildTime)
+					return true;
+			}
+		}
+		return false;
+	}
+
+	private long lastModified(File f) {
+		Long time = modified.get(f);
+		if (time == null) {
+			time = f.lastModified();
+			modified.put(f, time);
+		}
+		return time;
+	}
+
+	/**
+	 * Answer the modification time of the newest file in a directory, the
+	 * excluded directory is skipped.
+	 */
+	private long newest(File dir, File exclude) {
+		Long time = newest.get(dir);
+		if (time == null) {
+			long result = 0;
+			File[] list = dir.listFiles();
+			if (list != null)
+				for (File f : list) {
+					if (f.isDirectory()) {
+						if (!f.equals(exclude))
+							result = Math.max(result, newest(f, exclude));
+					} else
+						result = Math.max(result, lastModified(f));
+				}
+			time = result;
+			newest.put(dir, time);
+		}
+		return time;
+	}
+}
@@ -42,6 +42,8 @@ public class Workspace extends Processor {
 	final Maven									maven		= new Maven(Processor.getExecutor());
 	private boolean								offline		= true;
 	Settings									settings	= new Settings();
+	final JarCache								jarCache	= new JarCache();
+	final Resolutions							resolutions	= new Resolutions();
 
 	/**
 	 * This static method finds the workspace and creates a project (or returns
@@ -171,6 +173,14 @@ public class Workspace extends Processor {
 
 	@Override
 	public boolean refresh() {
+		// Repositories can change without the workspace knowing
+		try {
+			refreshRepositories();
+		}
+		catch (Exception e) {
+			error("Refreshing the repositories failed: %s", e);
+		}
+		resolutions.clear();
 		if (super.refresh()) {
 			for (Project project : getCurrentProjects()) {
 				project.propertiesChanged();
@@ -180,9 +190,26 @@ public class Workspace extends Processor {
 		return false;
 	}
 
+	/**
+	 * Refresh the refreshable repositories. The bundles the projects resolved
+	 * from the repositories are resolved again when a repository reports a
+	 * change.
+	 */
+	public boolean refreshRepositories() throws Exception {
+		boolean changed = false;
+		for (RepositoryPlugin repo : getRepositories()) {
+			if (repo instanceof Refreshable && ((Refreshable) repo).refresh())
+				changed = true;
+		}
+		if (changed)
+			resolutions.clear();
+		return changed;
+	}
+
 	@Override
 	public void propertiesChanged() {
 		super.propertiesChanged();
+		resolutions.clear();
 		File extDir = new File(this.buildDir, "ext");
 		File[] extensions = extDir.listFiles();
 		if (extensions != null) {
@@ -377,30 +404,14 @@ public class Workspace extends Processor {
 		return getPlugins(RepositoryPlugin.class);
 	}
 
+	/**
+	 * Answer all projects in an order where a project comes after the projects
+	 * it depends on.
+	 * 
+	 * @see BuildScheduler
+	 */
 	public Collection<Project> getBuildOrder() throws Exception {
-		List<Project> result = new ArrayList<Project>();
-		for (Project project : getAllProjects()) {
-			Collection<Project> dependsOn = project.getDependson();
-			getBuildOrder(dependsOn, result);
-			if (!result.contains(project)) {
-				result.add(project);
-			}
-		}
-		return result;
-	}
-
-	private void getBuildOrder(Collection<Project> dependsOn, List<Project> result) throws Exception {
-		for (Project project : dependsOn) {
-			Collection<Project> subProjects = project.getDependson();
-			for (Project subProject : subProjects) {
-				if (!result.contains(subProject)) {
-					result.add(subProject);
-				}
-			}
-			if (!result.contains(project)) {
-				result.add(project);
-			}
-		}
+		return new BuildScheduler(this, getAllProjects()).getOrder();
 	}
 
 	public static Workspace getWorkspace(String path) throws Exception {
@@ -412,6 +423,20 @@ public class Workspace extends Processor {
 		return maven;
 	}
 
+	/**
+	 * The classpath Jars shared by the builders of the projects in this
+	 * workspace.
+	 */
+	public JarCache getJarCache() {
+		return jarCache;
+	}
+
+	@Override
+	public void close() {
+		jarCache.clear();
+		super.close();
+	}
+
 	@Override
 	protected void setTypeSpecificPlugins(Set<Object> list) {
 		try {
@@ -421,6 +446,9 @@ public class Workspace extends Processor {
 			if (!isTrue(getProperty(NOBUILDINCACHE))) {
 				list.add(new CachedFileRepo());
 			}
+			if (isTrue(getProperty(CLASSCACHE))) {
+				list.add(new ClazzCache(getFile(buildDir, CACHEDIR + "/classes")));
+			}
 
 			resourceRepositoryImpl = new ResourceRepositoryImpl();
 			resourceRepositoryImpl.setCache(IO.getFile(getProperty(CACHEDIR, "~/.bnd/caches/shas")));
@@ -40,6 +40,7 @@ public class Baseline {
 	final Differ		differ;
 	final Reporter		bnd;
 	final BundleInfo	binfo	= new BundleInfo();
+	final TreeCache		cache;
 
 	Diff				diff;
 	Set<Info>			infos;
@@ -50,8 +51,17 @@ public class Baseline {
 	String				releaseRepository;
 
 	public Baseline(Reporter bnd, Differ differ) throws IOException {
+		this(bnd, differ, null);
+	}
+
+	/**
+	 * Create a baseliner that takes the tree of the older jar from a cache
+	 * when it is there.
+	 */
+	public Baseline(Reporter bnd, Differ differ, TreeCache cache) throws IOException {
 		this.differ = differ;
 		this.bnd = bnd;
+		this.cache = cache;
 	}
 
 	/**
@@ -68,7 +78,7 @@ public class Baseline {
 	public Set<Info> baseline(Jar newer, Jar older, Instructions packageFilters) throws Exception {
 		Tree n = differ.tree(newer);
 		Parameters nExports = getExports(newer);
-		Tree o = differ.tree(older);
+		Tree o = cache == null ? differ.tree(older) : cache.tree(differ, older);
 		Parameters oExports = getExports(older);
 		if (packageFilters == null)
 			packageFilters = new Instructions();
@@ -0,0 +1,185 @@
+package aQute.bnd.differ;
+
+import java.io.*;
+
+import aQute.bnd.osgi.*;
+import aQute.bnd.service.diff.*;
+import aQute.bnd.service.diff.Tree.Data;
+import aQute.libg.cryptography.*;
+
+/**
+ * A persistent cache of the API trees of baseline JARs. A baseline JAR does not
+ * change between builds, analyzing it again on every build costs as much as
+ * analyzing the bundle that is built. A tree is identified by the SHA-1 of the
+ * JAR file, the headers the differ ignores and the version of bnd, so trees of
+ * an older analyzer are never diffed against trees of a newer one. The cache
+ * holds the serialized {@link Tree.Data} of the tree.
+ * <p>
+ * Each entry is a file in a directory named after the first two hex digits of
+ * the key. Entries are written to a temporary file first and then renamed so
+ * concurrent builds never see a partial entry. An entry that cannot be read is
+ * ignored and the JAR is analyzed again.
+ */
+public class TreeCache {
+	static final int	VERSION	= 1;
+	static final String	BND;
+	static {
+		Analyzer analyzer = new Analyzer();
+		try {
+			BND = analyzer.getBndVersion();
+		}
+		finally {
+			analyzer.close();
+		}
+	}
+
+	final File			dir;
+	final String		ignore;
+
+	/**
+	 * @param dir the directory of the cache
+	 * @param ignore the headers the differ ignores, null for none
+	 */
+	public TreeCache(File dir, String ignore) {
+		this.dir = dir;
+		this.ignore = ignore;
+	}
+
+	/**
+	 * Answer the tree of a JAR from the cache or, if the tree is not in the
+	 * cache yet, calculate it with the differ and add it to the cache. A JAR
+	 * that is not read from a file is not cached.
+	 */
+	public Tree tree(Differ differ, Jar jar) throws Exception {
+		File source = jar.getSource();
+		if (source == null || !source.isFile())
+			return differ.tree(jar);
+
+		StringBuilder key = new StringBuilder(SHA1.digest(source).asHex()).append('\n').append(BND);
+		if (ignore != null)
+			key.append('\n').append(ignore);
+		String sha = SHA1.digest(key.toString().getBytes("UTF-8")).asHex();
+
+		File file = new File(new File(dir, sha.substring(0, 2)), sha);
+		if (file.isFile()) {
+			Data data = read(file);
+			if (data != null)
+				return differ.deserialize(data);
+		}
+
+		Tree tree = differ.tree(jar);
+		write(tree.serialize(), file);
+		return tree;
+	}
+
+	private Data read(File file) {
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			try {
+				if (in.readInt() != VERSION)
+					return null;
+				return read(in, file.length());
+			}
+			finally {
+				in.close();
+			}
+		}
+		catch (IOException e) {
+			return null;
+		}
+		catch (RuntimeException e) {
+			// An unknown type or delta or a corrupt entry
+			return null;
+		}
+	}
+
+	/*
+	 * No length in a valid entry is larger than the entry, a corrupt length
+	 * must not allocate arbitrary memory
+	 */
+	private Data read(DataInputStream in, long limit) throws IOException {
+		Data data = new Data();
+		data.name = readString(in, limit);
+		data.type = Type.valueOf(readString(in, limit));
+		data.add = Delta.valueOf(readString(in, limit));
+		data.rem = Delta.valueOf(readString(in, limit));
+		if (in.readBoolean())
+			data.comment = readString(in, limit);
+		int n = readLength(in, limit);
+		if (n > 0) {
+			data.children = new Data[n];
+			for (int i = 0; i < n; i++)
+				data.children[i] = read(in, limit);
+		}
+		return data;
+	}
+
+	private void write(Data data, File file) {
+		File parent = file.getParentFile();
+		parent.mkdirs();
+		File tmp = null;
+		try {
+			tmp = File.createTempFile(file.getName(), ".tmp", parent);
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+			try {
+				out.writeInt(VERSION);
+				write(data, out);
+			}
+			finally {
+				out.close();
+			}
+			if (tmp.renameTo(file))
+				tmp = null;
+		}
+		catch (IOException e) {
+			// The cache is an optimization, the tree is calculated already
+		}
+		finally {
+			if (tmp != null)
+				tmp.delete();
+		}
+	}
+
+	private void write(Data data, DataOutputStream out) throws IOException {
+		writeString(out, data.name);
+		writeString(out, data.type.name());
+		writeString(out, data.add.name());
+		writeString(out, data.rem.name());
+		out.writeBoolean(data.comment != null);
+		if (data.comment != null)
+			writeString(out, data.comment);
+		if (data.children == null)
+			out.writeInt(0);
+		else {
+			out.writeInt(data.children.length);
+			for (Data child : data.children)
+				write(child, out);
+		}
+	}
+
+	/*
+	 * Header values can be longer than writeUTF allows
+	 */
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		byte[] bytes = s.getBytes("UTF-8");
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in, long limit) throws IOException {
+		byte[] bytes = new byte[readLength(in, limit)];
+		in.readFully(bytes);
+		return new String(bytes, "UTF-8");
+	}
+
+	private static int readLength(DataInputStream in, long limit) throws IOException {
+		int n = in.readInt();
+		if (n < 0 || n > limit)
+			throw new IOException("Corrupt length " + n);
+		return n;
+	}
+
+	public File getDirectory() {
+		return dir;
+	}
+}
@@ -341,6 +341,10 @@ public class Syntax implements Constants {
 			new Syntax(BUMPPOLICY, "Sets the version bump policy. This is a parameter to the ${version} macro.",
 					BUMPPOLICY + "==+0", "==+,=+0,+00", Pattern.compile("[=+-0][=+-0][=+-0]")),
 
+			new Syntax(CLASSCACHE,
+					"Keep the analysis of class files in the workspace cache, keyed by the SHA-1 of the class, so unchanged classes are not parsed again.",
+					CLASSCACHE + "=true", "true,false", Verifier.TRUEORFALSEPATTERN),
+
 			new Syntax(CONDUIT,
 					"Allows a bnd file to point to files which will be returned when the bnd file is build.", CONDUIT
 							+ "= jar/osgi.jar", null, null),
@@ -395,6 +399,10 @@ new Syntax(FIXUPMESSAGES, "Rearrange and/or replace errors and warnings. Errors
 			new Syntax(NOUSES, "Do not calculate the " + USES_DIRECTIVE + " directive on exports.", NOUSES + "=true",
 					"true,false", Verifier.TRUEORFALSEPATTERN),
 
+			new Syntax(PARALLEL,
+					"Parse the class files of the bundle, build the sub bundles, and query the repositories for the bundles on a path concurrently. The resulting manifests are identical to the sequential build.",
+					PARALLEL + "=true", "true,false", Verifier.TRUEORFALSEPATTERN),
+
 			new Syntax(PEDANTIC, "Warn about things that are not really wrong but still not right.",
 					PEDANTIC + "=true", "true,false", Verifier.TRUEORFALSEPATTERN),
 
@@ -435,6 +443,15 @@ new Syntax(FIXUPMESSAGES, "Rearrange and/or replace errors and warnings. Errors
 					+ ", that are started before the project is run.", RUNBUNDLES
 					+ "=osgi;version=\"[4.1,4.2)\", junit.junit, com.acme.foo;version=project", null,
 					Verifier.SYMBOLICNAME, path_version),
+			new Syntax(TESTPARALLEL,
+					"Run the test classes in the framework concurrently on the given number of threads, true uses a thread per processor.",
+					TESTPARALLEL + "=4", null, null),
+			new Syntax(TESTSHARDS,
+					"Divide the test cases over the given number of frameworks that run concurrently. The test reports of the frameworks are merged.",
+					TESTSHARDS + "=2", null, Verifier.NUMBERPATTERN),
+			new Syntax(RUNPARALLEL,
+					"Install the run bundles concurrently and start the bundles of a start level concurrently. The launcher traces the install and start time per bundle.",
+					RUNPARALLEL + "=true", "true,false", Verifier.TRUEORFALSEPATTERN),
 			new Syntax(RUNPATH, "Additional JARs for the VM path, should include the framework.", RUNPATH
 					+ "=org.eclipse.osgi;version=3.5", null, null, path_version),
 			new Syntax(
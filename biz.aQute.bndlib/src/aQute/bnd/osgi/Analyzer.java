@@ -26,6 +26,8 @@ import java.net.*;
 import java.text.*;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 import java.util.jar.*;
 import java.util.jar.Attributes.Name;
 import java.util.regex.*;
@@ -75,9 +77,16 @@ public class Analyzer extends Processor {
 	private final List<Jar>							classpath				= list();
 	private final Map<TypeRef,Clazz>				classspace				= map();
 	private final Map<TypeRef,Clazz>				importedClassesCache	= map();
+	private ClassIndex								classIndex;
 	private boolean									analyzed				= false;
 	private boolean									diagnostics				= false;
 	private boolean									inited					= false;
+
+	/**
+	 * The analysis of the classpath shared with the other sub builders of our
+	 * parent, null if nothing is shared
+	 */
+	SharedClasspath									sharedClasspath;
 	final protected AnalyzerMessages				msgs					= ReporterMessages.base(this,
 																					AnalyzerMessages.class);
 
@@ -126,6 +135,7 @@ public class Analyzer extends Processor {
 			uses.clear();
 			apiUses.clear();
 			classspace.clear();
+			classIndex = null;
 			classpathExports.clear();
 			contracts.clear();
 
@@ -319,6 +329,7 @@ public class Analyzer extends Processor {
 				endHandleErrors(previous);
 				if (reanalyze) {
 					classspace.clear();
+					classIndex = null;
 					analyzeBundleClasspath();
 				}
 			}
@@ -1758,9 +1769,17 @@ public class Analyzer extends Processor {
 	public void addClasspath(File cp) throws IOException {
 		if (!cp.exists())
 			warning("File on classpath that does not exist: " + cp);
+		classpath.add(openClasspath(cp));
+	}
+
+	/**
+	 * Open a file that is added to the classpath. Subclasses can override this
+	 * to share the Jar with other builders.
+	 */
+	protected Jar openClasspath(File cp) throws IOException {
 		Jar jar = new Jar(cp);
 		addClose(jar);
-		classpath.add(jar);
+		return jar;
 	}
 
 	@Override
@@ -1844,6 +1863,10 @@ public class Analyzer extends Processor {
 	 */
 	private boolean analyzeJar(Jar jar, String prefix, boolean okToIncludeDirs) throws Exception {
 		Map<String,Clazz> mismatched = new HashMap<String,Clazz>();
+		Map<String,Clazz> parsed = Collections.emptyMap();
+		ClazzCache cache = getPlugin(ClazzCache.class);
+		if (isTrue(getProperty(PARALLEL)))
+			parsed = parseClassesParallel(jar, prefix, cache);
 
 		next: for (String path : jar.getResources().keySet()) {
 			if (path.startsWith(prefix)) {
@@ -1877,29 +1900,32 @@ public class Analyzer extends Processor {
 					Clazz clazz;
 					Attrs info = null;
 
-					try {
-						InputStream in = resource.openInputStream();
-						clazz = new Clazz(this, path, resource);
+					clazz = parsed.get(path);
+					if (clazz == null)
 						try {
-							// Check if we have a package-info
-							if (relativePath.endsWith("/package-info.class")) {
-								// package-info can contain an Export annotation
-								info = new Attrs();
-								parsePackageInfoClass(clazz, info);
-							} else {
-								// Otherwise we just parse it simply
-								clazz.parseClassFile();
+							InputStream in = resource.openInputStream();
+							clazz = new Clazz(this, path, resource);
+							try {
+								// Check if we have a package-info
+								if (relativePath.endsWith("/package-info.class")) {
+									// package-info can contain an Export
+									// annotation
+									info = new Attrs();
+									parsePackageInfoClass(clazz, info);
+								} else {
+									// Otherwise we just parse it simply
+									parseClassFile(clazz, cache);
+								}
+							}
+							finally {
+								in.close();
 							}
 						}
-						finally {
-							in.close();
+						catch (Throwable e) {
+							error("Invalid class file %s (%s)", e, relativePath, e);
+							e.printStackTrace();
+							continue next;
 						}
-					}
-					catch (Throwable e) {
-						error("Invalid class file %s (%s)", e, relativePath, e);
-						e.printStackTrace();
-						continue next;
-					}
 
 					String calculatedPath = clazz.getClassName().getPath();
 					if (!calculatedPath.equals(relativePath)) {
@@ -1909,6 +1935,7 @@ public class Analyzer extends Processor {
 							mismatched.put(clazz.getAbsolutePath(), clazz);
 					} else {
 						classspace.put(clazz.getClassName(), clazz);
+						classIndex = null;
 						PackageRef packageRef = clazz.getClassName().getPackageRef();
 
 						if (!contained.containsKey(packageRef)) {
@@ -1945,6 +1972,74 @@ public class Analyzer extends Processor {
 		return true;
 	}
 
+	/**
+	 * Parse the class files of a jar concurrently on the executor. Only the
+	 * parsing is done in parallel, the caller merges the results in the order
+	 * of the jar so the outcome is identical to a sequential analysis. Classes
+	 * that fail to parse (and package-info classes, which need the reporter)
+	 * are not in the result and are left to the sequential path.
+	 * 
+	 * @param jar
+	 *            the jar to parse
+	 * @param prefix
+	 *            the prefix of the classes in the jar
+	 * @param cache
+	 *            the class cache or null
+	 * @return a map of path to parsed class
+	 */
+	private Map<String,Clazz> parseClassesParallel(Jar jar, String prefix, final ClazzCache cache) throws Exception {
+		final List<String> paths = new ArrayList<String>();
+		for (String path : jar.getResources().keySet()) {
+			if (path.startsWith(prefix) && path.endsWith(".class") && !path.endsWith("/package-info.class"))
+				paths.add(path);
+		}
+
+		final Map<String,Resource> resources = jar.getResources();
+		final Map<String,Clazz> parsed = new ConcurrentHashMap<String,Clazz>();
+		final AtomicInteger next = new AtomicInteger();
+		int workers = Math.min(Runtime.getRuntime().availableProcessors(), paths.size());
+
+		List<FutureTask<Object>> tasks = new ArrayList<FutureTask<Object>>();
+		for (int i = 0; i < workers; i++) {
+			FutureTask<Object> task = new FutureTask<Object>(new Runnable() {
+				public void run() {
+					int n;
+					while ((n = next.getAndIncrement()) < paths.size()) {
+						String path = paths.get(n);
+						try {
+							Clazz clazz = new Clazz(Analyzer.this, path, resources.get(path));
+							parseClassFile(clazz, cache);
+							parsed.put(path, clazz);
+						}
+						catch (Throwable e) {
+							// reported when the sequential path parses it
+						}
+					}
+				}
+			}, null);
+			tasks.add(task);
+			getExecutor().execute(task);
+		}
+		for (FutureTask<Object> task : tasks)
+			task.get();
+
+		return parsed;
+	}
+
+	/**
+	 * Parse a class file, if the classpath is shared with other builders or
+	 * there is a class cache the analysis is taken from there when the same
+	 * class was parsed before.
+	 */
+	private void parseClassFile(Clazz clazz, ClazzCache cache) throws Exception {
+		if (sharedClasspath != null)
+			sharedClasspath.parse(clazz, cache);
+		else if (cache != null)
+			cache.parse(clazz);
+		else
+			clazz.parseClassFile();
+	}
+
 	static Pattern	OBJECT_REFERENCE	= Pattern.compile("L([^/]+/)*([^;]+);");
 
 	private void parsePackageInfoClass(final Clazz clazz, final Attrs info) throws Exception {
@@ -2203,7 +2298,7 @@ public class Analyzer extends Processor {
 
 	public Collection<Clazz> getClasses(String... args) throws Exception {
 
-		Set<Clazz> matched = new HashSet<Clazz>(classspace.values());
+		Set<Clazz> matched = null; // all classes
 		for (int i = 1; i < args.length; i++) {
 			if (args.length < i + 1)
 				throw new IllegalArgumentException("${classes} macro must have odd number of arguments. "
@@ -2229,6 +2324,17 @@ public class Analyzer extends Processor {
 				String s = args[++i];
 				instr = new Instruction(s);
 			}
+			Set<Clazz> selected = getClassIndex().select(type, instr);
+			if (selected != null) {
+				if (matched == null)
+					matched = new HashSet<Clazz>(selected);
+				else
+					matched.retainAll(selected);
+				continue;
+			}
+
+			if (matched == null)
+				matched = new HashSet<Clazz>(classspace.values());
 			for (Iterator<Clazz> c = matched.iterator(); c.hasNext();) {
 				Clazz clazz = c.next();
 				if (!clazz.is(type, instr, this)) {
@@ -2236,9 +2342,21 @@ public class Analyzer extends Processor {
 				}
 			}
 		}
+		if (matched == null)
+			matched = new HashSet<Clazz>(classspace.values());
 		return new SortedList<Clazz>(matched, Clazz.NAME_COMPARATOR);
 	}
 
+	/**
+	 * Answer the index of the classes in the classspace, it is built on first
+	 * use after the classspace changed.
+	 */
+	private ClassIndex getClassIndex() throws Exception {
+		if (classIndex == null)
+			classIndex = new ClassIndex(this, classspace.values());
+		return classIndex;
+	}
+
 	/**
 	 * Get the exporter of a package ...
 	 */
@@ -2302,7 +2420,7 @@ public class Analyzer extends Processor {
 		}
 		if (r != null) {
 			c = new Clazz(this, typeRef.getPath(), r);
-			c.parseClassFile();
+			parseClassFile(c, getPlugin(ClazzCache.class));
 			importedClassesCache.put(typeRef, c);
 		}
 		return c;
@@ -22,6 +22,31 @@ public class Annotation {
 		this.policy = policy;
 	}
 
+	/*
+	 * A copy with its own elements, nested annotations are copied as well
+	 */
+	Annotation copy() {
+		Map<String,Object> elements = this.elements;
+		if (!elements.isEmpty()) {
+			elements = new LinkedHashMap<String,Object>(elements);
+			for (Map.Entry<String,Object> entry : elements.entrySet())
+				entry.setValue(copy(entry.getValue()));
+		}
+		return new Annotation(name, elements, member, policy);
+	}
+
+	private static Object copy(Object value) {
+		if (value instanceof Annotation)
+			return ((Annotation) value).copy();
+		if (value instanceof Object[]) {
+			Object[] values = ((Object[]) value).clone();
+			for (int i = 0; i < values.length; i++)
+				values[i] = copy(values[i]);
+			return values;
+		}
+		return value;
+	}
+
 	public TypeRef getName() {
 		return name;
 	}
@@ -3,6 +3,7 @@ package aQute.bnd.osgi;
 import java.io.*;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.*;
 import java.util.jar.*;
 import java.util.regex.*;
 import java.util.zip.*;
@@ -1214,12 +1215,50 @@ public class Builder extends Analyzer {
 
 		builders = getSubBuilders();
 
-		for (Builder builder : builders) {
+		// The sub builders share the analysis of the classpath and, with
+		// -parallel, run concurrently. The results and messages are always
+		// collected in the order of the builders.
+		boolean parallel = false;
+		if (builders.size() > 1) {
+			SharedClasspath shared = new SharedClasspath();
+			for (Builder builder : builders)
+				builder.sharedClasspath = shared;
+			parallel = isTrue(getProperty(PARALLEL));
+
+			// getPlugins publishes the set before it is filled, the sub
+			// builders must find the plugins of their parent complete
+			if (parallel)
+				getPlugins();
+		}
+
+		List<FutureTask<Jar>> tasks = new ArrayList<FutureTask<Jar>>();
+		for (final Builder builder : builders) {
+			FutureTask<Jar> task = new FutureTask<Jar>(new Callable<Jar>() {
+				public Jar call() throws Exception {
+					return builder.build();
+				}
+			});
+			tasks.add(task);
+			if (parallel)
+				getExecutor().execute(task);
+		}
+
+		for (int i = 0; i < builders.size(); i++) {
+			Builder builder = builders.get(i);
+			FutureTask<Jar> task = tasks.get(i);
 			try {
-				Jar jar = builder.build();
+				task.run();
+				Jar jar = task.get();
 				jar.setName(builder.getBsn());
 				result.add(jar);
 			}
+			catch (ExecutionException ee) {
+				Throwable e = ee.getCause();
+				if (e instanceof Error)
+					throw (Error) e;
+				e.printStackTrace();
+				error("Sub Building " + builder.getBsn(), e);
+			}
 			catch (Exception e) {
 				e.printStackTrace();
 				error("Sub Building " + builder.getBsn(), e);
@@ -0,0 +1,251 @@
+package aQute.bnd.osgi;
+
+import java.util.*;
+
+import aQute.bnd.osgi.Clazz.FieldDef;
+import aQute.bnd.osgi.Clazz.MethodDef;
+import aQute.bnd.osgi.Descriptors.TypeRef;
+
+/**
+ * The calls a class file makes on a {@link ClassDataCollector}, recorded the
+ * first time a clazz is parsed with a collector. The DS, metatype, diff and
+ * coverage code all parse the classes of a bundle with their own collector;
+ * after the first parse the calls are replayed from the record and the class
+ * file is not read and parsed again.
+ * <p>
+ * The record keeps the kind of each call followed by its arguments. Collectors
+ * may modify the field and method definitions and the annotations they get,
+ * for example to mark a definition deprecated or to add a default to an
+ * annotation, so each replay gets copies of them as the parser found them. The
+ * type references, strings and numbers are not modified by collectors and are
+ * shared.
+ */
+class ClassDataRecord {
+	enum Call {
+		VERSION, CLASSSTART, EXTENDS, IMPLEMENTS, REFERENCE, ANNOTATION, PARAMETER, METHOD, FIELD, CLASSEND, DEPRECATED, ENCLOSINGMETHOD, INNERCLASS, SIGNATURE, CONSTANT, MEMBEREND, REFERENCEMETHOD, REFERTO;
+	}
+
+	final List<Object>	calls	= new ArrayList<Object>();
+	Set<TypeRef>		xref;
+
+	/**
+	 * Replay the calls on a collector, answers what
+	 * {@link Clazz#parseClassFileWithCollector(ClassDataCollector)} would
+	 * answer.
+	 */
+	Set<TypeRef> replay(ClassDataCollector cd) throws Exception {
+		int i = 0;
+		while (i < calls.size()) {
+			Call call = (Call) calls.get(i++);
+			switch (call) {
+				case VERSION :
+					cd.version((Integer) calls.get(i++), (Integer) calls.get(i++));
+					break;
+				case CLASSSTART :
+					if (!cd.classStart((Integer) calls.get(i++), (TypeRef) calls.get(i++)))
+						return null;
+					break;
+				case EXTENDS :
+					cd.extendsClass((TypeRef) calls.get(i++));
+					break;
+				case IMPLEMENTS :
+					cd.implementsInterfaces(((TypeRef[]) calls.get(i++)).clone());
+					break;
+				case REFERENCE :
+					cd.addReference((TypeRef) calls.get(i++));
+					break;
+				case ANNOTATION :
+					cd.annotation(((Annotation) calls.get(i++)).copy());
+					break;
+				case PARAMETER :
+					cd.parameter((Integer) calls.get(i++));
+					break;
+				case METHOD :
+					cd.method(((MethodDef) calls.get(i++)).copy());
+					break;
+				case FIELD :
+					cd.field(((FieldDef) calls.get(i++)).copy());
+					break;
+				case CLASSEND :
+					cd.classEnd();
+					break;
+				case DEPRECATED :
+					cd.deprecated();
+					break;
+				case ENCLOSINGMETHOD :
+					cd.enclosingMethod((TypeRef) calls.get(i++), (String) calls.get(i++), (String) calls.get(i++));
+					break;
+				case INNERCLASS :
+					cd.innerClass((TypeRef) calls.get(i++), (TypeRef) calls.get(i++), (String) calls.get(i++),
+							(Integer) calls.get(i++));
+					break;
+				case SIGNATURE :
+					cd.signature((String) calls.get(i++));
+					break;
+				case CONSTANT :
+					cd.constant(calls.get(i++));
+					break;
+				case MEMBEREND :
+					cd.memberEnd();
+					break;
+				case REFERENCEMETHOD :
+					cd.referenceMethod((Integer) calls.get(i++), (TypeRef) calls.get(i++), (String) calls.get(i++),
+							(String) calls.get(i++));
+					break;
+				case REFERTO :
+					cd.referTo((TypeRef) calls.get(i++), (Integer) calls.get(i++));
+					break;
+			}
+		}
+		return xref == null ? null : new HashSet<TypeRef>(xref);
+	}
+
+	/**
+	 * Records the calls while passing them on to a collector. The parse always
+	 * continues to the end so the record is complete, also when the collector
+	 * is no longer interested after the class start.
+	 */
+	static class Recorder extends ClassDataCollector {
+		final ClassDataRecord		record	= new ClassDataRecord();
+		final ClassDataCollector	cd;
+		boolean						stopped;
+
+		Recorder(ClassDataCollector cd) {
+			this.cd = cd;
+		}
+
+		private void add(Call call, Object... args) {
+			record.calls.add(call);
+			for (Object arg : args)
+				record.calls.add(arg);
+		}
+
+		@Override
+		public void version(int minor, int major) {
+			add(Call.VERSION, minor, major);
+			if (!stopped)
+				cd.version(minor, major);
+		}
+
+		@Override
+		public boolean classStart(int access, TypeRef className) {
+			add(Call.CLASSSTART, access, className);
+			if (!stopped && !cd.classStart(access, className))
+				stopped = true;
+			return true;
+		}
+
+		@Override
+		public void extendsClass(TypeRef zuper) throws Exception {
+			add(Call.EXTENDS, zuper);
+			if (!stopped)
+				cd.extendsClass(zuper);
+		}
+
+		@Override
+		public void implementsInterfaces(TypeRef[] interfaces) throws Exception {
+			add(Call.IMPLEMENTS, (Object) interfaces.clone());
+			if (!stopped)
+				cd.implementsInterfaces(interfaces);
+		}
+
+		@Override
+		public void addReference(TypeRef ref) {
+			add(Call.REFERENCE, ref);
+			if (!stopped)
+				cd.addReference(ref);
+		}
+
+		@Override
+		public void annotation(Annotation annotation) {
+			add(Call.ANNOTATION, annotation.copy());
+			if (!stopped)
+				cd.annotation(annotation);
+		}
+
+		@Override
+		public void parameter(int p) {
+			add(Call.PARAMETER, p);
+			if (!stopped)
+				cd.parameter(p);
+		}
+
+		@Override
+		public void method(MethodDef defined) {
+			add(Call.METHOD, defined);
+			if (!stopped)
+				cd.method(defined);
+		}
+
+		@Override
+		public void field(FieldDef defined) {
+			add(Call.FIELD, defined);
+			if (!stopped)
+				cd.field(defined);
+		}
+
+		@Override
+		public void classEnd() throws Exception {
+			add(Call.CLASSEND);
+			if (!stopped)
+				cd.classEnd();
+		}
+
+		@Override
+		public void deprecated() throws Exception {
+			add(Call.DEPRECATED);
+			if (!stopped)
+				cd.deprecated();
+		}
+
+		@Override
+		public void enclosingMethod(TypeRef cName, String mName, String mDescriptor) {
+			add(Call.ENCLOSINGMETHOD, cName, mName, mDescriptor);
+			if (!stopped)
+				cd.enclosingMethod(cName, mName, mDescriptor);
+		}
+
+		@Override
+		public void innerClass(TypeRef innerClass, TypeRef outerClass, String innerName, int innerClassAccessFlags)
+				throws Exception {
+			add(Call.INNERCLASS, innerClass, outerClass, innerName, innerClassAccessFlags);
+			if (!stopped)
+				cd.innerClass(innerClass, outerClass, innerName, innerClassAccessFlags);
+		}
+
+		@Override
+		public void signature(String signature) {
+			add(Call.SIGNATURE, signature);
+			if (!stopped)
+				cd.signature(signature);
+		}
+
+		@Override
+		public void constant(Object object) {
+			add(Call.CONSTANT, object);
+			if (!stopped)
+				cd.constant(object);
+		}
+
+		@Override
+		public void memberEnd() {
+			add(Call.MEMBEREND);
+			if (!stopped)
+				cd.memberEnd();
+		}
+
+		@Override
+		public void referenceMethod(int access, TypeRef className, String method, String descriptor) {
+			add(Call.REFERENCEMETHOD, access, className, method, descriptor);
+			if (!stopped)
+				cd.referenceMethod(access, className, method, descriptor);
+		}
+
+		@Override
+		public void referTo(TypeRef typeRef, int modifiers) {
+			add(Call.REFERTO, typeRef, modifiers);
+			if (!stopped)
+				cd.referTo(typeRef, modifiers);
+		}
+	}
+}
@@ -0,0 +1,94 @@
+package aQute.bnd.osgi;
+
+import java.util.*;
+
+import aQute.bnd.osgi.Clazz.QUERY;
+import aQute.bnd.osgi.Descriptors.PackageRef;
+import aQute.bnd.osgi.Descriptors.TypeRef;
+
+/**
+ * Inverted indexes over the classes of an analyzer for the queries that
+ * otherwise have to visit every class and walk its superclass chain. A class
+ * is indexed under its annotations, under all its superclasses, under the
+ * interfaces it or one of its superclasses implements, and under the packages
+ * it or one of its superclasses imports. These are the same names the
+ * {@link Clazz#is(QUERY, Instruction, Analyzer)} method matches, the
+ * superclasses are resolved through {@link Analyzer#findClass(TypeRef)} once
+ * when the index is built.
+ */
+class ClassIndex {
+	final Map<String,Set<Clazz>>	annotated		= new HashMap<String,Set<Clazz>>();
+	final Map<String,Set<Clazz>>	extending		= new HashMap<String,Set<Clazz>>();
+	final Map<String,Set<Clazz>>	implementing	= new HashMap<String,Set<Clazz>>();
+	final Map<String,Set<Clazz>>	importing		= new HashMap<String,Set<Clazz>>();
+
+	ClassIndex(Analyzer analyzer, Collection<Clazz> classes) throws Exception {
+		for (Clazz clazz : classes) {
+			if (clazz.annotations != null)
+				for (TypeRef annotation : clazz.annotations)
+					add(annotated, annotation.getFQN(), clazz);
+
+			Set<Clazz> visited = new HashSet<Clazz>();
+			Clazz c = clazz;
+			while (c != null && visited.add(c)) {
+				if (c.interfaces != null)
+					for (TypeRef i : c.interfaces)
+						add(implementing, i.getDottedOnly(), clazz);
+				if (c.imports != null)
+					for (PackageRef imp : c.imports)
+						add(importing, imp.getFQN(), clazz);
+
+				if (c.zuper == null)
+					break;
+
+				add(extending, c.zuper.getDottedOnly(), clazz);
+				c = analyzer.findClass(c.zuper);
+			}
+		}
+	}
+
+	/**
+	 * Answer the classes that match the query, or null if the query is not
+	 * indexed. A negated instruction is not indexed.
+	 */
+	Set<Clazz> select(QUERY query, Instruction instr) {
+		if (instr == null || instr.isNegated())
+			return null;
+
+		switch (query) {
+			case ANNOTATED :
+				return select(annotated, instr);
+			case EXTENDS :
+				return select(extending, instr);
+			case IMPLEMENTS :
+				return select(implementing, instr);
+			case IMPORTS :
+				return select(importing, instr);
+			default :
+				return null;
+		}
+	}
+
+	private Set<Clazz> select(Map<String,Set<Clazz>> index, Instruction instr) {
+		if (instr.isLiteral()) {
+			Set<Clazz> result = index.get(instr.getPattern());
+			return result == null ? Collections.<Clazz> emptySet() : result;
+		}
+
+		Set<Clazz> result = new HashSet<Clazz>();
+		for (Map.Entry<String,Set<Clazz>> entry : index.entrySet()) {
+			if (instr.matches(entry.getKey()))
+				result.addAll(entry.getValue());
+		}
+		return result;
+	}
+
+	private static void add(Map<String,Set<Clazz>> index, String name, Clazz clazz) {
+		Set<Clazz> set = index.get(name);
+		if (set == null) {
+			set = new HashSet<Clazz>();
+			index.put(name, set);
+		}
+		set.add(clazz);
+	}
+}
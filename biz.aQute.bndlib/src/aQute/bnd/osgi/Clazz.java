@@ -24,7 +24,7 @@ public class Clazz {
 		}
 
 		public String getName() {
-			return (String) pool[cname];
+			return utf8(cname);
 		}
 	}
 
@@ -142,6 +142,11 @@ public class Clazz {
 	final static int					ACC_ANNOTATION	= 0x2000;
 	final static int					ACC_ENUM		= 0x4000;
 
+	/**
+	 * @deprecated The constant pool is no longer parsed into objects, this
+	 *             class is not used anymore.
+	 */
+	@Deprecated
 	static protected class Assoc {
 		Assoc(byte tag, int a, int b) {
 			this.tag = tag;
@@ -261,6 +266,22 @@ public class Clazz {
 			this.descriptor = analyzer.getDescriptor(descriptor);
 		}
 
+		/*
+		 * A copy with what the parser found, without what a collector set
+		 */
+		FieldDef(FieldDef def) {
+			super(def.access);
+			this.name = def.name;
+			this.descriptor = def.descriptor;
+			this.annotations = def.annotations;
+			this.signature = def.signature;
+			this.constant = def.constant;
+		}
+
+		FieldDef copy() {
+			return new FieldDef(this);
+		}
+
 		@Override
 		public String getName() {
 			return name;
@@ -321,6 +342,15 @@ public class Clazz {
 			super(access, method, descriptor);
 		}
 
+		MethodDef(MethodDef def) {
+			super(def);
+		}
+
+		@Override
+		MethodDef copy() {
+			return new MethodDef(this);
+		}
+
 		public boolean isConstructor() {
 			return name.equals("<init>") || name.equals("<clinit>");
 		}
@@ -376,7 +406,7 @@ public class Clazz {
 			4, // 4 CONSTANT_Float
 			8, // 5 CONSTANT_Long (index +=2!)
 			8, // 6 CONSTANT_Double (index +=2!)
-			-1, // 7 CONSTANT_Class
+			2, // 7 CONSTANT_Class
 			2, // 8 CONSTANT_String
 			4, // 9 CONSTANT_FieldRef
 			4, // 10 CONSTANT_MethodRef
@@ -402,8 +432,11 @@ public class Clazz {
 	boolean				hasClassAnnotations;
 
 	TypeRef				className;
-	Object				pool[];
-	int					intPool[];
+	ByteBuffer			data;
+	byte				tags[];
+	int					offsets[];
+	String				strings[];
+	char				chars[];
 	Set<PackageRef>		imports		= Create.set();
 	String				path;
 	int					minor		= 0;
@@ -418,6 +451,7 @@ public class Clazz {
 	TypeRef[]			interfaces;
 	TypeRef				zuper;
 	ClassDataCollector	cd			= null;
+	ClassDataRecord		record;
 	Resource			resource;
 	FieldDef			last		= null;
 	boolean				deprecated;
@@ -438,10 +472,25 @@ public class Clazz {
 		return parseClassFile(in, null);
 	}
 
+	/**
+	 * Parse the class file and report it to the collector. The calls on the
+	 * first collector are recorded, later collectors get the recorded calls
+	 * and the class file is not parsed again.
+	 */
 	public Set<TypeRef> parseClassFileWithCollector(ClassDataCollector cd) throws Exception {
+		if (cd != null && record != null)
+			return record.replay(cd);
+
 		InputStream in = resource.openInputStream();
 		try {
-			return parseClassFile(in, cd);
+			if (cd == null)
+				return parseClassFile(read(in), null);
+
+			ClassDataRecord.Recorder recorder = new ClassDataRecord.Recorder(cd);
+			Set<TypeRef> xref = parseClassFile(read(in), recorder);
+			recorder.record.xref = xref;
+			record = recorder.record;
+			return recorder.stopped ? null : xref;
 		}
 		finally {
 			in.close();
@@ -449,107 +498,108 @@ public class Clazz {
 	}
 
 	public Set<TypeRef> parseClassFile(InputStream in, ClassDataCollector cd) throws Exception {
-		DataInputStream din = new DataInputStream(in);
+		try {
+			return parseClassFile(read(in), cd);
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	Set<TypeRef> parseClassFile(ByteBuffer in, ClassDataCollector cd) throws Exception {
 		try {
 			this.cd = cd;
-			return parseClassFile(din);
+			return parseClassFile(in);
 		}
 		finally {
-			cd = null;
-			din.close();
+			this.cd = null;
 		}
 	}
 
-	Set<TypeRef> parseClassFile(DataInputStream in) throws Exception {
+	/**
+	 * Read the whole class file, the parser works on the bytes in memory. The
+	 * streams of files and ZIP entries know how many bytes are available.
+	 */
+	private static ByteBuffer read(InputStream in) throws IOException {
+		byte[] buffer = new byte[Math.max(in.available(), 1024)];
+		int length = 0;
+		int n;
+		while ((n = in.read(buffer, length, buffer.length - length)) >= 0) {
+			length += n;
+			if (length == buffer.length) {
+				int b = in.read();
+				if (b < 0)
+					break;
+				byte[] grown = new byte[buffer.length * 2];
+				System.arraycopy(buffer, 0, grown, 0, length);
+				buffer = grown;
+				buffer[length++] = (byte) b;
+			}
+		}
+		return ByteBuffer.wrap(buffer, 0, length);
+	}
+
+	Set<TypeRef> parseClassFile(ByteBuffer in) throws Exception {
 		xref = new HashSet<TypeRef>();
+		data = in;
 
 		boolean crawl = cd != null; // Crawl the byte code if we have a
 		// collector
-		int magic = in.readInt();
+		int magic = in.getInt();
 		if (magic != 0xCAFEBABE)
 			throw new IOException("Not a valid class file (no CAFEBABE header)");
 
-		minor = in.readUnsignedShort(); // minor version
-		major = in.readUnsignedShort(); // major version
+		minor = 0xFFFF & in.getShort(); // minor version
+		major = 0xFFFF & in.getShort(); // major version
 		if (cd != null)
 			cd.version(minor, major);
-		int count = in.readUnsignedShort();
-		pool = new Object[count];
-		intPool = new int[count];
+		int count = 0xFFFF & in.getShort();
+		tags = new byte[count];
+		offsets = new int[count];
+		strings = new String[count];
 
+		// Only remember where each constant is, the UTF-8 constants are only
+		// decoded when they are actually used
 		process: for (int poolIndex = 1; poolIndex < count; poolIndex++) {
-			byte tag = in.readByte();
+			byte tag = in.get();
+			tags[poolIndex] = tag;
+			offsets[poolIndex] = in.position();
 			switch (tag) {
 				case 0 :
 					break process;
 				case 1 :
-					constantUtf8(in, poolIndex);
-					break;
-
-				case 3 :
-					constantInteger(in, poolIndex);
-					break;
-
-				case 4 :
-					constantFloat(in, poolIndex);
+					in.position(in.position() + 2 + (0xFFFF & in.getShort(in.position())));
 					break;
 
 				// For some insane optimization reason are
 				// the long and the double two entries in the
 				// constant pool. See 4.4.5
 				case 5 :
-					constantLong(in, poolIndex);
-					poolIndex++;
-					break;
-
 				case 6 :
-					constantDouble(in, poolIndex);
+					in.position(in.position() + 8);
 					poolIndex++;
 					break;
 
-				case 7 :
-					constantClass(in, poolIndex);
-					break;
-
-				case 8 :
-					constantString(in, poolIndex);
-					break;
-
-				case 10 : // Method ref
-				case 11 : // Interface Method ref
-					methodRef(in, poolIndex);
-					break;
-
-				// Name and Type
-				case 12 :
-					nameAndType(in, poolIndex, tag);
-					break;
-
 				// We get the skip count for each record type
 				// from the SkipTable. This will also automatically
 				// abort when
 				default :
-					if (tag == 2)
+					if (tag < 0 || tag >= SkipTable.length || SkipTable[tag] < 0)
 						throw new IOException("Invalid tag " + tag);
-					in.skipBytes(SkipTable[tag]);
+					in.position(in.position() + SkipTable[tag]);
 					break;
 			}
 		}
 
-		pool(pool, intPool);
-
 		// All name& type and class constant records contain descriptors we must
 		// treat
 		// as references, though not API
 
-		for (Object o : pool) {
-			if (o == null)
-				continue;
-
-			if (o instanceof Assoc && ((Assoc) o).tag == 12) {
-				referTo(((Assoc) o).b, 0); // Descriptor
-			} else if (o instanceof ClassConstant) {
-				String binaryClassName = (String) pool[((ClassConstant) o).cname];
+		for (int i = 1; i < count; i++) {
+			if (tags[i] == 12) {
+				referTo(u2(offsets[i] + 2), 0); // Descriptor
+			} else if (tags[i] == 7) {
+				String binaryClassName = classConstant(i);
 				TypeRef typeRef = analyzer.getTypeRef(binaryClassName);
 				referTo(typeRef, 0);
 			}
@@ -560,12 +610,12 @@ public class Clazz {
 		 * Falkenberg
 		 */
 
-		accessx = in.readUnsignedShort(); // access
+		accessx = 0xFFFF & in.getShort(); // access
 		if (Modifier.isPublic(accessx))
 			api = new HashSet<PackageRef>();
 
-		int this_class = in.readUnsignedShort();
-		className = analyzer.getTypeRef((String) pool[intPool[this_class]]);
+		int this_class = 0xFFFF & in.getShort();
+		className = analyzer.getTypeRef(classConstant(this_class));
 		referTo(className, Modifier.PUBLIC);
 
 		try {
@@ -575,8 +625,8 @@ public class Clazz {
 					return null;
 			}
 
-			int super_class = in.readUnsignedShort();
-			String superName = (String) pool[intPool[super_class]];
+			int super_class = 0xFFFF & in.getShort();
+			String superName = classConstant(super_class);
 			if (superName != null) {
 				zuper = analyzer.getTypeRef(superName);
 			}
@@ -587,22 +637,22 @@ public class Clazz {
 					cd.extendsClass(zuper);
 			}
 
-			int interfacesCount = in.readUnsignedShort();
+			int interfacesCount = 0xFFFF & in.getShort();
 			if (interfacesCount > 0) {
 				interfaces = new TypeRef[interfacesCount];
 				for (int i = 0; i < interfacesCount; i++) {
-					interfaces[i] = analyzer.getTypeRef((String) pool[intPool[in.readUnsignedShort()]]);
+					interfaces[i] = analyzer.getTypeRef(classConstant(0xFFFF & in.getShort()));
 					referTo(interfaces[i], accessx);
 				}
 				if (cd != null)
 					cd.implementsInterfaces(interfaces);
 			}
 
-			int fieldsCount = in.readUnsignedShort();
+			int fieldsCount = 0xFFFF & in.getShort();
 			for (int i = 0; i < fieldsCount; i++) {
-				int access_flags = in.readUnsignedShort(); // skip access flags
-				int name_index = in.readUnsignedShort();
-				int descriptor_index = in.readUnsignedShort();
+				int access_flags = 0xFFFF & in.getShort(); // skip access flags
+				int name_index = 0xFFFF & in.getShort();
+				int descriptor_index = 0xFFFF & in.getShort();
 
 				// Java prior to 1.5 used a weird
 				// static variable to hold the com.X.class
@@ -614,12 +664,12 @@ public class Clazz {
 				// class name for the field type, so bnd
 				// would not see a reference. We detect
 				// this case and add an artificial descriptor
-				String name = pool[name_index].toString(); // name_index
+				String name = utf8(name_index);
 				if (name.startsWith("class$") || name.startsWith("$class$")) {
 					crawl = true;
 				}
 				if (cd != null)
-					cd.field(last = new FieldDef(access_flags, name, pool[descriptor_index].toString()));
+					cd.field(last = new FieldDef(access_flags, name, utf8(descriptor_index)));
 
 				referTo(descriptor_index, access_flags);
 				doAttributes(in, ElementType.FIELD, false, access_flags);
@@ -652,15 +702,14 @@ public class Clazz {
 			//
 			// Handle the methods
 			//
-			int methodCount = in.readUnsignedShort();
+			int methodCount = 0xFFFF & in.getShort();
 			for (int i = 0; i < methodCount; i++) {
-				int access_flags = in.readUnsignedShort();
-				int name_index = in.readUnsignedShort();
-				int descriptor_index = in.readUnsignedShort();
-				String name = pool[name_index].toString();
-				String descriptor = pool[descriptor_index].toString();
+				int access_flags = 0xFFFF & in.getShort();
+				int name_index = 0xFFFF & in.getShort();
+				int descriptor_index = 0xFFFF & in.getShort();
+				String name = utf8(name_index);
 				if (cd != null) {
-					MethodDef mdef = new MethodDef(access_flags, name, descriptor);
+					MethodDef mdef = new MethodDef(access_flags, name, utf8(descriptor_index));
 					last = mdef;
 					cd.method(mdef);
 				}
@@ -692,101 +741,94 @@ public class Clazz {
 		}
 	}
 
-	private void constantFloat(DataInputStream in, int poolIndex) throws IOException {
-		if (cd != null)
-			pool[poolIndex] = in.readFloat(); // ALU
-		else
-			in.skipBytes(4);
-	}
-
-	private void constantInteger(DataInputStream in, int poolIndex) throws IOException {
-		intPool[poolIndex] = in.readInt();
-		if (cd != null)
-			pool[poolIndex] = intPool[poolIndex];
-	}
-
-	protected void pool(@SuppressWarnings("unused")
-	Object[] pool, @SuppressWarnings("unused")
-	int[] intPool) {}
-
-	/**
-	 * @param in
-	 * @param poolIndex
-	 * @param tag
-	 * @throws IOException
-	 */
-	protected void nameAndType(DataInputStream in, int poolIndex, byte tag) throws IOException {
-		int name_index = in.readUnsignedShort();
-		int descriptor_index = in.readUnsignedShort();
-		pool[poolIndex] = new Assoc(tag, name_index, descriptor_index);
-	}
-
-	/**
-	 * @param in
-	 * @param poolIndex
-	 * @param tag
-	 * @throws IOException
-	 */
-	private void methodRef(DataInputStream in, int poolIndex) throws IOException {
-		int class_index = in.readUnsignedShort();
-		int name_and_type_index = in.readUnsignedShort();
-		pool[poolIndex] = new Assoc((byte) 10, class_index, name_and_type_index);
+	private int u2(int position) {
+		return 0xFFFF & data.getShort(position);
 	}
 
 	/**
-	 * @param in
-	 * @param poolIndex
-	 * @throws IOException
-	 */
-	private void constantString(DataInputStream in, int poolIndex) throws IOException {
-		int string_index = in.readUnsignedShort();
-		intPool[poolIndex] = string_index;
-	}
-
-	/**
-	 * @param in
-	 * @param poolIndex
-	 * @throws IOException
-	 */
-	protected void constantClass(DataInputStream in, int poolIndex) throws IOException {
-		int class_index = in.readUnsignedShort();
-		intPool[poolIndex] = class_index;
-		ClassConstant c = new ClassConstant(class_index);
-		pool[poolIndex] = c;
-	}
-
-	/**
-	 * @param in
-	 * @throws IOException
+	 * Answer the CONSTANT_Utf8 at the given index, decoded on first use.
+	 * 
+	 * @return the string or null if the index is not a CONSTANT_Utf8
 	 */
-	protected void constantDouble(DataInputStream in, int poolIndex) throws IOException {
-		if (cd != null)
-			pool[poolIndex] = in.readDouble();
-		else
-			in.skipBytes(8);
+	@SuppressWarnings("deprecation")
+	String utf8(int index) {
+		String s = strings[index];
+		if (s != null || tags[index] != 1)
+			return s;
+
+		int position = offsets[index];
+		int length = u2(position);
+		position += 2;
+		int end = position + length;
+
+		// Almost all names are ASCII, they can be copied directly
+		byte[] bytes = data.array();
+		int start = data.arrayOffset() + position;
+		int i = 0;
+		while (i < length && bytes[start + i] >= 0)
+			i++;
+		if (i == length) {
+			s = new String(bytes, 0, start, length);
+			strings[index] = s;
+			return s;
+		}
+
+		if (chars == null || chars.length < length)
+			chars = new char[Math.max(length, 256)];
+
+		// Modified UTF-8, see DataInput
+		int n = 0;
+		while (position < end) {
+			int c = 0xFF & data.get(position++);
+			if (c < 0x80)
+				chars[n++] = (char) c;
+			else if ((c & 0xE0) == 0xC0)
+				chars[n++] = (char) (((c & 0x1F) << 6) | (data.get(position++) & 0x3F));
+			else {
+				int c2 = data.get(position++);
+				int c3 = data.get(position++);
+				chars[n++] = (char) (((c & 0x0F) << 12) | ((c2 & 0x3F) << 6) | (c3 & 0x3F));
+			}
+		}
+		s = new String(chars, 0, n);
+		strings[index] = s;
+		return s;
 	}
 
 	/**
-	 * @param in
-	 * @throws IOException
+	 * Answer the binary name of the CONSTANT_Class at the given index.
+	 * 
+	 * @return the name or null if the index is not a CONSTANT_Class
 	 */
-	protected void constantLong(DataInputStream in, int poolIndex) throws IOException {
-		if (cd != null) {
-			pool[poolIndex] = in.readLong();
-		} else
-			in.skipBytes(8);
+	String classConstant(int index) {
+		if (tags[index] != 7)
+			return null;
+		return utf8(u2(offsets[index]));
 	}
 
 	/**
-	 * @param in
-	 * @param poolIndex
-	 * @throws IOException
+	 * Answer the value of a constant for the collector.
 	 */
-	protected void constantUtf8(DataInputStream in, int poolIndex) throws IOException {
-		// CONSTANT_Utf8
-
-		String name = in.readUTF();
-		pool[poolIndex] = name;
+	Object constant(int index) {
+		int offset = offsets[index];
+		switch (tags[index]) {
+			case 1 :
+				return utf8(index);
+			case 3 :
+				return data.getInt(offset);
+			case 4 :
+				return data.getFloat(offset);
+			case 5 :
+				return data.getLong(offset);
+			case 6 :
+				return data.getDouble(offset);
+			case 7 :
+				return new ClassConstant(u2(offset));
+			case 8 :
+				return utf8(u2(offset));
+			default :
+				return null;
+		}
 	}
 
 	/**
@@ -799,24 +841,19 @@ public class Clazz {
 	 * @return index in constant pool
 	 */
 	private int findMethodReference(String clazz, String methodname, String descriptor) {
-		for (int i = 1; i < pool.length; i++) {
-			if (pool[i] instanceof Assoc) {
-				Assoc methodref = (Assoc) pool[i];
-				if (methodref.tag == 10) {
-					// Method ref
-					int class_index = methodref.a;
-					int class_name_index = intPool[class_index];
-					if (clazz.equals(pool[class_name_index])) {
-						int name_and_type_index = methodref.b;
-						Assoc name_and_type = (Assoc) pool[name_and_type_index];
-						if (name_and_type.tag == 12) {
-							// Name and Type
-							int name_index = name_and_type.a;
-							int type_index = name_and_type.b;
-							if (methodname.equals(pool[name_index])) {
-								if (descriptor.equals(pool[type_index])) {
-									return i;
-								}
+		for (int i = 1; i < tags.length; i++) {
+			if (tags[i] == 10 || tags[i] == 11) {
+				// Method ref
+				int class_index = u2(offsets[i]);
+				if (clazz.equals(classConstant(class_index))) {
+					int name_and_type_index = u2(offsets[i] + 2);
+					if (tags[name_and_type_index] == 12) {
+						// Name and Type
+						int name_index = u2(offsets[name_and_type_index]);
+						int type_index = u2(offsets[name_and_type_index] + 2);
+						if (methodname.equals(utf8(name_index))) {
+							if (descriptor.equals(utf8(type_index))) {
+								return i;
 							}
 						}
 					}
@@ -834,8 +871,8 @@ public class Clazz {
 	 * @param access_flags
 	 * @throws Exception
 	 */
-	private void doAttributes(DataInputStream in, ElementType member, boolean crawl, int access_flags) throws Exception {
-		int attributesCount = in.readUnsignedShort();
+	private void doAttributes(ByteBuffer in, ElementType member, boolean crawl, int access_flags) throws Exception {
+		int attributesCount = 0xFFFF & in.getShort();
 		for (int j = 0; j < attributesCount; j++) {
 			// skip name CONSTANT_Utf8 pointer
 			doAttribute(in, member, crawl, access_flags);
@@ -850,10 +887,10 @@ public class Clazz {
 	 * @param access_flags
 	 * @throws Exception
 	 */
-	private void doAttribute(DataInputStream in, ElementType member, boolean crawl, int access_flags) throws Exception {
-		int attribute_name_index = in.readUnsignedShort();
-		String attributeName = (String) pool[attribute_name_index];
-		long attribute_length = in.readInt();
+	private void doAttribute(ByteBuffer in, ElementType member, boolean crawl, int access_flags) throws Exception {
+		int attribute_name_index = 0xFFFF & in.getShort();
+		String attributeName = utf8(attribute_name_index);
+		long attribute_length = in.getInt();
 		attribute_length &= 0xFFFFFFFF;
 		if ("Deprecated".equals(attributeName)) {
 			if (cd != null)
@@ -886,7 +923,7 @@ public class Clazz {
 			if (attribute_length > 0x7FFFFFFF) {
 				throw new IllegalArgumentException("Attribute > 2Gb");
 			}
-			in.skipBytes((int) attribute_length);
+			in.position(in.position() + (int) attribute_length);
 		}
 	}
 
@@ -903,21 +940,19 @@ public class Clazz {
 	 * @param in
 	 * @throws IOException
 	 */
-	private void doEnclosingMethod(DataInputStream in) throws IOException {
-		int cIndex = in.readShort();
-		int mIndex = in.readShort();
+	private void doEnclosingMethod(ByteBuffer in) throws IOException {
+		int cIndex = 0xFFFF & in.getShort();
+		int mIndex = 0xFFFF & in.getShort();
 
 		if (cd != null) {
-			int nameIndex = intPool[cIndex];
-			TypeRef cName = analyzer.getTypeRef((String) pool[nameIndex]);
+			TypeRef cName = analyzer.getTypeRef(classConstant(cIndex));
 
 			String mName = null;
 			String mDescriptor = null;
 
 			if (mIndex != 0) {
-				Assoc nameAndType = (Assoc) pool[mIndex];
-				mName = (String) pool[nameAndType.a];
-				mDescriptor = (String) pool[nameAndType.b];
+				mName = utf8(u2(offsets[mIndex]));
+				mDescriptor = utf8(u2(offsets[mIndex] + 2));
 			}
 			cd.enclosingMethod(cName, mName, mDescriptor);
 		}
@@ -940,13 +975,13 @@ public class Clazz {
 	 * @param in
 	 * @throws Exception
 	 */
-	private void doInnerClasses(DataInputStream in) throws Exception {
-		int number_of_classes = in.readShort();
+	private void doInnerClasses(ByteBuffer in) throws Exception {
+		int number_of_classes = 0xFFFF & in.getShort();
 		for (int i = 0; i < number_of_classes; i++) {
-			int inner_class_info_index = in.readShort();
-			int outer_class_info_index = in.readShort();
-			int inner_name_index = in.readShort();
-			int inner_class_access_flags = in.readShort() & 0xFFFF;
+			int inner_class_info_index = 0xFFFF & in.getShort();
+			int outer_class_info_index = 0xFFFF & in.getShort();
+			int inner_name_index = 0xFFFF & in.getShort();
+			int inner_class_access_flags = 0xFFFF & in.getShort();
 
 			if (cd != null) {
 				TypeRef innerClass = null;
@@ -954,17 +989,15 @@ public class Clazz {
 				String innerName = null;
 
 				if (inner_class_info_index != 0) {
-					int nameIndex = intPool[inner_class_info_index];
-					innerClass = analyzer.getTypeRef((String) pool[nameIndex]);
+					innerClass = analyzer.getTypeRef(classConstant(inner_class_info_index));
 				}
 
 				if (outer_class_info_index != 0) {
-					int nameIndex = intPool[outer_class_info_index];
-					outerClass = analyzer.getTypeRef((String) pool[nameIndex]);
+					outerClass = analyzer.getTypeRef(classConstant(outer_class_info_index));
 				}
 
 				if (inner_name_index != 0)
-					innerName = (String) pool[inner_name_index];
+					innerName = utf8(inner_name_index);
 
 				cd.innerClass(innerClass, outerClass, innerName, inner_class_access_flags);
 			}
@@ -986,9 +1019,9 @@ public class Clazz {
 	 * @param access_flags
 	 */
 
-	void doSignature(DataInputStream in, ElementType member, int access_flags) throws IOException {
-		int signature_index = in.readUnsignedShort();
-		String signature = (String) pool[signature_index];
+	void doSignature(ByteBuffer in, ElementType member, int access_flags) throws IOException {
+		int signature_index = 0xFFFF & in.getShort();
+		String signature = utf8(signature_index);
 		try {
 
 			parseDescriptor(signature, access_flags);
@@ -1006,26 +1039,23 @@ public class Clazz {
 	/**
 	 * Handle a constant value call the data collector with it
 	 */
-	void doConstantValue(DataInputStream in) throws IOException {
-		int constantValue_index = in.readUnsignedShort();
+	void doConstantValue(ByteBuffer in) throws IOException {
+		int constantValue_index = 0xFFFF & in.getShort();
 		if (cd == null)
 			return;
 
-		Object object = pool[constantValue_index];
-		if (object == null)
-			object = pool[intPool[constantValue_index]];
+		Object object = constant(constantValue_index);
 
 		last.constant = object;
 		cd.constant(object);
 	}
 
-	void doExceptions(DataInputStream in, int access_flags) throws IOException {
-		int exception_count = in.readUnsignedShort();
+	void doExceptions(ByteBuffer in, int access_flags) throws IOException {
+		int exception_count = 0xFFFF & in.getShort();
 		for (int i = 0; i < exception_count; i++) {
-			int index = in.readUnsignedShort();
+			int index = 0xFFFF & in.getShort();
 			if (api != null && (Modifier.isPublic(access_flags) || Modifier.isProtected(access_flags))) {
-				ClassConstant cc = (ClassConstant) pool[index];
-				String descr = (String) pool[cc.cname];
+				String descr = classConstant(index);
 
 				TypeRef clazz = analyzer.getTypeRef(descr);
 				referTo(clazz, access_flags);
@@ -1057,26 +1087,94 @@ public class Clazz {
 	 * @param pool
 	 * @throws Exception
 	 */
-	private void doCode(DataInputStream in) throws Exception {
-		/* int max_stack = */in.readUnsignedShort();
-		/* int max_locals = */in.readUnsignedShort();
-		int code_length = in.readInt();
-		byte code[] = new byte[code_length];
-		in.readFully(code);
+	private void doCode(ByteBuffer in) throws Exception {
+		in.position(in.position() + 4); // max_stack, max_locals
+		int code_length = in.getInt();
+		ByteBuffer code = in.slice();
+		code.limit(code_length);
+		in.position(in.position() + code_length);
 		crawl(code);
-		int exception_table_length = in.readUnsignedShort();
-		in.skipBytes(exception_table_length * 8);
+		int exception_table_length = 0xFFFF & in.getShort();
+		in.position(in.position() + exception_table_length * 8);
 		doAttributes(in, ElementType.METHOD, false, 0);
 	}
 
+	/**
+	 * @deprecated The constant pool is parsed from a buffer, this method is no
+	 *             longer called.
+	 */
+	@Deprecated
+	protected void pool(@SuppressWarnings("unused")
+	Object[] pool, @SuppressWarnings("unused")
+	int[] intPool) {}
+
+	/**
+	 * @deprecated The constant pool is parsed from a buffer, this method is no
+	 *             longer called. It only skips the entry.
+	 */
+	@Deprecated
+	protected void nameAndType(DataInputStream in, @SuppressWarnings("unused")
+	int poolIndex, @SuppressWarnings("unused")
+	byte tag) throws IOException {
+		in.skipBytes(4);
+	}
+
+	/**
+	 * @deprecated The constant pool is parsed from a buffer, this method is no
+	 *             longer called. It only skips the entry.
+	 */
+	@Deprecated
+	protected void constantClass(DataInputStream in, @SuppressWarnings("unused")
+	int poolIndex) throws IOException {
+		in.skipBytes(2);
+	}
+
+	/**
+	 * @deprecated The constant pool is parsed from a buffer, this method is no
+	 *             longer called. It only skips the entry.
+	 */
+	@Deprecated
+	protected void constantDouble(DataInputStream in, @SuppressWarnings("unused")
+	int poolIndex) throws IOException {
+		in.skipBytes(8);
+	}
+
+	/**
+	 * @deprecated The constant pool is parsed from a buffer, this method is no
+	 *             longer called. It only skips the entry.
+	 */
+	@Deprecated
+	protected void constantLong(DataInputStream in, @SuppressWarnings("unused")
+	int poolIndex) throws IOException {
+		in.skipBytes(8);
+	}
+
+	/**
+	 * @deprecated The constant pool is parsed from a buffer, this method is no
+	 *             longer called. It only skips the entry.
+	 */
+	@Deprecated
+	protected void constantUtf8(DataInputStream in, @SuppressWarnings("unused")
+	int poolIndex) throws IOException {
+		in.readUTF();
+	}
+
+	/**
+	 * @deprecated Use {@link #crawl(ByteBuffer)}, the parser no longer calls
+	 *             this method.
+	 */
+	@Deprecated
+	protected void crawl(byte[] code) {
+		crawl(ByteBuffer.wrap(code));
+	}
+
 	/**
 	 * We must find Class.forName references ...
 	 * 
-	 * @param code
+	 * @param bb
+	 *            the byte code of a method
 	 */
-	protected void crawl(byte[] code) {
-		ByteBuffer bb = ByteBuffer.wrap(code);
-		bb.order(ByteOrder.BIG_ENDIAN);
+	protected void crawl(ByteBuffer bb) {
 		int lastReference = -1;
 
 		while (bb.remaining() > 0) {
@@ -1117,8 +1215,8 @@ public class Clazz {
 						getMethodDef(0, methodref);
 
 					if ((methodref == forName || methodref == class$) && lastReference != -1
-							&& pool[intPool[lastReference]] instanceof String) {
-						String fqn = (String) pool[intPool[lastReference]];
+							&& tags[lastReference] == 8) {
+						String fqn = utf8(u2(offsets[lastReference]));
 						if (!fqn.equals("class") && fqn.indexOf('.') > 0) {
 							TypeRef clazz = analyzer.getTypeRefFromFQN(fqn);
 							referTo(clazz, 0);
@@ -1164,14 +1262,14 @@ public class Clazz {
 		}
 	}
 
-	private void doSourceFile(DataInputStream in) throws IOException {
-		int sourcefile_index = in.readUnsignedShort();
-		this.sourceFile = pool[sourcefile_index].toString();
+	private void doSourceFile(ByteBuffer in) throws IOException {
+		int sourcefile_index = 0xFFFF & in.getShort();
+		this.sourceFile = utf8(sourcefile_index);
 	}
 
-	private void doParameterAnnotations(DataInputStream in, ElementType member, RetentionPolicy policy, int access_flags)
+	private void doParameterAnnotations(ByteBuffer in, ElementType member, RetentionPolicy policy, int access_flags)
 			throws IOException {
-		int num_parameters = in.readUnsignedByte();
+		int num_parameters = 0xFF & in.get();
 		for (int p = 0; p < num_parameters; p++) {
 			if (cd != null)
 				cd.parameter(p);
@@ -1179,9 +1277,9 @@ public class Clazz {
 		}
 	}
 
-	private void doAnnotations(DataInputStream in, ElementType member, RetentionPolicy policy, int access_flags)
+	private void doAnnotations(ByteBuffer in, ElementType member, RetentionPolicy policy, int access_flags)
 			throws IOException {
-		int num_annotations = in.readUnsignedShort(); // # of annotations
+		int num_annotations = 0xFFFF & in.getShort(); // # of annotations
 		for (int a = 0; a < num_annotations; a++) {
 			if (cd == null)
 				doAnnotation(in, member, policy, false, access_flags);
@@ -1192,16 +1290,15 @@ public class Clazz {
 		}
 	}
 
-	private Annotation doAnnotation(DataInputStream in, ElementType member, RetentionPolicy policy, boolean collect,
+	private Annotation doAnnotation(ByteBuffer in, ElementType member, RetentionPolicy policy, boolean collect,
 			int access_flags) throws IOException {
-		int type_index = in.readUnsignedShort();
+		int type_index = 0xFFFF & in.getShort();
 		if (annotations == null)
 			annotations = new HashSet<TypeRef>();
 
-		TypeRef tr = analyzer.getTypeRef(pool[type_index].toString());
-		annotations.add(tr);
+		TypeRef name = analyzer.getTypeRef(utf8(type_index));
+		annotations.add(name);
 
-		TypeRef name = analyzer.getTypeRef((String) pool[type_index]);
 		if (policy == RetentionPolicy.RUNTIME) {
 			referTo(type_index, 0);
 			hasRuntimeAnnotations = true;
@@ -1210,13 +1307,13 @@ public class Clazz {
 		} else {
 			hasClassAnnotations = true;
 		}
-		int num_element_value_pairs = in.readUnsignedShort();
+		int num_element_value_pairs = 0xFFFF & in.getShort();
 		Map<String,Object> elements = null;
 		for (int v = 0; v < num_element_value_pairs; v++) {
-			int element_name_index = in.readUnsignedShort();
-			String element = (String) pool[element_name_index];
+			int element_name_index = 0xFFFF & in.getShort();
 			Object value = doElementValue(in, member, policy, collect, access_flags);
 			if (collect) {
+				String element = utf8(element_name_index);
 				if (elements == null)
 					elements = new LinkedHashMap<String,Object>();
 				elements.put(element, value);
@@ -1227,56 +1324,56 @@ public class Clazz {
 		return null;
 	}
 
-	private Object doElementValue(DataInputStream in, ElementType member, RetentionPolicy policy, boolean collect,
+	private Object doElementValue(ByteBuffer in, ElementType member, RetentionPolicy policy, boolean collect,
 			int access_flags) throws IOException {
-		char tag = (char) in.readUnsignedByte();
+		char tag = (char) (0xFF & in.get());
 		switch (tag) {
 			case 'B' : // Byte
 			case 'C' : // Character
 			case 'I' : // Integer
 			case 'S' : // Short
-				int const_value_index = in.readUnsignedShort();
-				return intPool[const_value_index];
+				int const_value_index = 0xFFFF & in.getShort();
+				return collect ? constant(const_value_index) : null;
 
 			case 'D' : // Double
 			case 'F' : // Float
 			case 's' : // String
 			case 'J' : // Long
-				const_value_index = in.readUnsignedShort();
-				return pool[const_value_index];
+				const_value_index = 0xFFFF & in.getShort();
+				return collect ? constant(const_value_index) : null;
 
 			case 'Z' : // Boolean
-				const_value_index = in.readUnsignedShort();
-				return pool[const_value_index] == null || pool[const_value_index].equals(0) ? false : true;
+				const_value_index = 0xFFFF & in.getShort();
+				return collect ? data.getInt(offsets[const_value_index]) != 0 : null;
 
 			case 'e' : // enum constant
-				int type_name_index = in.readUnsignedShort();
+				int type_name_index = 0xFFFF & in.getShort();
 				if (policy == RetentionPolicy.RUNTIME) {
 					referTo(type_name_index, 0);
 					if (api != null && (Modifier.isPublic(access_flags) || Modifier.isProtected(access_flags))) {
-						TypeRef name = analyzer.getTypeRef((String) pool[type_name_index]);
+						TypeRef name = analyzer.getTypeRef(utf8(type_name_index));
 						api.add(name.getPackageRef());
 					}
 				}
-				int const_name_index = in.readUnsignedShort();
-				return pool[const_name_index];
+				int const_name_index = 0xFFFF & in.getShort();
+				return collect ? utf8(const_name_index) : null;
 
 			case 'c' : // Class
-				int class_info_index = in.readUnsignedShort();
+				int class_info_index = 0xFFFF & in.getShort();
 				if (policy == RetentionPolicy.RUNTIME) {
 					referTo(class_info_index, 0);
 					if (api != null && (Modifier.isPublic(access_flags) || Modifier.isProtected(access_flags))) {
-						TypeRef name = analyzer.getTypeRef((String) pool[class_info_index]);
+						TypeRef name = analyzer.getTypeRef(utf8(class_info_index));
 						api.add(name.getPackageRef());
 					}
 				}
-				return pool[class_info_index];
+				return collect ? utf8(class_info_index) : null;
 
 			case '@' : // Annotation type
 				return doAnnotation(in, member, policy, collect, access_flags);
 
 			case '[' : // Array
-				int num_values = in.readUnsignedShort();
+				int num_values = 0xFFFF & in.getShort();
 				Object[] result = new Object[num_values];
 				for (int i = 0; i < num_values; i++) {
 					result[i] = doElementValue(in, member, policy, collect, access_flags);
@@ -1315,7 +1412,7 @@ public class Clazz {
 	}
 
 	void referTo(int index, int modifiers) {
-		String descriptor = (String) pool[index];
+		String descriptor = utf8(index);
 		parseDescriptor(descriptor, modifiers);
 	}
 
@@ -1396,16 +1493,19 @@ public class Clazz {
 			while (descriptor.charAt(r) != ';')
 				r++;
 		} else if (c == 'L') {
-			StringBuilder sb = new StringBuilder();
 			r++;
+			int start = r;
+			StringBuilder sb = null;
 			while ((c = descriptor.charAt(r)) != ';') {
 				if (c == '<') {
+					if (sb == null)
+						sb = new StringBuilder().append(descriptor, start, r);
 					r = parseReferences(descriptor, r + 1, '>', modifiers);
-				} else
+				} else if (sb != null)
 					sb.append(c);
 				r++;
 			}
-			TypeRef ref = analyzer.getTypeRef(sb.toString());
+			TypeRef ref = analyzer.getTypeRef(sb == null ? descriptor.substring(start, r) : sb.toString());
 			if (cd != null)
 				cd.addReference(ref);
 
@@ -1488,11 +1588,98 @@ public class Clazz {
 	 */
 
 	public void reset() {
-		pool = null;
-		intPool = null;
+		data = null;
+		tags = null;
+		offsets = null;
+		strings = null;
+		chars = null;
 		xref = null;
 	}
 
+	/**
+	 * Write the outcome of a {@link #parseClassFile()} without a collector so
+	 * it can be restored with {@link #read(DataInputStream)}, see
+	 * {@link ClazzCache}.
+	 */
+	void write(DataOutputStream out) throws IOException {
+		out.writeUTF(className.getBinary());
+		out.writeShort(minor);
+		out.writeShort(major);
+		out.writeShort(accessx);
+		out.writeUTF(zuper == null ? "" : zuper.getBinary());
+		writeTypes(out, interfaces == null ? null : Arrays.asList(interfaces));
+		out.writeUTF(sourceFile == null ? "" : sourceFile);
+		writeTypes(out, annotations);
+		out.writeBoolean(hasRuntimeAnnotations);
+		out.writeBoolean(hasClassAnnotations);
+		writePackages(out, imports);
+		writePackages(out, api);
+	}
+
+	/**
+	 * Restore the state written by {@link #write(DataOutputStream)}, this is
+	 * the equivalent of {@link #parseClassFile()}.
+	 */
+	void read(DataInputStream in) throws IOException {
+		className = analyzer.getTypeRef(in.readUTF());
+		minor = in.readUnsignedShort();
+		major = in.readUnsignedShort();
+		accessx = in.readUnsignedShort();
+		String s = in.readUTF();
+		zuper = s.length() == 0 ? null : analyzer.getTypeRef(s);
+		Set<TypeRef> types = readTypes(in);
+		interfaces = types == null ? null : types.toArray(new TypeRef[types.size()]);
+		s = in.readUTF();
+		sourceFile = s.length() == 0 ? null : s;
+		annotations = readTypes(in);
+		hasRuntimeAnnotations = in.readBoolean();
+		hasClassAnnotations = in.readBoolean();
+		imports = readPackages(in);
+		if (imports == null)
+			imports = Create.set();
+		api = readPackages(in);
+	}
+
+	private static void writeTypes(DataOutputStream out, Collection<TypeRef> types) throws IOException {
+		if (types == null) {
+			out.writeInt(-1);
+			return;
+		}
+		out.writeInt(types.size());
+		for (TypeRef type : types)
+			out.writeUTF(type.getBinary());
+	}
+
+	private Set<TypeRef> readTypes(DataInputStream in) throws IOException {
+		int n = in.readInt();
+		if (n < 0)
+			return null;
+		Set<TypeRef> types = new LinkedHashSet<TypeRef>();
+		for (int i = 0; i < n; i++)
+			types.add(analyzer.getTypeRef(in.readUTF()));
+		return types;
+	}
+
+	private static void writePackages(DataOutputStream out, Set<PackageRef> packages) throws IOException {
+		if (packages == null) {
+			out.writeInt(-1);
+			return;
+		}
+		out.writeInt(packages.size());
+		for (PackageRef p : packages)
+			out.writeUTF(p.getBinary());
+	}
+
+	private Set<PackageRef> readPackages(DataInputStream in) throws IOException {
+		int n = in.readInt();
+		if (n < 0)
+			return null;
+		Set<PackageRef> packages = new HashSet<PackageRef>();
+		for (int i = 0; i < n; i++)
+			packages.add(analyzer.getPackageRef(in.readUTF()));
+		return packages;
+	}
+
 	public boolean is(QUERY query, Instruction instr, Analyzer analyzer) throws Exception {
 		switch (query) {
 			case ANY :
@@ -1578,20 +1765,18 @@ public class Clazz {
 		if (methodRefPoolIndex == 0)
 			return;
 
-		Object o = pool[methodRefPoolIndex];
-		if (o != null && o instanceof Assoc) {
-			Assoc assoc = (Assoc) o;
-			if (assoc.tag == 10) {
-				int string_index = intPool[assoc.a];
-				TypeRef className = analyzer.getTypeRef((String) pool[string_index]);
-				int name_and_type_index = assoc.b;
-				Assoc name_and_type = (Assoc) pool[name_and_type_index];
-				if (name_and_type.tag == 12) {
+		byte tag = tags[methodRefPoolIndex];
+		if (tag == 10 || tag == 11 || tag == 12) {
+			int offset = offsets[methodRefPoolIndex];
+			if (tag != 12) {
+				TypeRef className = analyzer.getTypeRef(classConstant(u2(offset)));
+				int name_and_type_index = u2(offset + 2);
+				if (tags[name_and_type_index] == 12) {
 					// Name and Type
-					int name_index = name_and_type.a;
-					int type_index = name_and_type.b;
-					String method = (String) pool[name_index];
-					String descriptor = (String) pool[type_index];
+					int name_index = u2(offsets[name_and_type_index]);
+					int type_index = u2(offsets[name_and_type_index] + 2);
+					String method = utf8(name_index);
+					String descriptor = utf8(type_index);
 					cd.referenceMethod(access, className, method, descriptor);
 				} else
 					throw new IllegalArgumentException(
@@ -0,0 +1,94 @@
+package aQute.bnd.osgi;
+
+import java.io.*;
+import java.nio.*;
+
+import aQute.lib.io.*;
+import aQute.libg.cryptography.*;
+
+/**
+ * A persistent cache of the analysis of class files. A class is identified by
+ * the SHA-1 of its bytes, the cache holds what {@link Clazz#parseClassFile()}
+ * calculates for it: the name, super class, interfaces, referred and API
+ * packages, access flags, version, and annotations. Unchanged classes therefore
+ * only have to be digested, not parsed, by the next build.
+ * <p>
+ * Each entry is a small file in a directory named after the first two hex
+ * digits of the digest. Entries are written to a temporary file first and then
+ * renamed so concurrent builds never see a partial entry. An entry that cannot
+ * be read is ignored and the class is parsed again.
+ */
+public class ClazzCache {
+	static final int	VERSION	= 1;
+	final File			dir;
+
+	public ClazzCache(File dir) {
+		this.dir = dir;
+	}
+
+	/**
+	 * Set up the clazz from the cache or, if the class is not in the cache
+	 * yet, parse it and add the result to the cache.
+	 */
+	public void parse(Clazz clazz) throws Exception {
+		ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		IO.copy(clazz.resource.openInputStream(), bout);
+		byte[] data = bout.toByteArray();
+
+		String sha = SHA1.digest(data).asHex();
+		File file = new File(new File(dir, sha.substring(0, 2)), sha);
+		if (file.isFile() && read(clazz, file))
+			return;
+
+		clazz.parseClassFile(ByteBuffer.wrap(data), null);
+		write(clazz, file);
+	}
+
+	private boolean read(Clazz clazz, File file) {
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			try {
+				if (in.readInt() != VERSION)
+					return false;
+				clazz.read(in);
+				return true;
+			}
+			finally {
+				in.close();
+			}
+		}
+		catch (IOException e) {
+			return false;
+		}
+	}
+
+	private void write(Clazz clazz, File file) {
+		File parent = file.getParentFile();
+		parent.mkdirs();
+		File tmp = null;
+		try {
+			tmp = File.createTempFile(file.getName(), ".tmp", parent);
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+			try {
+				out.writeInt(VERSION);
+				clazz.write(out);
+			}
+			finally {
+				out.close();
+			}
+			if (tmp.renameTo(file))
+				tmp = null;
+		}
+		catch (IOException e) {
+			// The cache is an optimization, the class is parsed already
+		}
+		finally {
+			if (tmp != null)
+				tmp.delete();
+		}
+	}
+
+	public File getDirectory() {
+		return dir;
+	}
+}
@@ -117,6 +117,8 @@ public interface Constants {
 	String							NOUSES										= "-nouses";
 	String							NOBUNDLES									= "-nobundles";
 	String							PACKAGE										= "-package";
+	String							PARALLEL									= "-parallel";
+	String							CLASSCACHE									= "-classcache";
 	String							PACKAGE_JPM									= "jpm";
 	String							PEDANTIC									= "-pedantic";
 	String							PLUGIN										= "-plugin";
@@ -134,6 +136,7 @@ public interface Constants {
 	String							STRICT										= "-strict";
 	String							SUB											= "-sub";
 	String							RUNNOREFERENCES								= "-runnoreferences";
+	String							RUNPARALLEL									= "-runparallel";
 	String							RUNPROPERTIES								= "-runproperties";
 	String							RUNSYSTEMPACKAGES							= "-runsystempackages";
 	String							RUNSYSTEMCAPABILITIES						= "-runsystemcapabilities";
@@ -170,6 +173,8 @@ public interface Constants {
 	String							TESTREPORT									= "-testreport";
 	String							TESTPATH									= "-testpath";
 	String							TESTCONTINUOUS								= "-testcontinuous";
+	String							TESTPARALLEL								= "-testparallel";
+	String							TESTSHARDS									= "-testshards";
 	String							UNDERTEST									= "-undertest";
 	String							UPTO										= "-upto";
 	String							VERBOSE										= "-verbose";
@@ -192,7 +197,8 @@ public interface Constants {
 			RUNVM, RUNPROGRAMARGS, WAB, WABLIB, RUNFRAMEWORK, RUNFW, RUNTRACE, TESTCONTINUOUS, SNAPSHOT, NAMESECTION,
 			DIGESTS, DSANNOTATIONS, EXPERIMENTS, BASELINE, BASELINEREPO, PROFILE, PACKAGE, RUNNOREFERENCES, JAVAAGENT,
 			STRICT, DIFFIGNORE, CONTRACT, NOBUILDINCACHE, EXTENSION, NOJUNIT, NOJUNITOSGI, PREPROCESSMATCHERS, UPTO,
-			INVALIDFILENAMES, FIXUPMESSAGES, PRIVATEPACKAGE, CONDITIONALPACKAGE
+			INVALIDFILENAMES, FIXUPMESSAGES, PRIVATEPACKAGE, CONDITIONALPACKAGE, PARALLEL, CLASSCACHE,
+			RUNPARALLEL, TESTPARALLEL, TESTSHARDS
 																				};
 
 	// Ignore bundle specific headers. These bundles do not make
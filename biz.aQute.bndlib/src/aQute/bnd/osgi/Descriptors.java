@@ -1,13 +1,20 @@
 package aQute.bnd.osgi;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 import aQute.libg.generics.*;
 
+/**
+ * Interns the type, package and descriptor references of an analyzer. The
+ * references are compared by identity so the caches are concurrent and only
+ * the first reference created for a name is ever handed out. This allows
+ * classes to be parsed in parallel against the same instance.
+ */
 public class Descriptors {
-	Map<String,TypeRef>		typeRefCache		= Create.map();
-	Map<String,Descriptor>	descriptorCache		= Create.map();
-	Map<String,PackageRef>	packageCache		= Create.map();
+	ConcurrentMap<String,TypeRef>		typeRefCache		= new ConcurrentHashMap<String,TypeRef>();
+	ConcurrentMap<String,Descriptor>	descriptorCache		= new ConcurrentHashMap<String,Descriptor>();
+	ConcurrentMap<String,PackageRef>	packageCache		= new ConcurrentHashMap<String,PackageRef>();
 
 	// MUST BE BEFORE PRIMITIVES, THEY USE THE DEFAULT PACKAGE!!
 	final static PackageRef	DEFAULT_PACKAGE		= new PackageRef();
@@ -369,7 +376,9 @@ public class Descriptors {
 			ref = new ConcreteRef(pref, binaryClassName);
 		}
 
-		typeRefCache.put(binaryClassName, ref);
+		TypeRef previous = typeRefCache.putIfAbsent(binaryClassName, ref);
+		if (previous != null)
+			return previous;
 		return ref;
 	}
 
@@ -390,7 +399,9 @@ public class Descriptors {
 		
 
 		ref = new PackageRef(binaryPackName);
-		packageCache.put(binaryPackName, ref);
+		PackageRef previous = packageCache.putIfAbsent(binaryPackName, ref);
+		if (previous != null)
+			return previous;
 		return ref;
 	}
 
@@ -399,7 +410,9 @@ public class Descriptors {
 		if (d != null)
 			return d;
 		d = new Descriptor(descriptor);
-		descriptorCache.put(descriptor, d);
+		Descriptor previous = descriptorCache.putIfAbsent(descriptor, d);
+		if (previous != null)
+			return previous;
 		return d;
 	}
 
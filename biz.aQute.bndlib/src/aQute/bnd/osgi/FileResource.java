@@ -1,14 +1,29 @@
 package aQute.bnd.osgi;
 
 import java.io.*;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 import java.util.regex.*;
 
 import aQute.lib.io.*;
 
 public class FileResource implements Resource, Closeable {
-	File	file;
-	String	extra;
-	boolean deleteOnClose;
+	final static int					BUFFER_SIZE	= 64 * 1024;
+
+	/**
+	 * The copy buffers that are not in use. A copy takes a buffer and returns
+	 * it, the pool never holds more buffers than there were concurrent copies.
+	 */
+	final static Queue<byte[]>			buffers		= new ConcurrentLinkedQueue<byte[]>();
+	final static AtomicInteger			copying		= new AtomicInteger();
+	final static AtomicLong				copies		= new AtomicLong();
+	final static AtomicLong				overlapping	= new AtomicLong();
+
+	File								file;
+	String								extra;
+	boolean								deleteOnClose;
 
 	public FileResource(File file) {
 		this.file = file;
@@ -43,21 +58,91 @@ public class FileResource implements Resource, Closeable {
 		copy(this, out);
 	}
 
-	static synchronized void copy(Resource resource, OutputStream out) throws Exception {
-		InputStream in = resource.openInputStream();
+	/**
+	 * Copy a resource to a stream. A file is transferred by the file system
+	 * when it is copied to a file, otherwise the copy uses a buffer from the
+	 * pool. Copies do not lock, the number of copies that started while
+	 * another copy was in progress shows how much they overlap.
+	 */
+	static void copy(Resource resource, OutputStream out) throws Exception {
+		copies.incrementAndGet();
+		if (copying.getAndIncrement() > 0)
+			overlapping.incrementAndGet();
+		try {
+			if (resource.getClass() == FileResource.class && out instanceof FileOutputStream) {
+				transfer(((FileResource) resource).file, (FileOutputStream) out);
+				return;
+			}
+
+			InputStream in = resource.openInputStream();
+			try {
+				copy(in, out);
+			}
+			finally {
+				in.close();
+			}
+		}
+		finally {
+			copying.decrementAndGet();
+		}
+	}
+
+	private static void copy(InputStream in, OutputStream out) throws IOException {
+		byte buffer[] = buffers.poll();
+		if (buffer == null)
+			buffer = new byte[BUFFER_SIZE];
 		try {
-			byte buffer[] = new byte[20000];
 			int size = in.read(buffer);
 			while (size > 0) {
 				out.write(buffer, 0, size);
 				size = in.read(buffer);
 			}
 		}
+		finally {
+			buffers.offer(buffer);
+		}
+	}
+
+	/*
+	 * When the file system makes no progress the rest of the file is copied
+	 * with a buffer so the copy is never truncated
+	 */
+	private static void transfer(File file, FileOutputStream out) throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		try {
+			FileChannel channel = in.getChannel();
+			long size = channel.size();
+			long position = 0;
+			while (position < size) {
+				long n = channel.transferTo(position, size - position, out.getChannel());
+				if (n <= 0) {
+					channel.position(position);
+					copy(in, out);
+					return;
+				}
+				position += n;
+			}
+		}
 		finally {
 			in.close();
 		}
 	}
 
+	/**
+	 * The number of resources copied to a stream.
+	 */
+	public static long getCopies() {
+		return copies.get();
+	}
+
+	/**
+	 * The number of resource copies that started while another copy was in
+	 * progress.
+	 */
+	public static long getOverlappingCopies() {
+		return overlapping.get();
+	}
+
 	static void traverse(Jar jar, int rootlength, File directory, Pattern doNotCopy) {
 		if (doNotCopy != null && doNotCopy.matcher(directory.getName()).matches())
 			return;
@@ -21,6 +21,7 @@ public class Jar implements Closeable {
 	}
 
 	static final String	DEFAULT_MANIFEST_NAME	= "META-INF/MANIFEST.MF";
+	static final int	BUFFER_LIMIT			= 1024 * 1024;
 
 	public static final Object[]			EMPTY_ARRAY	= new Jar[0];
 	final Map<String,Resource>				resources	= new TreeMap<String,Resource>();
@@ -255,70 +256,66 @@ public class Jar implements Closeable {
 	public void write(OutputStream out) throws Exception {
 		check();
 
-		if (!doNotTouchManifest && !nomanifest && algorithms != null) {
-
-			// ok, we have a request to create digests
-			// of the resources. Since we have to output
-			// the manifest first, we have a slight problem.
-			// We can also not make multiple passes over the resource
-			// because some resources are not idempotent and/or can
-			// take significant time. So we just copy the jar
-			// to a temporary file, read it in again, calculate
-			// the checksums and save.
-
-			String[] algs = algorithms;
-			algorithms = null;
-			try {
-				File f = File.createTempFile(getName(), ".jar");
-				write(f);
-				Jar tmp = new Jar(f);
-				try {
-					tmp.calcChecksums(algorithms);
-					tmp.write(out);
-				}
-				finally {
-					f.delete();
-					tmp.close();
-				}
-			}
-			finally {
-				algorithms = algs;
-			}
-			return;
+		List<FileResource> spilled = new ArrayList<FileResource>();
+		try {
+			write(out, spilled);
 		}
-
-		ZipOutputStream jout = nomanifest || doNotTouchManifest ? new ZipOutputStream(out) : new JarOutputStream(out);
-
-		switch (compression) {
-			case STORE :
-				jout.setMethod(ZipOutputStream.DEFLATED);
-				break;
-
-			default :
-				// default is DEFLATED
+		finally {
+			for (FileResource r : spilled)
+				r.close();
+		}
+	}
+
+	private void write(OutputStream out, List<FileResource> spilled) throws Exception {
+		Map<String,Resource> resources = getResources();
+		Manifest manifest = null;
+		if (!doNotTouchManifest && !nomanifest) {
+			manifest = getManifest();
+			if (algorithms != null) {
+
+				// We have a request to create digests of the resources.
+				// Since the manifest must be output first, the digests are
+				// calculated before anything is written. Resources that are
+				// not idempotent and/or take significant time are buffered
+				// so that each resource is read only once. The digests go
+				// in a copy of the manifest, this jar is not changed. The
+				// algorithms only enable the digests, the default SHA and
+				// MD5 digests are calculated.
+
+				manifest = manifest == null ? new Manifest() : new Manifest(manifest);
+				resources = new TreeMap<String,Resource>(resources);
+				calcChecksums(manifest, resources, null, spilled);
+			}
 		}
 
-		Set<String> done = new HashSet<String>();
+		ZipWriter jout = new ZipWriter(out, !(nomanifest || doNotTouchManifest));
+		try {
+			Set<String> done = new HashSet<String>();
+
+			Set<String> directories = new HashSet<String>();
+			if (doNotTouchManifest) {
+				Resource r = getResource(manifestName);
+				if (r != null) {
+					writeResource(jout, directories, manifestName, r);
+					done.add(manifestName);
+				}
+			} else
+				doManifest(done, jout, manifest);
 
-		Set<String> directories = new HashSet<String>();
-		if (doNotTouchManifest) {
-			Resource r = getResource(manifestName);
-			if (r != null) {
-				writeResource(jout, directories, manifestName, r);
-				done.add(manifestName);
+			for (Map.Entry<String,Resource> entry : resources.entrySet()) {
+				// Skip metainf contents
+				if (!done.contains(entry.getKey()))
+					writeResource(jout, directories, entry.getKey(), entry.getValue());
 			}
-		} else
-			doManifest(done, jout);
-
-		for (Map.Entry<String,Resource> entry : getResources().entrySet()) {
-			// Skip metainf contents
-			if (!done.contains(entry.getKey()))
-				writeResource(jout, directories, entry.getKey(), entry.getValue());
+			jout.finish();
+		}
+		finally {
+			// A failed write must not leak the source files or the deflater
+			jout.release();
 		}
-		jout.finish();
 	}
 
-	private void doManifest(Set<String> done, ZipOutputStream jout) throws Exception {
+	private void doManifest(Set<String> done, ZipWriter jout, Manifest manifest) throws Exception {
 		check();
 		if (nomanifest)
 			return;
@@ -326,7 +323,7 @@ public class Jar implements Closeable {
 		JarEntry ze = new JarEntry(manifestName);
 
 		jout.putNextEntry(ze);
-		writeManifest(jout);
+		writeManifest(manifest, jout);
 		jout.closeEntry();
 		done.add(ze.getName());
 	}
@@ -514,7 +511,7 @@ public class Jar implements Closeable {
 		return s.replaceAll("(\n|\r)+", " ");
 	}
 
-	private void writeResource(ZipOutputStream jout, Set<String> directories, String path, Resource resource)
+	private void writeResource(ZipWriter jout, Set<String> directories, String path, Resource resource)
 			throws Exception {
 		if (resource == null)
 			return;
@@ -531,6 +528,12 @@ public class Jar implements Closeable {
 			ze.setTime(lastModified);
 			if (resource.getExtra() != null)
 				ze.setExtra(resource.getExtra().getBytes("UTF-8"));
+
+			// Entries copied from another JAR are transferred without
+			// inflating and deflating them again
+			if (resource instanceof ZipResource && jout.putRawEntry(ze, (ZipResource) resource))
+				return;
+
 			jout.putNextEntry(ze);
 			resource.write(jout);
 			jout.closeEntry();
@@ -540,7 +543,7 @@ public class Jar implements Closeable {
 		}
 	}
 
-	void createDirectories(Set<String> directories, ZipOutputStream zip, String name) throws IOException {
+	void createDirectories(Set<String> directories, ZipWriter zip, String name) throws IOException {
 		int index = name.lastIndexOf('/');
 		if (index > 0) {
 			String path = name.substring(0, index);
@@ -684,16 +687,31 @@ public class Jar implements Closeable {
 
 	public void calcChecksums(String algorithms[]) throws Exception {
 		check();
-		if (algorithms == null)
-			algorithms = new String[] {
-					"SHA", "MD5"
-			};
-
 		Manifest m = getManifest();
 		if (m == null) {
 			m = new Manifest();
 			setManifest(m);
 		}
+		calcChecksums(m, resources, algorithms, null);
+	}
+
+	/**
+	 * Calculate the checksums of the given resources in a single read of each
+	 * resource and set them in the manifest.
+	 * 
+	 * @param spilled
+	 *            if not null, replace the resources that cannot be read
+	 *            cheaply more than once with a buffered copy in the given map
+	 *            so they are not read again when written. Copies that are too
+	 *            large for memory are added to this list, they must be closed
+	 *            to delete their temporary file.
+	 */
+	private void calcChecksums(Manifest m, Map<String,Resource> resources, String algorithms[],
+			List<FileResource> spilled) throws Exception {
+		if (algorithms == null)
+			algorithms = new String[] {
+					"SHA", "MD5"
+			};
 
 		MessageDigest digests[] = new MessageDigest[algorithms.length];
 		int n = 0;
@@ -709,10 +727,17 @@ public class Jar implements Closeable {
 				continue;
 
 			Resource r = entry.getValue();
+			if (spilled != null && !isRepeatable(r)) {
+				Resource copy = buffer(r, spilled);
+				copy.setExtra(r.getExtra());
+				entry.setValue(copy);
+				r = copy;
+			}
+
 			Attributes attributes = m.getAttributes(entry.getKey());
 			if (attributes == null) {
 				attributes = new Attributes();
-				getManifest().getEntries().put(entry.getKey(), attributes);
+				m.getEntries().put(entry.getKey(), attributes);
 			}
 			InputStream in = r.openInputStream();
 			try {
@@ -733,6 +758,84 @@ public class Jar implements Closeable {
 		}
 	}
 
+	/**
+	 * Copy a resource in memory or, when it is larger than
+	 * {@link #BUFFER_LIMIT}, in a temporary file.
+	 */
+	private static Resource buffer(Resource r, List<FileResource> spilled) throws Exception {
+		Spill spill = new Spill();
+		boolean done = false;
+		try {
+			r.write(spill);
+			spill.close();
+			done = true;
+		}
+		finally {
+			if (!done) {
+				spill.close();
+				if (spill.file != null)
+					spill.file.delete();
+			}
+		}
+		if (spill.file == null)
+			return new EmbeddedResource(spill.bout.toByteArray(), r.lastModified());
+
+		// The time of the entry is taken from the file
+		if (r.lastModified() > 0)
+			spill.file.setLastModified(r.lastModified());
+		FileResource copy = new FileResource(spill.file);
+		copy.deleteOnClose(true);
+		spilled.add(copy);
+		return copy;
+	}
+
+	/**
+	 * Buffers in memory until the limit is reached, then moves the bytes to
+	 * a temporary file.
+	 */
+	static class Spill extends OutputStream {
+		ByteArrayOutputStream	bout	= new ByteArrayOutputStream();
+		OutputStream			out		= bout;
+		File					file;
+
+		@Override
+		public void write(int b) throws IOException {
+			spill(1);
+			out.write(b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			spill(len);
+			out.write(b, off, len);
+		}
+
+		private void spill(int len) throws IOException {
+			if (file != null || bout.size() + len <= BUFFER_LIMIT)
+				return;
+
+			file = File.createTempFile("digest", ".resource");
+			file.deleteOnExit();
+			out = new FileOutputStream(file);
+			bout.writeTo(out);
+			bout = null;
+		}
+
+		@Override
+		public void close() throws IOException {
+			out.close();
+		}
+	}
+
+	/**
+	 * Answer if a resource gives the same bytes every time it is read and
+	 * reading it is cheap.
+	 */
+	private static boolean isRepeatable(Resource r) {
+		return r instanceof ZipResource || r instanceof FileResource || r instanceof EmbeddedResource
+				|| r instanceof AbstractResource;
+	}
+
 	Pattern	BSN	= Pattern.compile("\\s*([-\\w\\d\\._]+)\\s*;?.*");
 
 	public String getBsn() throws Exception {
@@ -5,6 +5,7 @@ import java.lang.reflect.*;
 import java.net.*;
 import java.text.*;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.regex.*;
 
 import aQute.bnd.version.*;
@@ -22,11 +23,14 @@ import aQute.lib.io.*;
  * pattern. ${parameter##word} Remove largest prefix pattern.
  */
 public class Macro {
-	final static String	NULLVALUE	= "c29e43048791e250dfd5723e7b8aa048df802c9262cfa8fbc4475b2e392a8ad2";
-	Processor			domain;
-	Object				targets[];
-	boolean				flattening;
-	String				profile;
+	final static String								NULLVALUE		= "c29e43048791e250dfd5723e7b8aa048df802c9262cfa8fbc4475b2e392a8ad2";
+	final static int								MAX_TEMPLATES	= 1000;
+	final static ConcurrentMap<Class< ? >,Map<String,Method>>	commandTables	= new ConcurrentHashMap<Class< ? >,Map<String,Method>>();
+	final ConcurrentMap<String,Template>			templates		= new ConcurrentHashMap<String,Template>();
+	Processor										domain;
+	Object											targets[];
+	boolean											flattening;
+	String											profile;
 
 	public Macro(Processor domain, Object... targets) {
 		this.domain = domain;
@@ -43,54 +47,133 @@ public class Macro {
 	}
 
 	String process(String line, Link link) {
+		Template template = compile(line);
+		if (template.isConstant())
+			return (String) template.parts[0];
+
 		StringBuilder sb = new StringBuilder();
-		process(line, 0, '\u0000', '\u0000', sb, link);
+		expand(template, sb, link);
+		if (template.macro)
+			return replace(sb.toString(), link);
 		return sb.toString();
 	}
 
-	int process(CharSequence org, int index, char begin, char end, StringBuilder result, Link link) {
-		StringBuilder line = new StringBuilder(org);
-		int nesting = 1;
+	/**
+	 * Answer the compiled form of a line. A template only depends on the text
+	 * of the line so it remains valid when the properties change, the cache
+	 * is cleared by {@link #clear()} to keep it from holding on to stale
+	 * values.
+	 */
+	Template compile(String line) {
+		Template template = templates.get(line);
+		if (template == null) {
+			if (templates.size() >= MAX_TEMPLATES)
+				templates.clear();
+			template = new Template(line, 0, '\u0000', '\u0000');
+			templates.put(line, template);
+		}
+		return template;
+	}
 
-		StringBuilder variable = new StringBuilder();
+	/**
+	 * Forget the compiled templates, called when the properties of the domain
+	 * change.
+	 */
+	public void clear() {
+		templates.clear();
+	}
 
-		outer: while (index < line.length()) {
-			char c1 = line.charAt(index++);
-			if (c1 == end) {
-				if (--nesting == 0) {
-					result.append(replace(variable.toString(), link));
-					return index;
-				}
-			} else if (c1 == begin)
-				nesting++;
-			else if (c1 == '\\' && index < line.length() - 1 && line.charAt(index) == '$') {
-				// remove the escape backslash and interpret the dollar
-				// as a
-				// literal
-				index++;
-				variable.append('$');
-				continue outer;
-			} else if (c1 == '$' && index < line.length() - 2) {
-				char c2 = line.charAt(index);
-				char terminator = getTerminator(c2);
-				if (terminator != 0) {
-					index = process(line, index + 1, c2, terminator, variable, link);
-					continue outer;
-				}
-			} else if (c1 == '.' && index < line.length() && line.charAt(index) == '/') {
-				// Found the sequence ./
-				if (index == 1 || Character.isWhitespace(line.charAt(index - 2))) {
-					// make sure it is preceded by whitespace or starts at begin
+	private void expand(Template template, StringBuilder result, Link link) {
+		for (Object part : template.parts) {
+			if (part == Template.BASE) {
+				result.append(domain.getBase().getAbsolutePath());
+				result.append('/');
+			} else if (part instanceof Template) {
+				StringBuilder key = new StringBuilder();
+				expand((Template) part, key, link);
+				result.append(replace(key.toString(), link));
+			} else
+				result.append((String) part);
+		}
+	}
+
+	/**
+	 * A line parsed into its literal text, the ./ sequences that are replaced
+	 * with the base directory, and the macros it contains. The key of a macro
+	 * is a template itself since macros can nest. A template is immutable and
+	 * can be shared between threads.
+	 */
+	static class Template {
+		static final Object	BASE	= new Object();
+		final Object[]		parts;
+		final boolean		macro;
+		final int			next;
+
+		Template(String line, int index, char begin, char end) {
+			List<Object> parts = new ArrayList<Object>();
+			StringBuilder literal = new StringBuilder();
+			int nesting = 1;
+			boolean macro = false;
+
+			outer: while (index < line.length()) {
+				char c1 = line.charAt(index++);
+				if (c1 == end) {
+					if (--nesting == 0) {
+						macro = true;
+						break;
+					}
+				} else if (c1 == begin)
+					nesting++;
+				else if (c1 == '\\' && index < line.length() - 1 && line.charAt(index) == '$') {
+					// remove the escape backslash and interpret the dollar
+					// as a literal
 					index++;
-					variable.append(domain.getBase().getAbsolutePath());
-					variable.append('/');
+					literal.append('$');
 					continue outer;
+				} else if (c1 == '$' && index < line.length() - 2) {
+					char c2 = line.charAt(index);
+					char terminator = getTerminator(c2);
+					if (terminator != 0) {
+						Template key = new Template(line, index + 1, c2, terminator);
+						flush(literal, parts);
+						if (key.macro)
+							parts.add(key);
+						else
+							// not terminated, the content is used as is
+							parts.addAll(Arrays.asList(key.parts));
+						index = key.next;
+						continue outer;
+					}
+				} else if (c1 == '.' && index < line.length() && line.charAt(index) == '/') {
+					// Found the sequence ./
+					if (index == 1 || Character.isWhitespace(line.charAt(index - 2))) {
+						// make sure it is preceded by whitespace or starts at begin
+						index++;
+						flush(literal, parts);
+						parts.add(BASE);
+						continue outer;
+					}
 				}
+				literal.append(c1);
 			}
-			variable.append(c1);
+			flush(literal, parts);
+			if (parts.isEmpty())
+				parts.add("");
+			this.parts = parts.toArray();
+			this.macro = macro;
+			this.next = index;
+		}
+
+		private static void flush(StringBuilder literal, List<Object> parts) {
+			if (literal.length() > 0) {
+				parts.add(literal.toString());
+				literal.setLength(0);
+			}
+		}
+
+		boolean isConstant() {
+			return !macro && parts.length == 1 && parts[0] instanceof String;
 		}
-		result.append(variable);
-		return index;
 	}
 
 	public static char getTerminator(char c) {
@@ -124,17 +207,14 @@ public class Macro {
 				if (key.indexOf(';') < 0) {
 					Instruction ins = new Instruction(key);
 					if (!ins.isLiteral()) {
-						SortedList<String> sortedList = SortedList.fromIterator(domain.iterator());
 						StringBuilder sb = new StringBuilder();
 						String del = "";
-						for (String k : sortedList) {
-							if (ins.matches(k)) {
-								String v = replace(k, new Link(source, link, key));
-								if (v != null) {
-									sb.append(del);
-									del = ",";
-									sb.append(v);
-								}
+						for (String k : domain.getMatchingKeys(ins)) {
+							String v = replace(k, new Link(source, link, key));
+							if (v != null) {
+								sb.append(del);
+								del = ",";
+								sb.append(v);
 							}
 						}
 						return sb.toString();
@@ -268,18 +348,16 @@ public class Macro {
 		// domain);
 		else {
 			String cname = "_" + method.replaceAll("-", "_");
+			Method m = getCommands(target.getClass()).get(cname);
+			if (m == null)
+				return null;
+
 			try {
-				Method m = target.getClass().getMethod(cname, new Class[] {
-					String[].class
-				});
 				Object result = m.invoke(target, new Object[] {
 					args
 				});
 				return result == null ? NULLVALUE : result.toString();
 			}
-			catch (NoSuchMethodException e) {
-				return null;
-			}
 			catch (InvocationTargetException e) {
 				if (e.getCause() instanceof IllegalArgumentException) {
 					domain.error("%s, for cmd: %s, arguments; %s", e.getCause().getMessage(), method,
@@ -299,6 +377,34 @@ public class Macro {
 		return null;
 	}
 
+	/**
+	 * Answer the commands of a class, the public methods that start with a '_'
+	 * and take a String[]. The table is built once per class.
+	 */
+	static Map<String,Method> getCommands(Class< ? > c) {
+		Map<String,Method> commands = commandTables.get(c);
+		if (commands == null) {
+			commands = new HashMap<String,Method>();
+			for (Method m : c.getMethods()) {
+				if (!m.getName().startsWith("_"))
+					continue;
+
+				Class< ? >[] parameters = m.getParameterTypes();
+				if (parameters.length != 1 || parameters[0] != String[].class)
+					continue;
+
+				// Same choice as Class.getMethod for covariant overrides
+				Method other = commands.get(m.getName());
+				if (other == null || other.getReturnType().isAssignableFrom(m.getReturnType()))
+					commands.put(m.getName(), m);
+			}
+			Map<String,Method> previous = commandTables.putIfAbsent(c, commands);
+			if (previous != null)
+				commands = previous;
+		}
+		return commands;
+	}
+
 	/**
 	 * Return a unique list where the duplicates are removed.
 	 * 
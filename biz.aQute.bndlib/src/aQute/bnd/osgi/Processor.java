@@ -35,6 +35,14 @@ public class Processor extends Domain implements Reporter, Registry, Constants,
 	private final Set<Closeable>	toBeClosed		= new HashSet<Closeable>();
 	Set<Object>						plugins;
 
+	/**
+	 * The instances of the -plugin clauses, a refresh reuses the instance of a
+	 * clause that did not change. The pre-plugin clauses are the clauses whose
+	 * instance was loaded by the bnd class loader.
+	 */
+	Map<String,Object>				pluginInstances		= new HashMap<String,Object>();
+	Set<String>						prePluginClauses	= new HashSet<String>();
+
 	boolean							pedantic;
 	boolean							trace;
 	boolean							exceptions;
@@ -45,6 +53,7 @@ public class Processor extends Domain implements Reporter, Registry, Constants,
 	Properties						properties;
 	String							profile;
 	private Macro					replacer;
+	private volatile PropertyKeys	propertyKeys;
 	private long					lastModified;
 	private File					propertiesFile;
 	private boolean					fixup			= true;
@@ -79,11 +88,11 @@ public class Processor extends Domain implements Reporter, Registry, Constants,
 	}
 
 	public Processor() {
-		properties = new Properties();
+		properties = new PropertyKeys.Counted();
 	}
 
 	public Processor(Properties parent) {
-		properties = new Properties(parent);
+		properties = new PropertyKeys.Counted(parent);
 	}
 
 	public Processor(Processor child) {
@@ -93,7 +102,7 @@ public class Processor extends Domain implements Reporter, Registry, Constants,
 
 	public void setParent(Processor processor) {
 		this.parent = processor;
-		Properties ext = new Properties(processor.properties);
+		Properties ext = new PropertyKeys.Counted(processor.properties);
 		ext.putAll(this.properties);
 		this.properties = ext;
 	}
@@ -380,11 +389,25 @@ public class Processor extends Domain implements Reporter, Registry, Constants,
 		Parameters plugins = new Parameters(pluginString);
 		CL loader = getLoader();
 
+		//
+		// The instances of the clauses that did not change since the plugins
+		// were last loaded are reused in the place of the clause, the
+		// instances of the changed clauses are closed
+		//
+
+		Map<String,Object> previous = pluginInstances;
+		Set<String> previousPre = prePluginClauses;
+		Map<String,Object> current = new HashMap<String,Object>();
+		Set<String> currentPre = new HashSet<String>();
+		Map<String,String> clauses = new HashMap<String,String>();
+		for (Entry<String,Attrs> entry : plugins.entrySet())
+			clauses.put(entry.getKey(), entry.getKey() + ";" + entry.getValue() + ";" + pluginPathString);
+
 		// First add the plugin-specific paths from their path: directives
 		for (Entry<String,Attrs> entry : plugins.entrySet()) {
 			String key = removeDuplicateMarker(entry.getKey());
 			String path = entry.getValue().get(PATH_DIRECTIVE);
-			if (path != null) {
+			if (path != null && !previous.containsKey(clauses.get(entry.getKey()))) {
 				String parts[] = path.split("\\s*,\\s*");
 				try {
 					for (String p : parts) {
@@ -412,13 +435,24 @@ public class Processor extends Domain implements Reporter, Registry, Constants,
 			String className = removeDuplicateMarker(entry.getKey());
 			Attrs attrs = entry.getValue();
 
-			trace("Trying pre-plugin %s", className);
+			String clause = clauses.get(entry.getKey());
 
-			Object plugin = loadPlugin(getClass().getClassLoader(), attrs, className, true);
+			Object plugin;
+			if (previous.containsKey(clause)) {
+				if (!previousPre.contains(clause))
+					continue;
+				trace("Reusing pre-plugin %s", className);
+				plugin = previous.remove(clause);
+			} else {
+				trace("Trying pre-plugin %s", className);
+				plugin = loadPlugin(getClass().getClassLoader(), attrs, className, true);
+			}
 			if (plugin != null) {
 				// with the marker!!
 				loaded.add(entry.getKey());
 				instances.add(plugin);
+				current.put(clause, plugin);
+				currentPre.add(clause);
 			}
 		}
 
@@ -437,6 +471,15 @@ public class Processor extends Domain implements Reporter, Registry, Constants,
 		for (Entry<String,Attrs> entry : plugins.entrySet()) {
 			String className = removeDuplicateMarker(entry.getKey());
 			Attrs attrs = entry.getValue();
+			String clause = clauses.get(entry.getKey());
+
+			Object reused = previous.remove(clause);
+			if (reused != null) {
+				trace("Reusing secondary plugin %s", className);
+				instances.add(reused);
+				current.put(clause, reused);
+				continue;
+			}
 
 			trace("Loading secondary plugin %s", className);
 
@@ -449,9 +492,10 @@ public class Processor extends Domain implements Reporter, Registry, Constants,
 			String commands = attrs.get(COMMAND_DIRECTIVE);
 
 			Object plugin = loadPlugin(loader, attrs, className, commands != null);
-			if (plugin != null)
+			if (plugin != null) {
 				instances.add(plugin);
-			else {
+				current.put(clause, plugin);
+			} else {
 				if (commands == null)
 					error("Cannot load the plugin %s", className);
 				else {
@@ -460,6 +504,15 @@ public class Processor extends Domain implements Reporter, Registry, Constants,
 				}
 			}
 		}
+
+		for (Object plugin : previous.values()) {
+			if (plugin instanceof Closeable) {
+				removeClose((Closeable) plugin);
+				IO.close((Closeable) plugin);
+			}
+		}
+		pluginInstances = current;
+		prePluginClauses = currentPre;
 	}
 
 	/**
@@ -684,6 +737,8 @@ public class Processor extends Domain implements Reporter, Registry, Constants,
 			}
 		}
 		toBeClosed.clear();
+		pluginInstances.clear();
+		prePluginClauses.clear();
 	}
 
 	public String _basedir(@SuppressWarnings("unused")
@@ -915,7 +970,10 @@ public class Processor extends Domain implements Reporter, Registry, Constants,
 		propertiesChanged();
 	}
 
-	public void propertiesChanged() {}
+	public void propertiesChanged() {
+		if (replacer != null)
+			replacer.clear();
+	}
 
 	/**
 	 * Set the properties by file. Setting the properties this way will also set
@@ -997,17 +1055,14 @@ public class Processor extends Domain implements Reporter, Registry, Constants,
 		if (!ins.isLiteral()) {
 			// Handle a wildcard key, make sure they're sorted
 			// for consistency
-			SortedList<String> sortedList = SortedList.fromIterator(iterator());
 			StringBuilder sb = new StringBuilder();
 			String del = "";
-			for (String k : sortedList) {
-				if (ins.matches(k)) {
-					String v = getProperty(k, null);
-					if (v != null) {
-						sb.append(del);
-						del = ",";
-						sb.append(v);
-					}
+			for (String k : getMatchingKeys(ins)) {
+				String v = getProperty(k, null);
+				if (v != null) {
+					sb.append(del);
+					del = ",";
+					sb.append(v);
 				}
 			}
 			if (sb.length() == 0)
@@ -1047,6 +1102,18 @@ public class Processor extends Domain implements Reporter, Registry, Constants,
 			return null;
 	}
 
+	/**
+	 * Answer the keys of this processor and its parents that match the
+	 * instruction, sorted for consistency. The keys are indexed once and the
+	 * index is kept until a key is added or removed in the chain.
+	 */
+	List<String> getMatchingKeys(Instruction ins) {
+		PropertyKeys keys = propertyKeys;
+		if (keys == null || !keys.isValid(this))
+			propertyKeys = keys = new PropertyKeys(this);
+		return keys.getMatches(ins);
+	}
+
 	/**
 	 * Helper to load a properties file from disk.
 	 * 
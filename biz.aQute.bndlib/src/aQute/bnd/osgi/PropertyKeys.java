@@ -0,0 +1,109 @@
+package aQute.bnd.osgi;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import aQute.lib.collections.*;
+
+/**
+ * The sorted keys of a processor and its parents, used to resolve wildcard
+ * keys. The keys that match a pattern are remembered per pattern. An index is
+ * valid as long as the processors in the chain keep their properties and no
+ * key is added to or removed from these properties; the properties count
+ * these changes for this purpose.
+ */
+class PropertyKeys {
+	final Properties[]						chain;
+	final int[]								stamps;
+	final SortedList<String>				keys;
+	final ConcurrentMap<String,List<String>>	matches	= new ConcurrentHashMap<String,List<String>>();
+
+	/**
+	 * Properties that count the changes to their set of keys.
+	 */
+	static class Counted extends Properties {
+		private static final long	serialVersionUID	= 1L;
+		volatile int				changes;
+
+		Counted() {}
+
+		Counted(Properties defaults) {
+			super(defaults);
+		}
+
+		@Override
+		public synchronized Object put(Object key, Object value) {
+			Object old = super.put(key, value);
+			if (old == null)
+				changes++;
+			return old;
+		}
+
+		@Override
+		public synchronized void putAll(Map< ? , ? > map) {
+			for (Map.Entry< ? , ? > entry : map.entrySet())
+				put(entry.getKey(), entry.getValue());
+		}
+
+		@Override
+		public synchronized Object remove(Object key) {
+			Object old = super.remove(key);
+			if (old != null)
+				changes++;
+			return old;
+		}
+
+		@Override
+		public synchronized void clear() {
+			super.clear();
+			changes++;
+		}
+	}
+
+	PropertyKeys(Processor processor) {
+		List<Properties> chain = new ArrayList<Properties>();
+		for (Processor p = processor; p != null; p = p.parent)
+			chain.add(p.properties);
+
+		this.chain = chain.toArray(new Properties[chain.size()]);
+		this.stamps = new int[this.chain.length];
+		// Read the stamps first, a concurrent change then invalidates the
+		// index
+		for (int i = 0; i < this.chain.length; i++)
+			stamps[i] = stamp(this.chain[i]);
+
+		keys = SortedList.fromIterator(processor.iterator());
+	}
+
+	boolean isValid(Processor processor) {
+		int i = 0;
+		for (Processor p = processor; p != null; p = p.parent, i++) {
+			if (i >= chain.length || chain[i] != p.properties || stamps[i] < 0 || stamps[i] != stamp(p.properties))
+				return false;
+		}
+		return i == chain.length;
+	}
+
+	/**
+	 * Answer the sorted keys that match the instruction.
+	 */
+	List<String> getMatches(Instruction instruction) {
+		List<String> result = matches.get(instruction.getInput());
+		if (result == null) {
+			List<String> list = new ArrayList<String>();
+			for (String key : keys) {
+				if (instruction.matches(key))
+					list.add(key);
+			}
+			result = Collections.unmodifiableList(list);
+			matches.put(instruction.getInput(), result);
+		}
+		return result;
+	}
+
+	private static int stamp(Properties properties) {
+		if (properties instanceof Counted)
+			return ((Counted) properties).changes;
+		return -1;
+	}
+}
@@ -0,0 +1,38 @@
+package aQute.bnd.osgi;
+
+import java.io.*;
+import java.util.concurrent.*;
+
+/**
+ * The analysis of the classes on the classpath that is shared by the sub
+ * builders of a builder. The sub builders share the classpath Jars so a class
+ * is identified by its resource; the first builder that needs a class parses
+ * it and the others restore the analysis from the result.
+ * <p>
+ * A {@link Clazz} refers to the descriptors of its analyzer so it cannot be
+ * shared itself. The analysis is kept in the form the {@link ClazzCache} uses
+ * and every builder reads it into its own clazz. Once written an analysis is
+ * never changed, builders can therefore use it concurrently.
+ */
+class SharedClasspath {
+	final ConcurrentMap<Resource,byte[]>	analyses	= new ConcurrentHashMap<Resource,byte[]>();
+
+	void parse(Clazz clazz, ClazzCache cache) throws Exception {
+		byte[] analysis = analyses.get(clazz.resource);
+		if (analysis != null) {
+			clazz.read(new DataInputStream(new ByteArrayInputStream(analysis)));
+			return;
+		}
+
+		if (cache != null)
+			cache.parse(clazz);
+		else
+			clazz.parseClassFile();
+
+		ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bout);
+		clazz.write(out);
+		out.close();
+		analyses.putIfAbsent(clazz.resource, bout.toByteArray());
+	}
+}
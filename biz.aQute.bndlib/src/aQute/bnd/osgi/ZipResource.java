@@ -1,6 +1,7 @@
 package aQute.bnd.osgi;
 
 import java.io.*;
+import java.nio.*;
 import java.util.*;
 import java.util.regex.*;
 import java.util.zip.*;
@@ -10,11 +11,100 @@ public class ZipResource implements Resource {
 	ZipEntry	entry;
 	long		lastModified;
 	String		extra;
+	Source		source;
 
-	ZipResource(ZipFile zip, ZipEntry entry, long lastModified) throws UnsupportedEncodingException {
+	/**
+	 * Locates the local headers of the entries in the file of a ZipFile. This
+	 * allows the compressed data to be copied without inflating it. The
+	 * central directory is only read when needed and nothing is found when the
+	 * file was changed after it was opened.
+	 */
+	static class Source {
+		final File			file;
+		final long			length;
+		final long			modified;
+		Map<String,Long>	offsets;
+
+		Source(File file) {
+			this.file = file;
+			this.length = file.length();
+			this.modified = file.lastModified();
+		}
+
+		synchronized long getOffset(String name) {
+			if (file.length() != length || file.lastModified() != modified)
+				return -1;
+
+			if (offsets == null)
+				try {
+					offsets = readCentralDirectory();
+				}
+				catch (Exception e) {
+					offsets = Collections.emptyMap();
+				}
+
+			Long offset = offsets.get(name);
+			if (offset == null)
+				return -1;
+			return offset;
+		}
+
+		private Map<String,Long> readCentralDirectory() throws IOException {
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try {
+				long size = raf.length();
+				int tail = (int) Math.min(size, 0xFFFF + ZipWriter.ENDHDR);
+				byte[] buffer = new byte[tail];
+				raf.seek(size - tail);
+				raf.readFully(buffer);
+				ByteBuffer bb = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN);
+
+				int end = tail - ZipWriter.ENDHDR;
+				while (end >= 0 && bb.getInt(end) != ZipWriter.ENDSIG)
+					end--;
+				if (end < 0)
+					return Collections.emptyMap();
+
+				long length = bb.getInt(end + 12) & 0xFFFFFFFFL;
+				long offset = bb.getInt(end + 16) & 0xFFFFFFFFL;
+				if (length == 0xFFFFFFFFL || offset == 0xFFFFFFFFL)
+					return Collections.emptyMap(); // zip64
+
+				// Data can be prepended to a ZIP file, the offsets are then
+				// relative to the start of the ZIP data
+				long delta = size - tail + end - length - offset;
+				if (delta < 0 || length > Integer.MAX_VALUE)
+					return Collections.emptyMap();
+
+				buffer = new byte[(int) length];
+				raf.seek(offset + delta);
+				raf.readFully(buffer);
+				bb = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN);
+
+				Map<String,Long> result = new HashMap<String,Long>();
+				int n = 0;
+				while (n + ZipWriter.CENHDR <= buffer.length && bb.getInt(n) == ZipWriter.CENSIG) {
+					int nameLength = bb.getShort(n + 28) & 0xFFFF;
+					int extraLength = bb.getShort(n + 30) & 0xFFFF;
+					int commentLength = bb.getShort(n + 32) & 0xFFFF;
+					long header = bb.getInt(n + 42) & 0xFFFFFFFFL;
+					String name = new String(buffer, n + ZipWriter.CENHDR, nameLength, "UTF-8");
+					result.put(name, header + delta);
+					n += ZipWriter.CENHDR + nameLength + extraLength + commentLength;
+				}
+				return result;
+			}
+			finally {
+				raf.close();
+			}
+		}
+	}
+
+	ZipResource(ZipFile zip, ZipEntry entry, long lastModified, Source source) throws UnsupportedEncodingException {
 		this.zip = zip;
 		this.entry = entry;
 		this.lastModified = lastModified;
+		this.source = source;
 		byte[] data = entry.getExtra();
 		if (data != null)
 			this.extra = new String(data, "UTF-8");
@@ -37,6 +127,7 @@ public class ZipResource implements Resource {
 
 		try {
 			ZipFile zip = new ZipFile(file);
+			Source source = new Source(file);
 			nextEntry: for (Enumeration< ? extends ZipEntry> e = zip.entries(); e.hasMoreElements();) {
 				ZipEntry entry = e.nextElement();
 				if (pattern != null) {
@@ -48,7 +139,7 @@ public class ZipResource implements Resource {
 					long time = entry.getTime();
 					if (time <= 0)
 						time = file.lastModified();
-					jar.putResource(entry.getName(), new ZipResource(zip, entry, time), true);
+					jar.putResource(entry.getName(), new ZipResource(zip, entry, time, source), true);
 				}
 			}
 			return zip;
@@ -81,4 +172,18 @@ public class ZipResource implements Resource {
 	public long size() {
 		return entry.getSize();
 	}
+
+	/**
+	 * Answer the offset of the local header of this entry in its ZIP file or
+	 * -1 if it cannot be found.
+	 */
+	long getLocalHeaderOffset() {
+		if (source == null)
+			return -1;
+		return source.getOffset(entry.getName());
+	}
+
+	File getFile() {
+		return source == null ? null : source.file;
+	}
 }
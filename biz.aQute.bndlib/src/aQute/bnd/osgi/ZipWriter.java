@@ -0,0 +1,365 @@
+package aQute.bnd.osgi;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.zip.*;
+
+/**
+ * Writes a ZIP stream like {@link ZipOutputStream} but can also copy the
+ * compressed data of a {@link ZipResource} verbatim from its source file. This
+ * saves inflating and deflating again all the entries that are copied
+ * unchanged from other JARs. Only what {@link Jar} needs is supported: new
+ * entries are always deflated and there is no zip64 support, just like the
+ * {@link ZipOutputStream} of Java 5.
+ */
+class ZipWriter extends OutputStream {
+	static final int			LOCSIG		= 0x04034b50;
+	static final int			EXTSIG		= 0x08074b50;
+	static final int			CENSIG		= 0x02014b50;
+	static final int			ENDSIG		= 0x06054b50;
+	static final int			LOCHDR		= 30;
+	static final int			CENHDR		= 46;
+	static final int			ENDHDR		= 22;
+
+	// data descriptor follows the data
+	static final int			FLAG_EXT	= 0x0008;
+	// names are UTF-8
+	static final int			FLAG_EFS	= 0x0800;
+
+	static final byte[]			JAR_MAGIC	= {
+			(byte) 0xFE, (byte) 0xCA, 0, 0
+											};
+
+	static class Entry {
+		byte[]	name;
+		byte[]	extra;
+		int		flag;
+		int		method;
+		long	time;
+		long	crc;
+		long	csize;
+		long	size;
+		long	offset;
+	}
+
+	final OutputStream					target;
+	final OutputStream					out;
+	final List<Entry>					entries		= new ArrayList<Entry>();
+	final Set<String>					names		= new HashSet<String>();
+	final Deflater						deflater	= new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+	final CRC32							crc			= new CRC32();
+	final Map<File,FileInputStream>		sources		= new HashMap<File,FileInputStream>();
+	final byte[]						buffer		= new byte[4096];
+	final byte[]						one			= new byte[1];
+	boolean								jarMagic;
+	boolean								finished;
+	WritableByteChannel					channel;
+	Entry								current;
+	long								start;
+	long								written;
+
+	/**
+	 * @param target
+	 *            the stream to write to
+	 * @param jarMagic
+	 *            mark the first entry as a JAR like {@link JarOutputStream}
+	 */
+	ZipWriter(OutputStream target, boolean jarMagic) {
+		this.target = target;
+		this.out = new BufferedOutputStream(target, 8192);
+		this.jarMagic = jarMagic;
+	}
+
+	/**
+	 * Start a new deflated entry, the data is written to this stream.
+	 */
+	public void putNextEntry(ZipEntry ze) throws IOException {
+		closeEntry();
+		Entry e = entry(ze, ZipEntry.DEFLATED);
+		e.flag |= FLAG_EXT;
+		writeLocalHeader(e);
+		crc.reset();
+		deflater.reset();
+		start = written;
+		current = e;
+	}
+
+	/**
+	 * Add an entry with the already compressed data of a {@link ZipResource}.
+	 * The name, time, and extra field are taken from the given entry, the data
+	 * is transferred directly from the resource's ZIP file.
+	 *
+	 * @return false if the data could not be located, in that case nothing has
+	 *         been written
+	 */
+	public boolean putRawEntry(ZipEntry ze, ZipResource resource) throws IOException {
+		ZipEntry source = resource.entry;
+		long header = resource.getLocalHeaderOffset();
+		if (header < 0 || source.getCompressedSize() < 0 || source.getSize() < 0)
+			return false;
+
+		int method = source.getMethod();
+		if (method != ZipEntry.DEFLATED && method != ZipEntry.STORED)
+			return false;
+
+		FileChannel in = getSource(resource.getFile());
+		if (in == null)
+			return false;
+
+		byte[] name = source.getName().getBytes("UTF-8");
+		ByteBuffer bb = ByteBuffer.allocate(LOCHDR + name.length).order(ByteOrder.LITTLE_ENDIAN);
+		while (bb.hasRemaining())
+			if (in.read(bb, header + bb.position()) < 0)
+				return false;
+
+		if (bb.getInt(0) != LOCSIG || (bb.getShort(6) & 1) != 0 || (bb.getShort(26) & 0xFFFF) != name.length)
+			return false;
+
+		for (int i = 0; i < name.length; i++)
+			if (bb.get(LOCHDR + i) != name[i])
+				return false;
+
+		long data = header + LOCHDR + name.length + (bb.getShort(28) & 0xFFFF);
+		long csize = source.getCompressedSize();
+		if (data + csize > in.size())
+			return false;
+
+		closeEntry();
+		Entry e = entry(ze, method);
+		e.crc = source.getCrc();
+		e.csize = csize;
+		e.size = source.getSize();
+		writeLocalHeader(e);
+		out.flush();
+		transfer(in, data, csize);
+		written += csize;
+		entries.add(e);
+		return true;
+	}
+
+	public void closeEntry() throws IOException {
+		if (current == null)
+			return;
+
+		deflater.finish();
+		while (!deflater.finished())
+			deflate();
+
+		current.crc = crc.getValue();
+		current.csize = written - start;
+		writeInt(EXTSIG);
+		writeInt(current.crc);
+		writeInt(current.csize);
+		writeInt(current.size);
+		entries.add(current);
+		current = null;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		one[0] = (byte) b;
+		write(one, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (current == null)
+			throw new ZipException("no current ZIP entry");
+		if (len == 0)
+			return;
+
+		crc.update(b, off, len);
+		current.size += len;
+		deflater.setInput(b, off, len);
+		while (!deflater.needsInput())
+			deflate();
+	}
+
+	/**
+	 * Write the central directory. Does not close the target stream.
+	 */
+	public void finish() throws IOException {
+		if (finished)
+			return;
+		finished = true;
+		try {
+			closeEntry();
+			if (entries.size() > 0xFFFF)
+				throw new ZipException("Too many entries for a ZIP file without zip64: " + entries.size());
+
+			long directory = written;
+			for (Entry e : entries) {
+				writeInt(CENSIG);
+				writeShort(20);
+				writeShort(e.method == ZipEntry.STORED ? 10 : 20);
+				writeShort(e.flag);
+				writeShort(e.method);
+				writeInt(e.time);
+				writeInt(e.crc);
+				writeInt(e.csize);
+				writeInt(e.size);
+				writeShort(e.name.length);
+				writeShort(e.extra.length);
+				writeShort(0); // comment
+				writeShort(0); // disk number
+				writeShort(0); // internal attributes
+				writeInt(0); // external attributes
+				writeInt(e.offset);
+				writeBytes(e.name, 0, e.name.length);
+				writeBytes(e.extra, 0, e.extra.length);
+			}
+			long size = written - directory;
+			if (written > 0xFFFFFFFFL)
+				throw new ZipException("ZIP file too large without zip64: " + written);
+
+			writeInt(ENDSIG);
+			writeShort(0);
+			writeShort(0);
+			writeShort(entries.size());
+			writeShort(entries.size());
+			writeInt(size);
+			writeInt(directory);
+			writeShort(0); // comment
+			out.flush();
+		}
+		finally {
+			release();
+		}
+	}
+
+	/**
+	 * Close the source files and end the deflater without writing the central
+	 * directory. Called after a failed write, nothing can be written anymore.
+	 * Does not close the target stream.
+	 */
+	public void release() {
+		finished = true;
+		deflater.end();
+		for (FileInputStream in : sources.values())
+			try {
+				in.close();
+			}
+			catch (IOException e) {
+				// Ignore
+			}
+		sources.clear();
+	}
+
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		finish();
+		target.close();
+	}
+
+	private Entry entry(ZipEntry ze, int method) throws IOException {
+		String name = ze.getName();
+		if (!names.add(name))
+			throw new ZipException("duplicate entry: " + name);
+
+		Entry e = new Entry();
+		e.name = name.getBytes("UTF-8");
+		e.flag = FLAG_EFS;
+		e.method = method;
+		long time = ze.getTime();
+		e.time = dosTime(time == -1 ? System.currentTimeMillis() : time);
+		e.extra = ze.getExtra();
+		if (e.extra == null)
+			e.extra = new byte[0];
+		if (jarMagic) {
+			jarMagic = false;
+			byte[] extra = new byte[JAR_MAGIC.length + e.extra.length];
+			System.arraycopy(JAR_MAGIC, 0, extra, 0, JAR_MAGIC.length);
+			System.arraycopy(e.extra, 0, extra, JAR_MAGIC.length, e.extra.length);
+			e.extra = extra;
+		}
+		e.offset = written;
+		return e;
+	}
+
+	private void writeLocalHeader(Entry e) throws IOException {
+		writeInt(LOCSIG);
+		writeShort(e.method == ZipEntry.STORED ? 10 : 20);
+		writeShort(e.flag);
+		writeShort(e.method);
+		writeInt(e.time);
+		writeInt(e.crc);
+		writeInt(e.csize);
+		writeInt(e.size);
+		writeShort(e.name.length);
+		writeShort(e.extra.length);
+		writeBytes(e.name, 0, e.name.length);
+		writeBytes(e.extra, 0, e.extra.length);
+	}
+
+	private void deflate() throws IOException {
+		int n = deflater.deflate(buffer, 0, buffer.length);
+		if (n > 0)
+			writeBytes(buffer, 0, n);
+	}
+
+	private FileChannel getSource(File file) {
+		FileInputStream in = sources.get(file);
+		if (in == null) {
+			try {
+				in = new FileInputStream(file);
+			}
+			catch (FileNotFoundException e) {
+				return null;
+			}
+			sources.put(file, in);
+		}
+		return in.getChannel();
+	}
+
+	private void transfer(FileChannel in, long position, long count) throws IOException {
+		if (channel == null) {
+			if (target instanceof FileOutputStream)
+				channel = ((FileOutputStream) target).getChannel();
+			else
+				channel = Channels.newChannel(target);
+		}
+		while (count > 0) {
+			long n = in.transferTo(position, count, channel);
+			if (n <= 0)
+				throw new IOException("Could not transfer the data of a ZIP entry, " + count + " bytes left");
+			position += n;
+			count -= n;
+		}
+	}
+
+	private void writeShort(int v) throws IOException {
+		out.write(v & 0xFF);
+		out.write((v >>> 8) & 0xFF);
+		written += 2;
+	}
+
+	private void writeInt(long v) throws IOException {
+		out.write((int) (v & 0xFF));
+		out.write((int) ((v >>> 8) & 0xFF));
+		out.write((int) ((v >>> 16) & 0xFF));
+		out.write((int) ((v >>> 24) & 0xFF));
+		written += 4;
+	}
+
+	private void writeBytes(byte[] b, int off, int len) throws IOException {
+		out.write(b, off, len);
+		written += len;
+	}
+
+	static long dosTime(long time) {
+		Calendar c = Calendar.getInstance();
+		c.setTimeInMillis(time);
+		int year = c.get(Calendar.YEAR);
+		if (year < 1980)
+			return (1 << 21) | (1 << 16);
+		return (year - 1980) << 25 | (c.get(Calendar.MONTH) + 1) << 21 | c.get(Calendar.DAY_OF_MONTH) << 16
+				| c.get(Calendar.HOUR_OF_DAY) << 11 | c.get(Calendar.MINUTE) << 5 | c.get(Calendar.SECOND) >> 1;
+	}
+}
@@ -16,6 +16,7 @@ import aQute.bnd.version.*;
 import aQute.lib.collections.*;
 import aQute.lib.hex.*;
 import aQute.lib.io.*;
+import aQute.lib.filter.*;
 import aQute.lib.json.*;
 import aQute.libg.cryptography.*;
 import aQute.libg.reporter.*;
@@ -34,6 +35,8 @@ public class ResourceRepositoryImpl implements ResourceRepository {
 	private final List<Listener>				listeners		= new CopyOnWriteArrayList<ResourceRepository.Listener>();
 	private boolean								dirty;
 	private FileLayout							index;
+	private final Map<String,ResourceDescriptorImpl>		byId			= new HashMap<String,ResourceDescriptorImpl>();
+	private final Map<String,List<ResourceDescriptorImpl>>	byBsn			= new HashMap<String,List<ResourceDescriptorImpl>>();
 	private Map<URI,Long>						failures		= new HashMap<URI,Long>();
 	private File								cache;
 	private Reporter							reporter		= new ReporterAdapter(System.out);
@@ -83,28 +86,69 @@ public class ResourceRepositoryImpl implements ResourceRepository {
 	}
 
 	/**
-	 * List the resources. We skip the filter for now.
+	 * List the resources that match the filter. The filter is matched against
+	 * the fields of the descriptor, the id is given in hex.
 	 */
 	public List< ? extends ResourceDescriptor> list(String filter) throws Exception {
-		return Collections.unmodifiableList(getIndex().descriptors);
+		List<ResourceDescriptorImpl> descriptors = getIndex().descriptors;
+		if (filter == null)
+			return Collections.unmodifiableList(descriptors);
+
+		Filter f = new Filter(filter);
+		List<ResourceDescriptorImpl> result = new ArrayList<ResourceDescriptorImpl>();
+		for (ResourceDescriptorImpl d : descriptors) {
+			if (f.match(toDictionary(d)))
+				result.add(d);
+		}
+		return Collections.unmodifiableList(result);
+	}
+
+	private static Dictionary<String,Object> toDictionary(ResourceDescriptor d) {
+		Hashtable<String,Object> dict = new Hashtable<String,Object>();
+		put(dict, "id", d.id == null ? null : Hex.toHexString(d.id));
+		put(dict, "bsn", d.bsn);
+		put(dict, "version", d.version);
+		put(dict, "description", d.description);
+		put(dict, "phase", d.phase);
+		put(dict, "url", d.url);
+		put(dict, "owner", d.owner);
+		dict.put("included", d.included);
+		dict.put("dependency", d.dependency);
+		return dict;
+	}
+
+	private static void put(Hashtable<String,Object> dict, String key, Object value) {
+		if (value != null)
+			dict.put(key, value.toString());
 	}
 
 	/**
 	 * Delete a resource from the text file (not from the cache)
 	 */
 	public void delete(byte[] id) throws Exception {
-		for (Iterator<ResourceDescriptorImpl> i = getIndex().descriptors.iterator(); i.hasNext();) {
-			ResourceDescriptorImpl d = i.next();
-			if (Arrays.equals(id, d.id)) {
-				i.remove();
-				reporter.trace("removing resource %s from index", d);
-				event(TYPE.REMOVE, d, null);
-				setDirty();
-			}
-		}
+		remove(id);
 		save();
 	}
 
+	private void remove(byte[] id) throws Exception {
+		FileLayout layout = getIndex();
+		ResourceDescriptorImpl d = byId.remove(Hex.toHexString(id));
+		if (d == null)
+			return;
+
+		// descriptors are equal when their ids are equal
+		layout.descriptors.removeAll(Collections.singleton(d));
+		List<ResourceDescriptorImpl> versions = byBsn.get(d.bsn);
+		if (versions != null) {
+			versions.removeAll(Collections.singleton(d));
+			if (versions.isEmpty())
+				byBsn.remove(d.bsn);
+		}
+		reporter.trace("removing resource %s from index", d);
+		event(TYPE.REMOVE, d, null);
+		setDirty();
+	}
+
 	/**
 	 * Delete a cache entry
 	 */
@@ -121,9 +165,10 @@ public class ResourceRepositoryImpl implements ResourceRepository {
 	 * Add a resource descriptor to the index.
 	 */
 	public void add(ResourceDescriptor rd) throws Exception {
-		delete(rd.id);
+		remove(rd.id);
 		ResourceDescriptorImpl rdi = new ResourceDescriptorImpl(rd);
 		getIndex().descriptors.add(rdi);
+		addToIndexes(rdi);
 		reporter.trace("adding resource %s to index", rdi);
 		event(TYPE.ADD, rdi, null);
 		setDirty();
@@ -251,14 +296,11 @@ public class ResourceRepositoryImpl implements ResourceRepository {
 	}
 
 	/**
-	 * List the resources. We skip the filter for now.
+	 * Get the descriptor with the given id.
 	 */
 	public ResourceDescriptorImpl getResourceDescriptor(byte[] rd) throws Exception {
-		for (ResourceDescriptorImpl d : getIndex().descriptors) {
-			if (Arrays.equals(d.id, rd))
-				return d;
-		}
-		return null;
+		getIndex();
+		return byId.get(Hex.toHexString(rd));
 	}
 
 	/**
@@ -444,9 +486,45 @@ public class ResourceRepositoryImpl implements ResourceRepository {
 			return index;
 
 		if (!indexFile.isFile()) {
-			return index = new FileLayout();
+			index = new FileLayout();
 		} else
-			return index = codec.dec().from(indexFile).get(FileLayout.class);
+			index = codec.dec().from(indexFile).get(FileLayout.class);
+
+		byId.clear();
+		byBsn.clear();
+		for (ResourceDescriptorImpl d : index.descriptors)
+			addToIndexes(d);
+		return index;
+	}
+
+	/**
+	 * Index the descriptor on its id and its bsn. The descriptors of a bsn are
+	 * sorted on version, descriptors with the same version are kept in the
+	 * order they were added.
+	 */
+	private void addToIndexes(ResourceDescriptorImpl d) {
+		if (d.id != null)
+			byId.put(Hex.toHexString(d.id), d);
+		if (d.bsn == null)
+			return;
+
+		List<ResourceDescriptorImpl> versions = byBsn.get(d.bsn);
+		if (versions == null) {
+			versions = new ArrayList<ResourceDescriptorImpl>(1);
+			byBsn.put(d.bsn, versions);
+		}
+		int i = versions.size();
+		while (i > 0 && compare(versions.get(i - 1).version, d.version) > 0)
+			i--;
+		versions.add(i, d);
+	}
+
+	private static int compare(Version a, Version b) {
+		if (a == null)
+			return b == null ? 0 : -1;
+		if (b == null)
+			return 1;
+		return a.compareTo(b);
 	}
 
 	public void setReporter(Reporter processor) {
@@ -470,18 +548,22 @@ public class ResourceRepositoryImpl implements ResourceRepository {
 	}
 
 	public ResourceDescriptor findBestMatch(String bsn, VersionRange range) throws Exception {
-		SearchableRepository.ResourceDescriptor highest = null;
-		for (SearchableRepository.ResourceDescriptor r : list(null)) {
-			if (!bsn.equals(r.bsn))
-				continue;
+		getIndex();
+		List<ResourceDescriptorImpl> versions = byBsn.get(bsn);
+		if (versions == null)
+			return null;
 
+		for (int i = versions.size() - 1; i >= 0; i--) {
+			ResourceDescriptorImpl r = versions.get(i);
 			if (!range.includes(r.version))
 				continue;
 
-			if (highest == null || highest.version.compareTo(r.version) < 0)
-				highest = r;
+			// Prefer the first added of the descriptors with this version
+			while (i > 0 && compare(versions.get(i - 1).version, r.version) == 0)
+				r = versions.get(--i);
+			return r;
 		}
-		return highest;
+		return null;
 	}
 
 }
@@ -3,6 +3,7 @@ package aQute.junit;
 import java.io.*;
 import java.lang.reflect.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 import junit.framework.*;
 
@@ -18,6 +19,9 @@ public class Activator implements BundleActivator, TesterConstants, Runnable {
 	int					port		= -1;
 	boolean				continuous	= false;
 	boolean				trace		= false;
+	int					parallel	= 1;
+	int					shard		= 0;
+	int					shards		= 1;
 	PrintStream			out			= System.err;
 	JUnitEclipseReport	jUnitEclipseReport;
 	volatile Thread		thread;
@@ -55,6 +59,12 @@ public class Activator implements BundleActivator, TesterConstants, Runnable {
 		
 		continuous = Boolean.valueOf(context.getProperty(TESTER_CONTINUOUS));
 		trace = context.getProperty(TESTER_TRACE) != null;
+		parallel = getParallel(context.getProperty(TESTER_PARALLEL));
+		if (context.getProperty(TESTER_SHARDS) != null) {
+			shards = Integer.parseInt(context.getProperty(TESTER_SHARDS));
+			shard = Integer.parseInt(context.getProperty(TESTER_SHARD));
+			trace("running shard %s of %s", shard, shards);
+		}
 		
 		if (thread == null)
 			trace("running in main thread");
@@ -181,8 +191,11 @@ public class Activator implements BundleActivator, TesterConstants, Runnable {
 	private Writer getReportWriter(File reportDir, Bundle bundle) throws IOException {
 		if (reportDir.isDirectory()) {
 			Version v = bundle.getVersion();
-			File f = new File(reportDir, "TEST-" + bundle.getSymbolicName() + "-" + v.getMajor() + "." + v.getMinor()
-					+ "." + v.getMicro() + ".xml");
+			String name = "TEST-" + bundle.getSymbolicName() + "-" + v.getMajor() + "." + v.getMinor() + "."
+					+ v.getMicro();
+			if (shards > 1)
+				name += "-shard-" + shard;
+			File f = new File(reportDir, name + ".xml");
 			return new OutputStreamWriter(new FileOutputStream(f), "UTF-8");
 		}
 		return null;
@@ -205,8 +218,11 @@ public class Activator implements BundleActivator, TesterConstants, Runnable {
 		try {
 			List<String> names = new ArrayList<String>();
 			StringTokenizer st = new StringTokenizer(testnames, " ,");
-			while (st.hasMoreTokens())
-				names.add(st.nextToken());
+			for (int i = 0; st.hasMoreTokens(); i++) {
+				String name = st.nextToken();
+				if (i % shards == shard)
+					names.add(name);
+			}
 
 			List<TestReporter> reporters = new ArrayList<TestReporter>();
 			final TestResult result = new TestResult();
@@ -214,8 +230,10 @@ public class Activator implements BundleActivator, TesterConstants, Runnable {
 			Tee systemErr;
 			Tee systemOut;
 
-			systemOut = new Tee(System.err);
-			systemErr = new Tee(System.err);
+			// Concurrent tests capture their output per thread
+			boolean concurrent = parallel > 1 && port <= 0;
+			systemOut = new Tee(System.err, concurrent);
+			systemErr = new Tee(System.err, concurrent);
 			systemOut.capture(trace).echo(true);
 			systemErr.capture(trace).echo(true);
 			System.setOut(systemOut.getStream());
@@ -255,7 +273,10 @@ public class Activator implements BundleActivator, TesterConstants, Runnable {
 						tr.begin(flattened, realcount);
 					}
 					trace("running suite " + suite);
-					suite.run(result);
+					if (concurrent)
+						runParallel(suite, result);
+					else
+						suite.run(result);
 
 				}
 				catch (Throwable t) {
@@ -290,6 +311,46 @@ public class Activator implements BundleActivator, TesterConstants, Runnable {
 		return -1;
 	}
 
+	/**
+	 * Run the tests of the suite on a pool of threads. The reporters keep their
+	 * state per test and the {@link Tee}s capture the output per thread.
+	 */
+	private void runParallel(TestSuite suite, final TestResult result) throws Exception {
+		trace("running suite on %s threads", parallel);
+		ExecutorService executor = Executors.newFixedThreadPool(parallel);
+		try {
+			List<Future< ? >> running = new ArrayList<Future< ? >>();
+			for (Enumeration< ? > e = suite.tests(); e.hasMoreElements();) {
+				final Test test = (Test) e.nextElement();
+				running.add(executor.submit(new Runnable() {
+					public void run() {
+						if (!result.shouldStop())
+							test.run(result);
+					}
+				}));
+			}
+			for (Future< ? > f : running)
+				f.get();
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	private int getParallel(String parallel) {
+		if (parallel == null || parallel.equalsIgnoreCase("false"))
+			return 1;
+		if (parallel.equalsIgnoreCase("true"))
+			return Runtime.getRuntime().availableProcessors();
+		try {
+			return Math.max(1, Integer.parseInt(parallel));
+		}
+		catch (NumberFormatException e) {
+			error("Invalid value for %s, must be true, false or a number: %s", TESTER_PARALLEL, parallel);
+			return 1;
+		}
+	}
+
 	private TestSuite createSuite(Bundle tfw, List<String> testNames, TestResult result) throws Exception {
 		TestSuite suite = new TestSuite();
 		for (String fqn : testNames) {
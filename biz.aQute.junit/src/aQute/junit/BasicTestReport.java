@@ -13,7 +13,7 @@ public class BasicTestReport implements TestListener, TestReporter {
 	private PrintStream		out;
 	private final Tee		systemOut;
 	private final Tee		systemErr;
-	private int				fails;
+	private final Set<Test>	failed	= Collections.synchronizedSet(new HashSet<Test>());
 	private Bundle			targetBundle;
 	private final Activator	activator;
 
@@ -31,17 +31,17 @@ public class BasicTestReport implements TestListener, TestReporter {
 		activator.trace(">>>> %s, tests %s", targetBundle, tests);
 	}
 
-	public void addError(Test test, Throwable t) {
+	public synchronized void addError(Test test, Throwable t) {
 		activator.trace("  add error to %s : %s", test, t);
 		check();
-		fails++;
+		failed.add(test);
 		errors++;
 	}
 
-	public void addFailure(Test test, AssertionFailedError t) {
+	public synchronized void addFailure(Test test, AssertionFailedError t) {
 		activator.trace("  add failure to %s : %s", test, t);
 		check();
-		fails++;
+		failed.add(test);
 		errors++;
 	}
 
@@ -78,16 +78,17 @@ public class BasicTestReport implements TestListener, TestReporter {
 				}
 			}
 		}
-		fails = 0;
+		failed.remove(test);
 		systemOut.clear().capture(true).echo(true);
 		systemErr.clear().capture(true).echo(true);
 	}
 
 	public void endTest(Test test) {
+		boolean fails = failed.remove(test);
 		activator.trace("  << %s, fails=%s, errors=%s", test, fails, errors);
 		systemOut.capture(false);
 		systemErr.capture(false);
-		if (fails > 0) {
+		if (fails) {
 			String sysout = systemOut.getContent();
 			String syserr = systemErr.getContent();
 			if (sysout != null)
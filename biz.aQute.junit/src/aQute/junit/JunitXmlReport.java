@@ -10,16 +10,16 @@ import junit.framework.*;
 import org.osgi.framework.*;
 
 public class JunitXmlReport implements TestReporter {
-	Tag				testsuite	= new Tag("testsuite");
-	Tag				testcase;
+	Tag				testsuite		= new Tag("testsuite");
+	Map<Test,Tag>	testcases		= new HashMap<Test,Tag>();
+	Map<Test,Long>	testStartTimes	= new HashMap<Test,Long>();
 	static String	hostname;
-	DateFormat		df			= new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+	DateFormat		df				= new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
 	long			startTime;
-	long			testStartTime;
-	int				tests		= 0;
-	int				failures	= 0;
-	int				errors		= 0;
-	int				skipped		= 0;
+	int				tests			= 0;
+	int				failures		= 0;
+	int				errors			= 0;
+	int				skipped			= 0;
 	PrintWriter		out;
 	boolean			finished;
 	boolean			progress;
@@ -116,7 +116,7 @@ public class JunitXmlReport implements TestReporter {
 
 	public void begin(List<Test> classNames, int realcount) {}
 
-	public void end() {
+	public synchronized void end() {
 		if (!finished) {
 			finished = true;
 			testsuite.addAttribute("tests", tests);
@@ -136,8 +136,9 @@ public class JunitXmlReport implements TestReporter {
 
 	// <testcase classname="test.AnnotationsTest" name="testComponentReader"
 	// time="0.045" />
-	public void startTest(Test test) {
-		testcase = new Tag("testcase");
+	public synchronized void startTest(Test test) {
+		Tag testcase = new Tag("testcase");
+		testcases.put(test, testcase);
 		testsuite.addContent(testcase);
 		testcase.addAttribute("classname", test.getClass().getName());
 		String nameAndClass = test.toString();
@@ -149,7 +150,7 @@ public class JunitXmlReport implements TestReporter {
 		}
 
 		testcase.addAttribute("name", name);
-		testStartTime = System.currentTimeMillis();
+		testStartTimes.put(test, System.currentTimeMillis());
 		progress(name);
 	}
 
@@ -162,7 +163,8 @@ public class JunitXmlReport implements TestReporter {
 	// </error>
 	// </testcase>
 
-	public void addError(Test test, Throwable t) {
+	public synchronized void addError(Test test, Throwable t) {
+		Tag testcase = testcases.get(test);
 		Tag error = new Tag("error");
 		error.setCDATA();
 		error.addAttribute("type", t.getClass().getName());
@@ -198,7 +200,8 @@ public class JunitXmlReport implements TestReporter {
 	// </failure>
 	// <testcase>
 	//
-	public void addFailure(Test test, AssertionFailedError t) {
+	public synchronized void addFailure(Test test, AssertionFailedError t) {
+		Tag testcase = testcases.get(test);
 		Tag failure = new Tag("failure");
 		failure.setCDATA();
 		failure.addAttribute("type", t.getClass().getName());
@@ -208,7 +211,9 @@ public class JunitXmlReport implements TestReporter {
 		failures++;
 	}
 
-	public void endTest(Test test) {
+	public synchronized void endTest(Test test) {
+		Tag testcase = testcases.remove(test);
+		long testStartTime = testStartTimes.remove(test);
 		String[] outs = basic.getCaptured();
 		if (outs[0] != null) {
 			Tag sysout = new Tag(testcase, "system-out");
@@ -3,14 +3,41 @@ package aQute.junit;
 import java.io.*;
 import java.nio.charset.*;
 
+/**
+ * Echoes the output to the old stream and captures it. By default all threads
+ * share one capture, so the output of threads a test starts is part of the
+ * output of the test. When tests run concurrently the output is captured per
+ * thread so each test captures its own output.
+ */
 public class Tee extends OutputStream {
-	PrintStream				oldStream;
-	ByteArrayOutputStream	buffer	= new ByteArrayOutputStream();
-	boolean					capture;
-	boolean					echo;
+	PrintStream							oldStream;
+	final Capture						shared;
+	final ThreadLocal<Capture>			captures	= new ThreadLocal<Capture>() {
+															@Override
+															protected Capture initialValue() {
+																return new Capture();
+															}
+														};
+	volatile boolean					echo;
+
+	static class Capture {
+		final ByteArrayOutputStream	buffer	= new ByteArrayOutputStream();
+		volatile boolean			capture;
+	}
 
 	public Tee(PrintStream oldOut) {
+		this(oldOut, false);
+	}
+
+	/**
+	 * @param oldOut
+	 *            the stream to echo to
+	 * @param perThread
+	 *            capture the output of each thread separately
+	 */
+	public Tee(PrintStream oldOut, boolean perThread) {
 		oldStream = oldOut;
+		shared = perThread ? null : new Capture();
 	}
 
 	public PrintStream getStream() {
@@ -19,13 +46,24 @@ public class Tee extends OutputStream {
 
 	@Override
 	public void write(int character) throws IOException {
-		if (capture)
-			buffer.write(character);
+		Capture c = getCapture();
+		if (c.capture)
+			c.buffer.write(character);
 		if (echo)
 			oldStream.write(character);
 	}
 
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		Capture c = getCapture();
+		if (c.capture)
+			c.buffer.write(b, off, len);
+		if (echo)
+			oldStream.write(b, off, len);
+	}
+
 	public String getContent() {
+		ByteArrayOutputStream buffer = getCapture().buffer;
 		if (buffer.size() == 0)
 			return null;
 		try {
@@ -37,12 +75,12 @@ public class Tee extends OutputStream {
 	}
 
 	public Tee clear() {
-		buffer.reset();
+		getCapture().buffer.reset();
 		return this;
 	}
 
 	public Tee capture(boolean capture) {
-		this.capture = capture;
+		getCapture().capture = capture;
 		return this;
 	}
 
@@ -51,4 +89,7 @@ public class Tee extends OutputStream {
 		return this;
 	}
 
+	private Capture getCapture() {
+		return shared != null ? shared : captures.get();
+	}
 }
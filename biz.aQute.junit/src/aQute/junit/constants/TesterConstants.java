@@ -51,4 +51,23 @@ public interface TesterConstants {
 	 * to use this special thread to run all tests on.
 	 */
 	String	TESTER_SEPARATETHREAD			= "tester.separatethread";
+
+	/**
+	 * Run the test classes concurrently on the given number of threads, true
+	 * uses a thread per processor. The tests of a class run on one thread. The
+	 * tests run sequentially when an Eclipse JUnit port is set.
+	 */
+	String	TESTER_PARALLEL		= "tester.parallel";
+
+	/**
+	 * The number of frameworks the test cases are divided over. Every framework
+	 * runs the test cases whose index modulo this number equals its
+	 * {@link #TESTER_SHARD} and writes its reports with a -shard-n suffix.
+	 */
+	String	TESTER_SHARDS		= "tester.shards";
+
+	/**
+	 * The index of this framework in the {@link #TESTER_SHARDS}, starting at 0.
+	 */
+	String	TESTER_SHARD		= "tester.shard";
 }
@@ -2,6 +2,7 @@ package aQute.junit.plugin;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 import aQute.bnd.build.*;
 import aQute.bnd.osgi.*;
@@ -9,10 +10,11 @@ import aQute.bnd.service.*;
 import aQute.junit.constants.*;
 
 public class ProjectTesterImpl extends ProjectTester implements TesterConstants, EclipseJUnitTester {
-	int		port	= -1;
-	String	host;
-	Project	project;
-	boolean	prepared;
+	int							port	= -1;
+	String						host;
+	Project						project;
+	boolean						prepared;
+	final List<ProjectLauncher>	shards	= new ArrayList<ProjectLauncher>();
 
 	public ProjectTesterImpl(Project project) throws Exception {
 		super(project);
@@ -25,41 +27,151 @@ public class ProjectTesterImpl extends ProjectTester implements TesterConstants,
 			prepared = true;
 			super.prepare();
 			ProjectLauncher launcher = getProjectLauncher();
-			if (port > 0) {
-				launcher.getRunProperties().put(TESTER_PORT, "" + port);
-				if (host != null)
-					launcher.getRunProperties().put(TESTER_HOST, "" + host);
 
-			}
-			launcher.getRunProperties().put(TESTER_DIR, getReportDir().getAbsolutePath());
-			launcher.getRunProperties().put(TESTER_CONTINUOUS, "" + getContinuous());
-			if (Processor.isTrue(project.getProperty(Constants.RUNTRACE)))
-				launcher.getRunProperties().put(TESTER_TRACE, "true");
-			
-			try {
-				// use reflection to avoid NoSuchMethodError due to change in API
-				File cwd = (File) getClass().getMethod("getCwd").invoke(this);
-				if (cwd != null) launcher.setCwd(cwd);
-			} catch (NoSuchMethodException e){
-				// ignore
-			}
-
-			Collection<String> testnames = getTests();
-			if (testnames.size() > 0) {
-				launcher.getRunProperties().put(TESTER_NAMES, Processor.join(testnames));
-			}
-			// This is only necessary because we might be picked
-			// as default and that implies we're not on the -testpath
-			launcher.addDefault(Constants.DEFAULT_TESTER_BSN);
-			launcher.prepare();
+			int n = getShards();
+			if (n > 1) {
+				// The shards are copies of the launcher, they must not share
+				// the framework storage
+				File storage = launcher.getStorageDir();
+				for (int i = 1; i < n; i++) {
+					ProjectLauncher shard = project.getProjectLauncher();
+					for (Container c : project.getTestpath())
+						shard.addClasspath(c);
+					shard.getRunProperties().putAll(launcher.getRunProperties());
+					shard.setStorageDir(new File(storage.getParentFile(), storage.getName() + "-shard-" + i));
+					shard.setTimeout(launcher.getTimeout(), TimeUnit.MILLISECONDS);
+					shard.setTrace(launcher.getTrace());
+					shard.setKeep(launcher.isKeep());
+					shard.setCwd(launcher.getCwd());
+					shards.add(shard);
+				}
+				shards.add(0, launcher);
+				for (int i = 0; i < n; i++) {
+					ProjectLauncher shard = shards.get(i);
+					shard.getRunProperties().put(TESTER_SHARDS, "" + n);
+					shard.getRunProperties().put(TESTER_SHARD, "" + i);
+					prepare(shard);
+				}
+			} else
+				prepare(launcher);
 		}
 		return true;
 	}
 
+	private void prepare(ProjectLauncher launcher) throws Exception {
+		if (port > 0) {
+			launcher.getRunProperties().put(TESTER_PORT, "" + port);
+			if (host != null)
+				launcher.getRunProperties().put(TESTER_HOST, "" + host);
+
+		}
+		launcher.getRunProperties().put(TESTER_DIR, getReportDir().getAbsolutePath());
+		launcher.getRunProperties().put(TESTER_CONTINUOUS, "" + getContinuous());
+		if (Processor.isTrue(project.getProperty(Constants.RUNTRACE)))
+			launcher.getRunProperties().put(TESTER_TRACE, "true");
+		String parallel = project.getProperty(Constants.TESTPARALLEL);
+		if (parallel != null)
+			launcher.getRunProperties().put(TESTER_PARALLEL, parallel);
+		
+		try {
+			// use reflection to avoid NoSuchMethodError due to change in API
+			File cwd = (File) getClass().getMethod("getCwd").invoke(this);
+			if (cwd != null) launcher.setCwd(cwd);
+		} catch (NoSuchMethodException e){
+			// ignore
+		}
+
+		Collection<String> testnames = getTests();
+		if (testnames.size() > 0) {
+			launcher.getRunProperties().put(TESTER_NAMES, Processor.join(testnames));
+		}
+		// This is only necessary because we might be picked
+		// as default and that implies we're not on the -testpath
+		launcher.addDefault(Constants.DEFAULT_TESTER_BSN);
+		launcher.prepare();
+	}
+
+	/**
+	 * The number of frameworks to divide the tests over. Sharding needs a
+	 * report per framework, it is therefore not used for continuous testing
+	 * and when reporting to Eclipse.
+	 */
+	private int getShards() {
+		String shards = project.getProperty(Constants.TESTSHARDS);
+		if (shards == null || port > 0 || getContinuous())
+			return 1;
+		try {
+			return Math.max(1, Integer.parseInt(shards.trim()));
+		}
+		catch (NumberFormatException e) {
+			project.error("Invalid %s, must be a number: %s", Constants.TESTSHARDS, shards);
+			return 1;
+		}
+	}
+
 	@Override
 	public int test() throws Exception {
 		prepare();
-		return getProjectLauncher().launch();
+		if (shards.isEmpty())
+			return getProjectLauncher().launch();
+
+		// Reports of an earlier run with more shards must not be merged
+		ShardReports.clean(getReportDir());
+
+		List<FutureTask<Integer>> running = new ArrayList<FutureTask<Integer>>();
+		boolean done = false;
+		try {
+			for (final ProjectLauncher shard : shards.subList(1, shards.size())) {
+				FutureTask<Integer> task = new FutureTask<Integer>(new Callable<Integer>() {
+					public Integer call() throws Exception {
+						return shard.launch();
+					}
+				});
+				running.add(task);
+				Processor.getExecutor().execute(task);
+			}
+
+			int errors = getProjectLauncher().launch();
+			for (FutureTask<Integer> task : running) {
+				int result = task.get();
+				if (result < 0 || errors < 0)
+					errors = Math.min(errors, result);
+				else
+					errors += result;
+			}
+			done = true;
+			ShardReports.merge(getReportDir());
+			return errors;
+		}
+		finally {
+			if (!done)
+				stop(running);
+		}
+	}
+
+	/**
+	 * Stop the shards that are still running and wait for them to end
+	 */
+	private void stop(List<FutureTask<Integer>> running) {
+		for (int i = 0; i < running.size(); i++) {
+			FutureTask<Integer> task = running.get(i);
+			if (!task.cancel(false) && !task.isDone()) {
+				try {
+					shards.get(i + 1).cancel();
+				}
+				catch (Exception e) {
+					// Not launched yet, it ends by its timeout
+				}
+			}
+		}
+		for (FutureTask<Integer> task : running) {
+			try {
+				task.get();
+			}
+			catch (Exception e) {
+				// Cancelled or failed, the main launch failed already
+			}
+		}
 	}
 
 	public void setHost(String host) {
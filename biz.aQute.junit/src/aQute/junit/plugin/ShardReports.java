@@ -0,0 +1,129 @@
+package aQute.junit.plugin;
+
+import java.io.*;
+import java.util.*;
+import java.util.regex.*;
+
+import javax.xml.parsers.*;
+import javax.xml.transform.*;
+import javax.xml.transform.dom.*;
+import javax.xml.transform.stream.*;
+
+import org.w3c.dom.*;
+
+/**
+ * Merges the JUnit XML reports the shards of a test run write into the report
+ * a single framework would have written. A shard writes TEST-bsn-version-shard-n.xml,
+ * the merged report is TEST-bsn-version.xml and contains the test cases of all
+ * shards. The counts are added, the time is the time of the slowest shard
+ * since the shards run concurrently.
+ */
+class ShardReports {
+	final static Pattern	SHARD_REPORT	= Pattern.compile("(.+)-shard-(\\d+)\\.xml");
+	final static String[]	COUNTS			= {
+			"tests", "failures", "errors", "skipped"
+											};
+
+	/**
+	 * Delete the shard reports in the directory, for example those left by an
+	 * earlier run.
+	 */
+	static void clean(File reportDir) {
+		File[] files = reportDir.listFiles();
+		if (files == null)
+			return;
+
+		for (File f : files)
+			if (SHARD_REPORT.matcher(f.getName()).matches())
+				f.delete();
+	}
+
+	/**
+	 * Merge the shard reports in the directory and delete them. The shards are
+	 * merged in the order of their index.
+	 */
+	static void merge(File reportDir) throws Exception {
+		Map<String,List<File>> reports = new TreeMap<String,List<File>>();
+		File[] files = reportDir.listFiles();
+		if (files == null)
+			return;
+
+		for (File f : files) {
+			Matcher m = SHARD_REPORT.matcher(f.getName());
+			if (m.matches()) {
+				List<File> shards = reports.get(m.group(1));
+				if (shards == null) {
+					shards = new ArrayList<File>();
+					reports.put(m.group(1), shards);
+				}
+				shards.add(f);
+			}
+		}
+
+		DocumentBuilder db = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+		for (Map.Entry<String,List<File>> entry : reports.entrySet()) {
+			List<File> shards = entry.getValue();
+			Collections.sort(shards, new Comparator<File>() {
+				public int compare(File a, File b) {
+					long ia = index(a);
+					long ib = index(b);
+					return ia < ib ? -1 : ia == ib ? 0 : 1;
+				}
+			});
+
+			Document merged = db.parse(shards.get(0));
+			Element testsuite = merged.getDocumentElement();
+			for (File shard : shards.subList(1, shards.size()))
+				merge(testsuite, db.parse(shard).getDocumentElement());
+
+			Transformer transformer = TransformerFactory.newInstance().newTransformer();
+			transformer.transform(new DOMSource(merged),
+					new StreamResult(new File(reportDir, entry.getKey() + ".xml")));
+
+			for (File shard : shards)
+				shard.delete();
+		}
+	}
+
+	private static long index(File shard) {
+		Matcher m = SHARD_REPORT.matcher(shard.getName());
+		m.matches();
+		return Long.parseLong(m.group(2));
+	}
+
+	private static void merge(Element testsuite, Element shard) {
+		for (String count : COUNTS)
+			testsuite.setAttribute(count, "" + (getLong(testsuite, count) + getLong(shard, count)));
+
+		if (getDouble(shard, "time") > getDouble(testsuite, "time"))
+			testsuite.setAttribute("time", shard.getAttribute("time"));
+
+		NodeList children = shard.getChildNodes();
+		for (int i = 0; i < children.getLength(); i++) {
+			Node child = children.item(i);
+			if (child instanceof Element) {
+				String name = ((Element) child).getTagName();
+				if (name.equals("testcase") || name.equals("error"))
+					testsuite.appendChild(testsuite.getOwnerDocument().importNode(child, true));
+			}
+		}
+	}
+
+	private static long getLong(Element element, String attribute) {
+		try {
+			return Long.parseLong(element.getAttribute(attribute));
+		}
+		catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	private static double getDouble(Element element, String attribute) {
+		try {
+			return Double.parseDouble(element.getAttribute(attribute));
+		}
+		catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+}
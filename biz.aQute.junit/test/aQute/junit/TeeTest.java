@@ -0,0 +1,67 @@
+package aQute.junit;
+
+import java.io.*;
+
+import junit.framework.*;
+
+public class TeeTest extends TestCase {
+
+	/**
+	 * Sequential tests share the capture, the output of a thread the test
+	 * starts is part of the output of the test
+	 */
+	public static void testShared() throws Exception {
+		ByteArrayOutputStream echoed = new ByteArrayOutputStream();
+		final Tee tee = new Tee(new PrintStream(echoed));
+		tee.clear().capture(true).echo(true);
+		final PrintStream out = tee.getStream();
+
+		out.print("main;");
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				out.print("thread;");
+			}
+		};
+		thread.start();
+		thread.join();
+
+		assertEquals("main;thread;", tee.getContent());
+		assertEquals("main;thread;", echoed.toString());
+
+		tee.capture(false);
+		out.print("ignored");
+		assertEquals("main;thread;", tee.getContent());
+		tee.clear();
+		assertNull(tee.getContent());
+	}
+
+	/**
+	 * Concurrent tests capture per thread, every thread sees its own output
+	 */
+	public static void testPerThread() throws Exception {
+		ByteArrayOutputStream echoed = new ByteArrayOutputStream();
+		final Tee tee = new Tee(new PrintStream(echoed), true);
+		tee.clear().capture(true).echo(true);
+		final PrintStream out = tee.getStream();
+		final String[] content = new String[2];
+
+		out.print("main;");
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				content[0] = tee.getContent();
+				tee.capture(true);
+				out.print("thread;");
+				content[1] = tee.getContent();
+			}
+		};
+		thread.start();
+		thread.join();
+
+		assertNull(content[0]);
+		assertEquals("thread;", content[1]);
+		assertEquals("main;", tee.getContent());
+		assertEquals("main;thread;", echoed.toString());
+	}
+}
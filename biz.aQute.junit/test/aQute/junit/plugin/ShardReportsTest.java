@@ -0,0 +1,91 @@
+package aQute.junit.plugin;
+
+import java.io.*;
+
+import javax.xml.parsers.*;
+
+import junit.framework.*;
+
+import org.w3c.dom.*;
+
+import aQute.lib.io.*;
+
+public class ShardReportsTest extends TestCase {
+	File	dir;
+
+	@Override
+	protected void setUp() throws Exception {
+		dir = new File("generated/shardreports");
+		IO.delete(dir);
+		dir.mkdirs();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		IO.delete(dir);
+	}
+
+	public void testMerge() throws Exception {
+		write("TEST-a-1.0.0-shard-0.xml", "tests='2' failures='1' errors='0' skipped='0' time='1.5'",
+				"<testcase name='a'/><testcase name='b'><failure/></testcase><error reason='x'/>");
+		write("TEST-a-1.0.0-shard-1.xml", "tests='3' failures='0' errors='1' skipped='1' time='2.25'",
+				"<testcase name='c'/><testcase name='d'/><testcase name='e'><error/></testcase>");
+		write("TEST-b-1.0.0-shard-0.xml", "tests='1' failures='0' errors='0' skipped='0' time='0.5'",
+				"<testcase name='f'/>");
+
+		ShardReports.merge(dir);
+
+		assertEquals(2, dir.list().length);
+		Element a = read("TEST-a-1.0.0.xml");
+		assertEquals("5", a.getAttribute("tests"));
+		assertEquals("1", a.getAttribute("failures"));
+		assertEquals("1", a.getAttribute("errors"));
+		assertEquals("1", a.getAttribute("skipped"));
+		assertEquals("2.25", a.getAttribute("time"));
+		assertEquals(5, a.getElementsByTagName("testcase").getLength());
+		assertEquals(1, a.getElementsByTagName("failure").getLength());
+		assertEquals(1, a.getElementsByTagName("properties").getLength());
+
+		Element b = read("TEST-b-1.0.0.xml");
+		assertEquals("1", b.getAttribute("tests"));
+		assertEquals(1, b.getElementsByTagName("testcase").getLength());
+	}
+
+	public void testMergeOrder() throws Exception {
+		for (int i = 0; i < 11; i++)
+			write("TEST-a-1.0.0-shard-" + i + ".xml", "tests='1' failures='0' errors='0' skipped='0' time='1'",
+					"<testcase name='t" + i + "'/>");
+
+		ShardReports.merge(dir);
+
+		NodeList testcases = read("TEST-a-1.0.0.xml").getElementsByTagName("testcase");
+		assertEquals(11, testcases.getLength());
+		for (int i = 0; i < 11; i++)
+			assertEquals("t" + i, ((Element) testcases.item(i)).getAttribute("name"));
+	}
+
+	public void testClean() throws Exception {
+		write("TEST-a-1.0.0-shard-2.xml", "tests='1' failures='0' errors='0' skipped='0' time='1'",
+				"<testcase name='a'/>");
+		write("TEST-a-1.0.0.xml", "tests='1' failures='0' errors='0' skipped='0' time='1'", "<testcase name='a'/>");
+		ShardReports.clean(dir);
+		assertEquals(1, dir.list().length);
+		assertTrue(new File(dir, "TEST-a-1.0.0.xml").isFile());
+	}
+
+	public void testNoShards() throws Exception {
+		write("TEST-a-1.0.0.xml", "tests='1' failures='0' errors='0' skipped='0' time='1'", "<testcase name='a'/>");
+		ShardReports.merge(dir);
+		assertEquals(1, dir.list().length);
+		assertEquals("1", read("TEST-a-1.0.0.xml").getAttribute("tests"));
+	}
+
+	private void write(String name, String attributes, String content) throws IOException {
+		IO.store("<?xml version='1.0'?><testsuite name='test' " + attributes + "><properties/>" + content
+				+ "</testsuite>", new File(dir, name));
+	}
+
+	private Element read(String name) throws Exception {
+		return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new File(dir, name)).getDocumentElement();
+	}
+}
@@ -18,6 +18,7 @@ import org.osgi.framework.*;
 import org.osgi.framework.launch.*;
 import org.osgi.service.packageadmin.*;
 import org.osgi.service.permissionadmin.*;
+import org.osgi.service.startlevel.*;
 
 import aQute.launcher.agent.*;
 import aQute.launcher.constants.*;
@@ -36,11 +37,13 @@ public class Launcher implements ServiceListener {
 	LauncherConstants					parms;
 	Framework							systemBundle;
 	volatile boolean					inrefresh;
+	private final Object				refresh								= new Object();
 	private final Properties			properties;
 	private boolean						security;
 	private SimplePermissionPolicy		policy;
 	private Callable<Integer>			mainThread;
 	private PackageAdmin				padmin;
+	private StartLevel					startlevel;
 	private final List<BundleActivator>	embedded							= new ArrayList<BundleActivator>();
 	private final Map<Bundle,Throwable>	errors								= new HashMap<Bundle,Throwable>();
 	private final Map<File,Bundle>		installedBundles					= new LinkedHashMap<File,Bundle>();
@@ -280,6 +283,12 @@ public class Launcher implements ServiceListener {
 		} else
 			trace("could not get package admin");
 
+		ref = systemContext.getServiceReference(StartLevel.class.getName());
+		if (ref != null)
+			startlevel = (StartLevel) systemContext.getService(ref);
+		else
+			trace("could not get start level, all bundles have the same start level");
+
 		systemContext.addServiceListener(this, "(&(|(objectclass=" + Runnable.class.getName() + ")(objectclass="
 				+ Callable.class.getName() + "))(main.thread=true))");
 
@@ -343,8 +352,10 @@ public class Launcher implements ServiceListener {
 
 			// Will be reset by the Framework listener we added
 			// when we created the framework.
-			while (inrefresh)
-				Thread.sleep(100);
+			synchronized (refresh) {
+				while (inrefresh)
+					refresh.wait();
+			}
 
 		} else
 			trace("cannot refresh the bundles because there is no Package Admin");
@@ -371,19 +382,75 @@ public class Launcher implements ServiceListener {
 		// Add all bundles that we've tried to start but failed
 		all.addAll(wantsToBeStarted);
 
-		for (Bundle b : tobestarted) {
-			try {
-				trace("starting %s", b.getSymbolicName());
-				if (!isFragment(b))
-					b.start(Bundle.START_ACTIVATION_POLICY);
-				trace("started  %s", b.getSymbolicName());
-			}
-			catch (BundleException e) {
+		if (parms.parallel)
+			startParallel(tobestarted);
+		else
+			for (Bundle b : tobestarted)
+				start(b);
+	}
+
+	void start(Bundle b) {
+		try {
+			trace("starting %s", b.getSymbolicName());
+			long begin = System.currentTimeMillis();
+			if (!isFragment(b))
+				b.start(Bundle.START_ACTIVATION_POLICY);
+			trace("started  %s in %sms", b.getSymbolicName(), System.currentTimeMillis() - begin);
+		}
+		catch (BundleException e) {
+			synchronized (wantsToBeStarted) {
 				wantsToBeStarted.add(b);
-				error("Failed to start bundle %s-%s, exception %s", b.getSymbolicName(), b.getVersion(), e);
 			}
+			error("Failed to start bundle %s-%s, exception %s", b.getSymbolicName(), b.getVersion(), e);
+		}
+	}
+
+	/**
+	 * Start the bundles per start level, from low to high. The bundles in a
+	 * start level are started concurrently, the next start level is started
+	 * when all bundles in the level are started.
+	 */
+	void startParallel(List<Bundle> tobestarted) throws InterruptedException {
+		SortedMap<Integer,List<Bundle>> levels = new TreeMap<Integer,List<Bundle>>();
+		for (Bundle b : tobestarted) {
+			if (isFragment(b))
+				continue;
+
+			int level = startlevel == null ? 1 : startlevel.getBundleStartLevel(b);
+			List<Bundle> bundles = levels.get(level);
+			if (bundles == null) {
+				bundles = new ArrayList<Bundle>();
+				levels.put(level, bundles);
+			}
+			bundles.add(b);
 		}
 
+		ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		try {
+			for (Map.Entry<Integer,List<Bundle>> level : levels.entrySet()) {
+				trace("starting start level %s with %s bundles", level.getKey(), level.getValue().size());
+				List<Future<Object>> started = new ArrayList<Future<Object>>();
+				for (final Bundle b : level.getValue())
+					started.add(executor.submit(new Callable<Object>() {
+						public Object call() {
+							start(b);
+							return null;
+						}
+					}));
+
+				for (Future<Object> f : started) {
+					try {
+						f.get();
+					}
+					catch (ExecutionException e) {
+						error("Failed to start a bundle, exception %s", e.getCause());
+					}
+				}
+			}
+		}
+		finally {
+			executor.shutdown();
+		}
 	}
 
 	/**
@@ -424,16 +491,18 @@ public class Launcher implements ServiceListener {
 				error("Failed to uninstall bundle %s, exception %s", f, e);
 			}
 
-		for (File f : tobeinstalled)
-			try {
-				trace("installing %s", f);
-				Bundle b = install(f);
-				installedBundles.put(f, b);
-				tobestarted.add(b);
-			}
-			catch (Exception e) {
-				error("Failed to uninstall bundle %s, exception %s", f, e);
-			}
+		if (parms.parallel)
+			installParallel(tobeinstalled, tobestarted);
+		else
+			for (File f : tobeinstalled)
+				try {
+					Bundle b = timedInstall(f);
+					installedBundles.put(f, b);
+					tobestarted.add(b);
+				}
+				catch (Exception e) {
+					error("Failed to uninstall bundle %s, exception %s", f, e);
+				}
 
 		for (File f : tobeupdated)
 			try {
@@ -548,6 +617,51 @@ public class Launcher implements ServiceListener {
 		}
 	}
 
+	/**
+	 * Install the bundles concurrently. The bundles are administered and
+	 * started in the order of the files.
+	 */
+	void installParallel(List<File> files, List<Bundle> tobestarted) {
+		ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		try {
+			Map<File,Future<Bundle>> installing = new LinkedHashMap<File,Future<Bundle>>();
+			for (final File f : files)
+				installing.put(f, executor.submit(new Callable<Bundle>() {
+					public Bundle call() throws Exception {
+						return timedInstall(f);
+					}
+				}));
+
+			for (Map.Entry<File,Future<Bundle>> entry : installing.entrySet()) {
+				File f = entry.getKey();
+				try {
+					Bundle b = entry.getValue().get();
+					installedBundles.put(f, b);
+					tobestarted.add(b);
+				}
+				catch (ExecutionException e) {
+					error("Failed to install bundle %s, exception %s", f, e.getCause());
+				}
+				catch (InterruptedException e) {
+					error("Interrupted while installing bundle %s", f);
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	Bundle timedInstall(File f) throws Exception {
+		trace("installing %s", f);
+		long begin = System.currentTimeMillis();
+		Bundle b = install(f);
+		trace("installed  %s in %sms", f, System.currentTimeMillis() - begin);
+		return b;
+	}
+
 	Bundle install(File f) throws Exception {
 		BundleContext context = systemBundle.getBundleContext();
 		try {
@@ -762,7 +876,10 @@ public class Launcher implements ServiceListener {
 							trace("Refresh will end due to error or timeout %s", event.toString());
 
 						case FrameworkEvent.PACKAGES_REFRESHED :
-							inrefresh = false;
+							synchronized (refresh) {
+								inrefresh = false;
+								refresh.notifyAll();
+							}
 							trace("refresh ended");
 							break;
 					}
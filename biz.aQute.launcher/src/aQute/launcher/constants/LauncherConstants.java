@@ -37,6 +37,7 @@ public class LauncherConstants {
 	final static String			LAUNCH_EMBEDDED				= "launch.embedded";
 	final static String			LAUNCH_NAME					= "launch.name";
 	final static String			LAUNCH_NOREFERENCES			= "launch.noreferences";
+	final static String			LAUNCH_PARALLEL				= "launch.parallel";
 	/**
 	 * The command line arguments of the launcher. Launcher are not supposed to
 	 * eat any arguments, they should use -D VM arguments so that applications
@@ -57,6 +58,7 @@ public class LauncherConstants {
 	public Map<String,String>	runProperties				= new HashMap<String,String>();
 	public boolean				embedded					= false;
 	public String				name;
+	public boolean				parallel;
 
 	/**
 	 * Translate a constants to properties.
@@ -81,6 +83,7 @@ public class LauncherConstants {
 		p.setProperty(LAUNCH_EMBEDDED, embedded + "");
 		if (name != null)
 			p.setProperty(LAUNCH_NAME, name);
+		p.setProperty(LAUNCH_PARALLEL, parallel + "");
 
 		for (Map.Entry<String,String> entry : runProperties.entrySet()) {
 			if (entry.getValue() == null) {
@@ -120,6 +123,7 @@ public class LauncherConstants {
 		String s = p.getProperty(LAUNCH_EMBEDDED);
 		embedded = s != null && Boolean.parseBoolean(s);
 		name = p.getProperty(LAUNCH_NAME);
+		parallel = Boolean.valueOf(p.getProperty(LAUNCH_PARALLEL));
 		Map<String,String> map = (Map) p;
 		runProperties.putAll(map);
 	}
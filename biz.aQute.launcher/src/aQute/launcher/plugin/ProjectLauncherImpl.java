@@ -98,6 +98,7 @@ public class ProjectLauncherImpl extends ProjectLauncher {
 
 		LauncherConstants lc = new LauncherConstants();
 		lc.noreferences = Processor.isTrue(project.getProperty(Constants.RUNNOREFERENCES));
+		lc.parallel = Processor.isTrue(project.getProperty(Constants.RUNPARALLEL));
 		lc.runProperties = getRunProperties();
 		lc.storageDir = getStorageDir();
 		lc.keep = isKeep();
@@ -4,6 +4,7 @@ import java.io.*;
 import java.net.*;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.*;
 
 import org.osgi.framework.namespace.*;
 import org.osgi.impl.bundle.bindex.*;
@@ -24,9 +25,11 @@ import aQute.bnd.version.*;
 import aQute.lib.collections.*;
 import aQute.lib.filter.*;
 import aQute.lib.io.*;
+import aQute.libg.cryptography.*;
 import aQute.libg.generics.*;
 import aQute.libg.glob.*;
 import aQute.libg.gzip.*;
+import aQute.libg.reporter.*;
 import aQute.service.reporter.*;
 
 /**
@@ -51,6 +54,7 @@ public abstract class AbstractIndexedRepo implements RegistryPlugin, Plugin, Rem
 	public static final String									REPO_INDEX_SHA_EXTENSION		= ".sha";
 
 	private static final int									READ_AHEAD_MAX					= 5 * 1024 * 1024;
+	private static final String									SNAPSHOT_DIR					= ".snapshots";
 
 	private final BundleIndexer								obrIndexer						= new BundleIndexerImpl();
 	protected final Map<String,IRepositoryContentProvider>	allContentProviders				= new HashMap<String,IRepositoryContentProvider>(5);
@@ -142,47 +146,16 @@ public abstract class AbstractIndexedRepo implements RegistryPlugin, Plugin, Rem
 			// Initialise index locations
 			indexLocations = loadIndexes();
 
-			// Create the callback for new referral and resource objects
-			final URLConnector connector = getConnector();
-			IRepositoryIndexProcessor processor = new IRepositoryIndexProcessor() {
+			// Fetch and parse the indexes and their referrals concurrently,
+			// then add the resources in document order
+			URLConnector connector = getConnector();
+			File cacheDir = getCacheDirectory();
+			List<FutureTask<IndexContent>> tasks = new ArrayList<FutureTask<IndexContent>>(indexLocations.size());
+			for (URI indexLocation : indexLocations)
+				tasks.add(submit(new IndexReader(indexLocation, null, cacheDir, connector)));
 
-				public void processResource(Resource resource) {
-					addResourceToIndex(resource);
-				}
-
-				public void processReferral(URI parentUri, Referral referral, int maxDepth, int currentDepth) {
-					try {
-						URI indexLocation = new URI(referral.getUrl());
-						try {
-							CachingUriResourceHandle indexHandle = new CachingUriResourceHandle(indexLocation, getCacheDirectory(), connector, (String) null);
-							indexHandle.setReporter(reporter);
-							readIndex(indexLocation.getPath(), indexLocation, new FileInputStream(indexHandle.request()), this);
-						}
-						catch (Exception e) {
-							warning("Unable to read referral index at URL '%s' from parent index '%s': %s", indexLocation, parentUri, e);
-						}
-
-					}
-					catch (URISyntaxException e) {
-						warning("Invalid referral URL '%s' from parent index '%s': %s", referral.getUrl(), parentUri, e);
-					}
-				}
-
-			};
-
-			// Parse the indexes
-			for (URI indexLocation : indexLocations) {
-				try {
-					CachingUriResourceHandle indexHandle = new CachingUriResourceHandle(indexLocation, getCacheDirectory(), connector, (String) null);
-					indexHandle.setReporter(reporter);
-					File indexFile = indexHandle.request();
-					InputStream indexStream = GZipUtils.detectCompression(new FileInputStream(indexFile));
-					readIndex(indexFile.getName(), indexLocation, indexStream, processor);
-				}
-				catch (Exception e) {
-					error("Unable to read index at URL '%s': %s", indexLocation, e);
-				}
-			}
+			for (FutureTask<IndexContent> task : tasks)
+				merge(task);
 
 			initialised = true;
 		}
@@ -432,8 +405,8 @@ public abstract class AbstractIndexedRepo implements RegistryPlugin, Plugin, Rem
 		throw new IllegalArgumentException("Content attribute is wrong type: " + contentObj.getClass().toString() + " (expected String).");
 	}
 
-	private void readIndex(String name, URI baseUri, InputStream stream, IRepositoryIndexProcessor listener)
-			throws Exception {
+	private IRepositoryContentProvider readIndex(String name, URI baseUri, InputStream stream,
+			IRepositoryIndexProcessor listener, Reporter messages) throws Exception {
 		// Make sure we have a buffering stream
 		InputStream bufferedStream;
 		if (stream.markSupported())
@@ -460,7 +433,7 @@ public abstract class AbstractIndexedRepo implements RegistryPlugin, Plugin, Rem
 				selectedProvider = provider;
 				break;
 			} else if (checkResult.getDecision() == Decision.undecided) {
-				warning("Content provider '%s' was unable to determine compatibility with index at URL '%s': %s",
+				messages.warning("Content provider '%s' was unable to determine compatibility with index at URL '%s': %s",
 						provider.getName(), baseUri, checkResult.getMessage());
 				if (maybeSelectedProvider == null)
 					maybeSelectedProvider = provider;
@@ -472,7 +445,7 @@ public abstract class AbstractIndexedRepo implements RegistryPlugin, Plugin, Rem
 		if (selectedProvider == null) {
 			if (maybeSelectedProvider != null) {
 				selectedProvider = maybeSelectedProvider;
-				warning("No content provider matches the specified index unambiguously. Selected '%s' arbitrarily.",
+				messages.warning("No content provider matches the specified index unambiguously. Selected '%s' arbitrarily.",
 						selectedProvider.getName());
 			} else {
 				throw new IOException("Invalid repository index: no configured content provider understands the specified index.");
@@ -481,11 +454,149 @@ public abstract class AbstractIndexedRepo implements RegistryPlugin, Plugin, Rem
 
 		// Finally, parse the damn file.
 		try {
-			selectedProvider.parseIndex(bufferedStream, baseUri, listener, logService);
+			selectedProvider.parseIndex(bufferedStream, baseUri, listener, new ReporterLogService(messages));
 		}
 		finally {
 			IO.close(bufferedStream);
 		}
+		return selectedProvider;
+	}
+
+	/**
+	 * The outcome of reading an index: the resources and referrals in document
+	 * order and, for each referral, the task that reads it. Messages are
+	 * collected on the worker thread since the reporter is not thread safe,
+	 * they are reported when the content is merged.
+	 */
+	private static class IndexContent {
+		final List<Object>						entries		= new ArrayList<Object>();
+		final List<FutureTask<IndexContent>>	referrals	= new ArrayList<FutureTask<IndexContent>>();
+		final ReporterAdapter					messages	= new ReporterAdapter();
+	}
+
+	/**
+	 * Fetches and parses an index, or loads its snapshot if the index has not
+	 * changed since it was last parsed. Runs on the executor so it must not
+	 * synchronize on the repository, {@link #init()} holds that lock while it
+	 * waits.
+	 */
+	private class IndexReader implements Callable<IndexContent> {
+		final URI			location;
+		final URI			parent;
+		final File			cacheDir;
+		final URLConnector	connector;
+
+		IndexReader(URI location, URI parent, File cacheDir, URLConnector connector) {
+			this.location = location;
+			this.parent = parent;
+			this.cacheDir = cacheDir;
+			this.connector = connector;
+		}
+
+		public IndexContent call() {
+			final IndexContent content = new IndexContent();
+			try {
+				CachingUriResourceHandle indexHandle = new CachingUriResourceHandle(location, cacheDir, connector, (String) null);
+				indexHandle.setReporter(content.messages);
+				File indexFile = indexHandle.request();
+
+				File snapshotFile = null;
+				IndexSnapshot snapshot = null;
+				if (cacheDir != null) {
+					// The snapshots of an index location are kept together so
+					// a new snapshot can replace the old ones
+					String dir = SHA1.digest(location.toString().getBytes("UTF-8")).asHex();
+					String sha = CachingUriResourceHandle.calculateSHA(indexFile);
+					snapshotFile = new File(cacheDir, SNAPSHOT_DIR + "/" + dir + "/" + sha);
+					snapshot = IndexSnapshot.read(snapshotFile);
+					if (snapshot != null
+							&& (!allContentProviders.containsKey(snapshot.provider) || !location.equals(snapshot.base)))
+						snapshot = null;
+				}
+
+				if (snapshot != null)
+					content.entries.addAll(snapshot.entries);
+				else {
+					IRepositoryIndexProcessor processor = new IRepositoryIndexProcessor() {
+
+						public void processResource(Resource resource) {
+							content.entries.add(resource);
+						}
+
+						public void processReferral(URI parentUri, Referral referral, int maxDepth, int currentDepth) {
+							content.entries.add(referral);
+						}
+					};
+
+					InputStream indexStream = new FileInputStream(indexFile);
+					if (parent == null)
+						indexStream = GZipUtils.detectCompression(indexStream);
+					String name = parent == null ? indexFile.getName() : location.getPath();
+					IRepositoryContentProvider provider = readIndex(name, location, indexStream, processor, content.messages);
+					if (snapshotFile != null)
+						new IndexSnapshot(provider.getName(), location, content.entries).write(snapshotFile);
+				}
+			}
+			catch (Exception e) {
+				if (parent == null)
+					content.messages.error("Unable to read index at URL '%s': %s", location, e);
+				else
+					content.messages.warning("Unable to read referral index at URL '%s' from parent index '%s': %s", location, parent, e);
+			}
+
+			for (Object entry : content.entries) {
+				if (entry instanceof Referral) {
+					Referral referral = (Referral) entry;
+					FutureTask<IndexContent> task = null;
+					try {
+						task = submit(new IndexReader(new URI(referral.getUrl()), location, cacheDir, connector));
+					}
+					catch (Exception e) {
+						content.messages.warning("Invalid referral URL '%s' from parent index '%s': %s", referral.getUrl(), location, e);
+					}
+					content.referrals.add(task);
+				}
+			}
+			return content;
+		}
+	}
+
+	private static FutureTask<IndexContent> submit(IndexReader reader) {
+		FutureTask<IndexContent> task = new FutureTask<IndexContent>(reader);
+		Processor.getExecutor().execute(task);
+		return task;
+	}
+
+	/**
+	 * Wait for an index and add its resources, and those of its referrals at
+	 * the place of the referral, to the index.
+	 */
+	private void merge(FutureTask<IndexContent> task) throws Exception {
+		IndexContent content;
+		try {
+			content = task.get();
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof Error)
+				throw (Error) e.getCause();
+			throw (Exception) e.getCause();
+		}
+
+		for (String message : content.messages.getErrors())
+			error("%s", message);
+		for (String message : content.messages.getWarnings())
+			warning("%s", message);
+
+		Iterator<FutureTask<IndexContent>> referrals = content.referrals.iterator();
+		for (Object entry : content.entries) {
+			if (entry instanceof Resource)
+				addResourceToIndex((Resource) entry);
+			else {
+				FutureTask<IndexContent> referral = referrals.next();
+				if (referral != null)
+					merge(referral);
+			}
+		}
 	}
 
 	static List<Resource> narrowVersionsByFilter(String pkgName, SortedMap<Version,Resource> versionMap, Filter filter) {
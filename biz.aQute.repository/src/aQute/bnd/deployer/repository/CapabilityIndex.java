@@ -1,17 +1,37 @@
 package aQute.bnd.deployer.repository;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 import org.osgi.framework.*;
 import org.osgi.resource.*;
 
-
+/**
+ * Index of capabilities by namespace. Within a namespace the capabilities are
+ * also indexed on the value of the primary attribute of that namespace, e.g.
+ * the package name for osgi.wiring.package. When the filter of a requirement
+ * demands an exact value for this attribute only the capabilities with that
+ * value are evaluated against the filter.
+ */
 public class CapabilityIndex {
 
-	private final Map<String,List<Capability>>	capabilityMap	= new HashMap<String,List<Capability>>();
+	private static final String					SERVICE_NAMESPACE	= "osgi.service";
+
+	private final Map<String,List<Capability>>	capabilityMap		= new HashMap<String,List<Capability>>();
+	private final Map<String,Map<String,List<Capability>>>	keyMap	= new HashMap<String,Map<String,List<Capability>>>();
+
+	/**
+	 * Namespaces with capabilities that have no usable primary attribute, a
+	 * requirement in such a namespace must still see all capabilities.
+	 */
+	private final Set<String>					unkeyed				= new HashSet<String>();
+	private final Map<String,Filter>			filterCache			= new ConcurrentHashMap<String,Filter>();
 
 	public void clear() {
 		capabilityMap.clear();
+		keyMap.clear();
+		unkeyed.clear();
+		filterCache.clear();
 	}
 
 	public void addResource(Resource resource) {
@@ -23,24 +43,75 @@ public class CapabilityIndex {
 			addCapability(cap);
 		}
 	}
-	
+
 	public void addCapability(Capability cap) {
-		List<Capability> list = capabilityMap.get(cap.getNamespace());
+		String namespace = cap.getNamespace();
+		List<Capability> list = capabilityMap.get(namespace);
+		if (list == null) {
+			list = new ArrayList<Capability>();
+			capabilityMap.put(namespace, list);
+		}
+		list.add(cap);
+
+		Object value = cap.getAttributes().get(getKeyAttribute(namespace));
+		Map<String,List<Capability>> keys = keyMap.get(namespace);
+		if (keys == null) {
+			keys = new HashMap<String,List<Capability>>();
+			keyMap.put(namespace, keys);
+		}
+		if (value instanceof String) {
+			addKey(keys, (String) value, cap);
+		} else if (value instanceof Collection< ? >) {
+			Set<String> done = new HashSet<String>();
+			for (Object v : (Collection< ? >) value) {
+				if (!(v instanceof String)) {
+					unkeyed.add(namespace);
+					return;
+				}
+				if (done.add((String) v))
+					addKey(keys, (String) v, cap);
+			}
+		} else if (value instanceof String[]) {
+			for (String v : new LinkedHashSet<String>(Arrays.asList((String[]) value)))
+				addKey(keys, v, cap);
+		} else
+			unkeyed.add(namespace);
+	}
+
+	private static void addKey(Map<String,List<Capability>> keys, String key, Capability cap) {
+		List<Capability> list = keys.get(key);
 		if (list == null) {
-			list = new LinkedList<Capability>();
-			capabilityMap.put(cap.getNamespace(), list);
+			list = new ArrayList<Capability>(1);
+			keys.put(key, list);
 		}
 		list.add(cap);
 	}
 
 	public void appendMatchingCapabilities(Requirement requirement, Collection< ? super Capability> capabilities) {
-		List<Capability> caps = capabilityMap.get(requirement.getNamespace());
+		String namespace = requirement.getNamespace();
+		List<Capability> caps = capabilityMap.get(namespace);
 		if (caps == null || caps.isEmpty())
 			return;
 
 		try {
 			String filterStr = requirement.getDirectives().get(Namespace.REQUIREMENT_FILTER_DIRECTIVE);
-			Filter filter = filterStr != null ? FrameworkUtil.createFilter(filterStr) : null;
+			Filter filter = null;
+			if (filterStr != null) {
+				filter = filterCache.get(filterStr);
+				if (filter == null) {
+					filter = FrameworkUtil.createFilter(filterStr);
+					filterCache.put(filterStr, filter);
+				}
+
+				if (!unkeyed.contains(namespace)) {
+					String key = getKey(filterStr, getKeyAttribute(namespace));
+					if (key != null) {
+						caps = keyMap.get(namespace).get(key);
+						if (caps == null)
+							return;
+					}
+				}
+			}
 
 			for (Capability cap : caps) {
 				boolean match;
@@ -58,4 +129,72 @@ public class CapabilityIndex {
 		}
 	}
 
+	/**
+	 * The attribute that identifies a capability in the given namespace. For
+	 * the generic OSGi namespaces this is the attribute named after the
+	 * namespace, services are identified by their objectClass.
+	 */
+	static String getKeyAttribute(String namespace) {
+		if (SERVICE_NAMESPACE.equals(namespace))
+			return Constants.OBJECTCLASS;
+		return namespace;
+	}
+
+	/**
+	 * Find the value the filter demands for the key attribute. Only a simple
+	 * {@code (key=value)} filter or such a term directly inside a top level
+	 * {@code (&...)} is recognized, all other filters return null and are
+	 * evaluated against all capabilities of the namespace.
+	 */
+	static String getKey(String filter, String attribute) {
+		int length = filter.length();
+		if (length < 2 || filter.charAt(0) != '(' || filter.charAt(length - 1) != ')')
+			return null;
+
+		if (filter.startsWith("(&")) {
+			int i = 2;
+			while (i < length - 1) {
+				if (filter.charAt(i) != '(')
+					return null;
+
+				int end = endOfTerm(filter, i);
+				if (end < 0)
+					return null;
+				String key = getKey(filter.substring(i, end + 1), attribute);
+				if (key != null)
+					return key;
+				i = end + 1;
+			}
+			return null;
+		}
+
+		int eq = filter.indexOf('=');
+		if (eq < 0 || eq != attribute.length() + 1 || !filter.regionMatches(true, 1, attribute, 0, attribute.length()))
+			return null;
+
+		String value = filter.substring(eq + 1, length - 1);
+		if (value.length() == 0 || value.indexOf('*') >= 0 || value.indexOf('\\') >= 0 || value.indexOf('(') >= 0
+				|| value.indexOf(')') >= 0 || value.trim().length() != value.length())
+			return null;
+		return value;
+	}
+
+	/**
+	 * Answer the index of the parenthesis that closes the term that starts at
+	 * the given index, or -1.
+	 */
+	private static int endOfTerm(String filter, int start) {
+		int depth = 0;
+		for (int i = start; i < filter.length(); i++) {
+			char c = filter.charAt(i);
+			if (c == '\\')
+				i++;
+			else if (c == '(')
+				depth++;
+			else if (c == ')' && --depth == 0)
+				return i;
+		}
+		return -1;
+	}
+
 }
@@ -0,0 +1,147 @@
+package aQute.bnd.deployer.repository;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+
+import aQute.lib.io.*;
+
+/**
+ * The index fragments of the files in a local repository. A fragment is valid
+ * as long as the size and the last modified time of its file are unchanged.
+ * The fragments are stored in a single file in the cache directory of the
+ * repository; when the root URI changes all fragments are discarded since the
+ * fragments contain URLs relative to the root.
+ */
+class IndexFragments {
+	static final int	VERSION	= 1;
+
+	static class Fragment {
+		final long		size;
+		final long		lastModified;
+		final String	content;
+
+		Fragment(long size, long lastModified, String content) {
+			this.size = size;
+			this.lastModified = lastModified;
+			this.content = content;
+		}
+
+		boolean isValid(File file) {
+			return file.length() == size && file.lastModified() == lastModified;
+		}
+	}
+
+	final File					file;
+	final URI					root;
+	final Map<File,Fragment>	fragments	= new TreeMap<File,Fragment>();
+
+	IndexFragments(File file, URI root) {
+		this.file = file;
+		this.root = root;
+	}
+
+	/**
+	 * Read the stored fragments, a missing or unreadable store is treated as
+	 * empty. No length in a valid store is larger than the store, a corrupt
+	 * length must not allocate arbitrary memory.
+	 */
+	void read() {
+		fragments.clear();
+		if (!file.isFile())
+			return;
+
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			try {
+				if (in.readInt() != VERSION || !root.toString().equals(in.readUTF()))
+					return;
+
+				int size = in.readInt();
+				for (int i = 0; i < size; i++) {
+					File f = new File(in.readUTF());
+					long length = in.readLong();
+					long lastModified = in.readLong();
+					int n = in.readInt();
+					if (n < 0 || n > file.length())
+						throw new IOException("Corrupt fragment length " + n);
+					byte[] content = new byte[n];
+					in.readFully(content);
+					fragments.put(f, new Fragment(length, lastModified, new String(content, "UTF-8")));
+				}
+			}
+			finally {
+				in.close();
+			}
+		}
+		catch (IOException e) {
+			fragments.clear();
+		}
+		catch (RuntimeException e) {
+			fragments.clear();
+		}
+	}
+
+	void write() throws IOException {
+		file.getParentFile().mkdirs();
+		File tmp = IO.createTempFile(file.getParentFile(), file.getName(), ".tmp");
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+			try {
+				out.writeInt(VERSION);
+				out.writeUTF(root.toString());
+				out.writeInt(fragments.size());
+				for (Map.Entry<File,Fragment> entry : fragments.entrySet()) {
+					Fragment fragment = entry.getValue();
+					out.writeUTF(entry.getKey().getPath());
+					out.writeLong(fragment.size);
+					out.writeLong(fragment.lastModified);
+					byte[] content = fragment.content.getBytes("UTF-8");
+					out.writeInt(content.length);
+					out.write(content);
+				}
+			}
+			finally {
+				out.close();
+			}
+			IO.rename(tmp, file);
+		}
+		finally {
+			if (tmp.exists())
+				IO.delete(tmp);
+		}
+	}
+
+	/**
+	 * Remove the fragments of files that no longer exist and answer the files
+	 * that have no valid fragment.
+	 *
+	 * @param files
+	 *            all files of the repository
+	 * @param changed
+	 *            files that must be indexed again even if they look unchanged
+	 */
+	Set<File> update(Set<File> files, Collection<File> changed) {
+		fragments.keySet().retainAll(files);
+		fragments.keySet().removeAll(changed);
+
+		Set<File> stale = new HashSet<File>();
+		for (File f : files) {
+			Fragment fragment = fragments.get(f);
+			if (fragment == null || !fragment.isValid(f))
+				stale.add(f);
+		}
+		return stale;
+	}
+
+	void put(File f, long size, long lastModified, String content) {
+		fragments.put(f, new Fragment(size, lastModified, content));
+	}
+
+	List<String> getContents() {
+		List<String> contents = new ArrayList<String>(fragments.size());
+		for (Fragment fragment : fragments.values())
+			contents.add(fragment.content);
+		return contents;
+	}
+}
@@ -0,0 +1,250 @@
+package aQute.bnd.deployer.repository;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.Map.Entry;
+
+import org.osgi.framework.Version;
+import org.osgi.resource.*;
+
+import aQute.bnd.deployer.repository.api.*;
+import aQute.bnd.osgi.resource.*;
+
+/**
+ * A compact binary form of a parsed repository index. The snapshot holds the
+ * resources and referrals in document order together with the name of the
+ * content provider that parsed the index and the base URI that relative
+ * content URLs were resolved against. It is stored under the SHA-256 of the
+ * index file so an unchanged index can be loaded without parsing the XML
+ * again. The directory of a snapshot only holds the snapshots of one index,
+ * writing a snapshot deletes the snapshots of earlier versions of the index.
+ * <p>
+ * Only the attribute types the content providers create are supported: String,
+ * Version, Long, Double, URI, and lists of them. A snapshot is not written
+ * when a resource has any other attribute type.
+ */
+class IndexSnapshot {
+	static final int	VERSION		= 1;
+
+	static final int	RESOURCE	= 0;
+	static final int	REFERRAL	= 1;
+
+	static final int	STRING		= 0;
+	static final int	LONG		= 1;
+	static final int	DOUBLE		= 2;
+	static final int	OSGI_VERSION	= 3;
+	static final int	URI_TYPE	= 4;
+	static final int	LIST		= 5;
+
+	final String		provider;
+	final URI			base;
+
+	/**
+	 * The {@link Resource} and {@link Referral} objects of the index
+	 */
+	final List<Object>	entries;
+
+	IndexSnapshot(String provider, URI base, List<Object> entries) {
+		this.provider = provider;
+		this.base = base;
+		this.entries = entries;
+	}
+
+	/**
+	 * Read a snapshot, answer null if it does not exist or cannot be read.
+	 */
+	static IndexSnapshot read(File file) {
+		if (!file.isFile())
+			return null;
+
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			try {
+				if (in.readInt() != VERSION)
+					return null;
+
+				String provider = in.readUTF();
+				URI base = new URI(in.readUTF());
+				int size = in.readInt();
+				List<Object> entries = new ArrayList<Object>(size);
+				for (int i = 0; i < size; i++) {
+					switch (in.readByte()) {
+						case RESOURCE :
+							entries.add(readResource(in));
+							break;
+						case REFERRAL :
+							String url = in.readBoolean() ? in.readUTF() : null;
+							entries.add(new Referral(url, in.readInt()));
+							break;
+						default :
+							return null;
+					}
+				}
+				return new IndexSnapshot(provider, base, entries);
+			}
+			finally {
+				in.close();
+			}
+		}
+		catch (Exception e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Write the snapshot to a temporary file and rename it into place so a
+	 * concurrent reader never sees a partial snapshot. The other snapshots in
+	 * the directory are then deleted. Failures are ignored, the snapshot is
+	 * only an optimization.
+	 */
+	void write(File file) {
+		File parent = file.getParentFile();
+		parent.mkdirs();
+		File tmp = null;
+		try {
+			tmp = File.createTempFile(file.getName(), ".tmp", parent);
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+			try {
+				out.writeInt(VERSION);
+				out.writeUTF(provider);
+				out.writeUTF(base.toString());
+				out.writeInt(entries.size());
+				for (Object entry : entries) {
+					if (entry instanceof Resource) {
+						out.writeByte(RESOURCE);
+						writeResource(out, (Resource) entry);
+					} else {
+						Referral referral = (Referral) entry;
+						out.writeByte(REFERRAL);
+						out.writeBoolean(referral.getUrl() != null);
+						if (referral.getUrl() != null)
+							out.writeUTF(referral.getUrl());
+						out.writeInt(referral.getDepth());
+					}
+				}
+			}
+			finally {
+				out.close();
+			}
+			if (file.exists())
+				file.delete();
+			if (tmp.renameTo(file)) {
+				tmp = null;
+				for (File old : parent.listFiles()) {
+					if (!old.equals(file) && !old.getName().endsWith(".tmp"))
+						old.delete();
+				}
+			}
+		}
+		catch (IOException e) {
+			// Ignore, the index is parsed again next time
+		}
+		finally {
+			if (tmp != null)
+				tmp.delete();
+		}
+	}
+
+	private static void writeResource(DataOutputStream out, Resource resource) throws IOException {
+		List<Capability> capabilities = resource.getCapabilities(null);
+		out.writeInt(capabilities.size());
+		for (Capability capability : capabilities)
+			writeCapReq(out, capability.getNamespace(), capability.getAttributes(), capability.getDirectives());
+
+		List<Requirement> requirements = resource.getRequirements(null);
+		out.writeInt(requirements.size());
+		for (Requirement requirement : requirements)
+			writeCapReq(out, requirement.getNamespace(), requirement.getAttributes(), requirement.getDirectives());
+	}
+
+	private static Resource readResource(DataInputStream in) throws Exception {
+		ResourceBuilder builder = new ResourceBuilder();
+		int capabilities = in.readInt();
+		for (int i = 0; i < capabilities; i++)
+			builder.addCapability(readCapReq(in));
+		int requirements = in.readInt();
+		for (int i = 0; i < requirements; i++)
+			builder.addRequirement(readCapReq(in));
+		return builder.build();
+	}
+
+	private static void writeCapReq(DataOutputStream out, String namespace, Map<String,Object> attributes,
+			Map<String,String> directives) throws IOException {
+		out.writeUTF(namespace);
+		out.writeInt(attributes.size());
+		for (Entry<String,Object> entry : attributes.entrySet()) {
+			out.writeUTF(entry.getKey());
+			writeValue(out, entry.getValue(), true);
+		}
+		out.writeInt(directives.size());
+		for (Entry<String,String> entry : directives.entrySet()) {
+			out.writeUTF(entry.getKey());
+			out.writeUTF(entry.getValue());
+		}
+	}
+
+	private static CapReqBuilder readCapReq(DataInputStream in) throws Exception {
+		CapReqBuilder builder = new CapReqBuilder(in.readUTF());
+		int attributes = in.readInt();
+		for (int i = 0; i < attributes; i++) {
+			String name = in.readUTF();
+			builder.addAttribute(name, readValue(in));
+		}
+		int directives = in.readInt();
+		for (int i = 0; i < directives; i++) {
+			String name = in.readUTF();
+			builder.addDirective(name, in.readUTF());
+		}
+		return builder;
+	}
+
+	private static void writeValue(DataOutputStream out, Object value, boolean allowList) throws IOException {
+		if (value instanceof String) {
+			out.writeByte(STRING);
+			out.writeUTF((String) value);
+		} else if (value instanceof Long) {
+			out.writeByte(LONG);
+			out.writeLong((Long) value);
+		} else if (value instanceof Double) {
+			out.writeByte(DOUBLE);
+			out.writeDouble((Double) value);
+		} else if (value instanceof Version) {
+			out.writeByte(OSGI_VERSION);
+			out.writeUTF(value.toString());
+		} else if (value instanceof URI) {
+			out.writeByte(URI_TYPE);
+			out.writeUTF(value.toString());
+		} else if (allowList && value instanceof List< ? >) {
+			List< ? > list = (List< ? >) value;
+			out.writeByte(LIST);
+			out.writeInt(list.size());
+			for (Object member : list)
+				writeValue(out, member, false);
+		} else
+			throw new IOException("Cannot store an attribute of type " + (value == null ? null : value.getClass()));
+	}
+
+	private static Object readValue(DataInputStream in) throws Exception {
+		switch (in.readByte()) {
+			case STRING :
+				return in.readUTF();
+			case LONG :
+				return in.readLong();
+			case DOUBLE :
+				return in.readDouble();
+			case OSGI_VERSION :
+				return Version.parseVersion(in.readUTF());
+			case URI_TYPE :
+				return new URI(in.readUTF());
+			case LIST :
+				int size = in.readInt();
+				List<Object> list = new LinkedList<Object>();
+				for (int i = 0; i < size; i++)
+					list.add(readValue(in));
+				return list;
+			default :
+				throw new IOException("Invalid snapshot");
+		}
+	}
+}
@@ -21,6 +21,7 @@ import aQute.libg.cryptography.*;
 public class LocalIndexedRepo extends FixedIndexedRepo implements Refreshable, Participant {
 
 	private static final String			CACHE_PATH				= ".cache";
+	private static final String			FRAGMENTS_EXTENSION		= ".fragments";
 	public static final String			PROP_LOCAL_DIR			= "local";
 	public static final String			PROP_READONLY			= "readonly";
 	public static final String			PROP_PRETTY				= "pretty";
@@ -79,7 +80,7 @@ public class LocalIndexedRepo extends FixedIndexedRepo implements Refreshable, P
 					indexes.add(indexFile.toURI());
 				} else {
 					if (contentProvider.supportsGeneration()) {
-						generateIndex(indexFile, contentProvider);
+						generateIndex(indexFile, contentProvider, Collections.<File> emptySet());
 						indexes.add(indexFile.toURI());
 					}
 				}
@@ -105,7 +106,11 @@ public class LocalIndexedRepo extends FixedIndexedRepo implements Refreshable, P
 		return indexFile;
 	}
 
-	private synchronized void regenerateAllIndexes() {
+	/**
+	 * @param changed
+	 *            files that were added or replaced since the last generation
+	 */
+	private synchronized void regenerateAllIndexes(Collection<File> changed) {
 		for (IRepositoryContentProvider provider : generatingProviders) {
 			if (!provider.supportsGeneration()) {
 				logService.log(LogService.LOG_WARNING,
@@ -114,7 +119,7 @@ public class LocalIndexedRepo extends FixedIndexedRepo implements Refreshable, P
 			}
 			File indexFile = getIndexFile(provider);
 			try {
-				generateIndex(indexFile, provider);
+				generateIndex(indexFile, provider, changed);
 			}
 			catch (Exception e) {
 				logService.log(LogService.LOG_ERROR, String.format(
@@ -124,7 +129,8 @@ public class LocalIndexedRepo extends FixedIndexedRepo implements Refreshable, P
 		}
 	}
 
-	private synchronized void generateIndex(File indexFile, IRepositoryContentProvider provider) throws Exception {
+	private synchronized void generateIndex(File indexFile, IRepositoryContentProvider provider, Collection<File> changed)
+			throws Exception {
 		if (indexFile.exists() && !indexFile.isFile())
 			throw new IllegalArgumentException(String.format(
 					"Cannot create file: '%s' already exists but is not a plain file.", indexFile.getAbsoluteFile()));
@@ -141,7 +147,10 @@ public class LocalIndexedRepo extends FixedIndexedRepo implements Refreshable, P
 			out = new FileOutputStream(indexFile);
 
 			URI rootUri = storageDir.getCanonicalFile().toURI();
-			provider.generateIndex(allFiles, out, this.getName(), rootUri, pretty, registry, logService);
+			if (provider instanceof IRepositoryIncrementalContentProvider)
+				generateIncrementalIndex(allFiles, changed, out, rootUri, (IRepositoryIncrementalContentProvider) provider);
+			else
+				provider.generateIndex(allFiles, out, this.getName(), rootUri, pretty, registry, logService);
 		}
 		finally {
 			IO.close(out);
@@ -163,6 +172,47 @@ public class LocalIndexedRepo extends FixedIndexedRepo implements Refreshable, P
 		}
 	}
 
+	/**
+	 * Only index the files that changed since the last generation, the index
+	 * fragments of the other files are taken from the cache.
+	 */
+	private void generateIncrementalIndex(Set<File> allFiles, Collection<File> changed, OutputStream out, URI rootUri,
+			IRepositoryIncrementalContentProvider provider) throws Exception {
+		IndexFragments fragments = new IndexFragments(new File(cacheDir, provider.getName() + FRAGMENTS_EXTENSION),
+				rootUri);
+		fragments.read();
+
+		Set<File> canonical = new HashSet<File>();
+		for (File file : changed)
+			canonical.add(file.getCanonicalFile());
+		Set<File> stale = fragments.update(allFiles, canonical);
+
+		if (!stale.isEmpty()) {
+			Map<File,long[]> stamps = new HashMap<File,long[]>();
+			for (File file : stale)
+				stamps.put(file, new long[] {
+						file.length(), file.lastModified()
+				});
+
+			Map<File,String> generated = provider.generateFragments(stale, rootUri, pretty, registry, logService);
+			for (Map.Entry<File,String> entry : generated.entrySet()) {
+				long[] stamp = stamps.get(entry.getKey());
+				if (stamp != null)
+					fragments.put(entry.getKey(), stamp[0], stamp[1], entry.getValue());
+			}
+		}
+
+		provider.generateIndexFromFragments(fragments.getContents(), out, this.getName(), pretty);
+
+		try {
+			fragments.write();
+		}
+		catch (IOException e) {
+			logService.log(LogService.LOG_WARNING,
+					String.format("Unable to save the index fragments for repository type %s", provider.getName()), e);
+		}
+	}
+
 	private void gatherFiles(Set<File> allFiles) throws Exception {
 		if (!storageDir.isDirectory())
 			return;
@@ -185,12 +235,17 @@ public class LocalIndexedRepo extends FixedIndexedRepo implements Refreshable, P
 
 	private synchronized void finishPut() throws Exception {
 		reset();
-		regenerateAllIndexes();
 
 		List<URI> clone = new ArrayList<URI>(newFilesInCoordination);
 		synchronized (newFilesInCoordination) {
 			newFilesInCoordination.clear();
 		}
+
+		List<File> changed = new ArrayList<File>(clone.size());
+		for (URI entry : clone)
+			changed.add(new File(entry));
+		regenerateAllIndexes(changed);
+
 		for (URI entry : clone) {
 			File file = new File(entry);
 			fireBundleAdded(file);
@@ -0,0 +1,34 @@
+package aQute.bnd.deployer.repository.api;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+
+import org.osgi.service.log.*;
+
+import aQute.bnd.service.*;
+
+/**
+ * A content provider that can index files one at a time. A repository can
+ * keep the fragment of each file and, when only some files changed, only
+ * index those files and combine the new fragments with the kept ones.
+ */
+public interface IRepositoryIncrementalContentProvider extends IRepositoryContentProvider {
+
+	/**
+	 * Generate the index fragment, i.e. the resource description, of each of
+	 * the given files.
+	 *
+	 * @return the fragment of each file
+	 */
+	Map<File,String> generateFragments(Set<File> files, URI rootUri, boolean pretty, Registry registry,
+			LogService log) throws Exception;
+
+	/**
+	 * Write a complete index that consists of the given fragments, in the same
+	 * format as {@link #generateIndex} writes for the same value of pretty.
+	 */
+	void generateIndexFromFragments(Collection<String> fragments, OutputStream output, String repoName,
+			boolean pretty) throws Exception;
+
+}
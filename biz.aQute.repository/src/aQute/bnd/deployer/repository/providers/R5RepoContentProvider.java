@@ -6,6 +6,7 @@ import static javax.xml.stream.XMLStreamConstants.*;
 import java.io.*;
 import java.net.*;
 import java.util.*;
+import java.util.zip.*;
 
 import javax.xml.stream.*;
 
@@ -20,7 +21,7 @@ import aQute.bnd.deployer.repository.api.*;
 import aQute.bnd.osgi.resource.*;
 import aQute.bnd.service.*;
 
-public class R5RepoContentProvider implements IRepositoryContentProvider {
+public class R5RepoContentProvider implements IRepositoryIncrementalContentProvider {
 
 	public static final String	NAME					= "R5";
 
@@ -244,6 +245,84 @@ public class R5RepoContentProvider implements IRepositoryContentProvider {
 	}
 
 	public void generateIndex(Set<File> files, OutputStream output, String repoName, URI baseUri, boolean pretty, Registry registry, LogService log) throws Exception {
+		RepoIndex indexer = createIndexer(registry, log);
+
+		Map<String,String> config = new HashMap<String,String>();
+		config.put(ResourceIndexer.REPOSITORY_NAME, repoName);
+		config.put(ResourceIndexer.ROOT_URL, baseUri.toString());
+		// RepoIndex writes a pretty index when the key is present at all
+		if (pretty)
+			config.put(ResourceIndexer.PRETTY, Boolean.TRUE.toString());
+
+		indexer.index(files, output, config);
+	}
+
+	public Map<File,String> generateFragments(Set<File> files, URI rootUri, boolean pretty, Registry registry, LogService log) throws Exception {
+		RepoIndex indexer = createIndexer(registry, log);
+
+		Map<String,String> config = new HashMap<String,String>();
+		config.put(ResourceIndexer.ROOT_URL, rootUri.toString());
+		config.put(ResourceIndexer.PRETTY, Boolean.toString(pretty));
+
+		Map<File,String> fragments = new HashMap<File,String>();
+		for (File file : files) {
+			StringWriter writer = new StringWriter();
+			indexer.indexFragment(Collections.singleton(file), writer, config);
+			fragments.put(file, writer.toString());
+		}
+		return fragments;
+	}
+
+	/**
+	 * Writes the index like {@link RepoIndex} does. A pretty index is plain
+	 * XML with the fragments indented one level inside the repository element.
+	 * Otherwise the index is compressed with gzip and has no indentation; the
+	 * fragments are always pretty so their lines are joined without the
+	 * indent.
+	 */
+	public void generateIndexFromFragments(Collection<String> fragments, OutputStream output, String repoName,
+			boolean pretty) throws Exception {
+		if (repoName == null)
+			repoName = ResourceIndexer.REPOSITORYNAME_DEFAULT;
+
+		String eol = pretty ? String.format("%n") : "";
+		String indent = pretty ? "  " : "";
+		GZIPOutputStream gzip = pretty ? null : new GZIPOutputStream(output);
+		Writer writer = new BufferedWriter(new OutputStreamWriter(pretty ? output : gzip, "UTF-8"));
+		writer.write("<?xml version='1.0' encoding='utf-8'?>");
+		writer.write(eol);
+		writer.write("<" + TAG_REPOSITORY + " increment='" + System.currentTimeMillis() + "' name='" + escape(repoName)
+				+ "' xmlns='" + NS_URI + "'>");
+		writer.write(eol);
+		for (String fragment : fragments) {
+			int start = 0;
+			while (start < fragment.length()) {
+				int end = fragment.indexOf('\n', start);
+				if (end < 0)
+					end = fragment.length();
+				int from = start;
+				if (!pretty) {
+					while (from < end && Character.isWhitespace(fragment.charAt(from)))
+						from++;
+				}
+				int to = end;
+				if (to > from && fragment.charAt(to - 1) == '\r')
+					to--;
+				if (to > from) {
+					writer.write(indent);
+					writer.write(fragment, from, to - from);
+					writer.write(eol);
+				}
+				start = end + 1;
+			}
+		}
+		writer.write("</" + TAG_REPOSITORY + ">");
+		writer.flush();
+		if (gzip != null)
+			gzip.finish();
+	}
+
+	private static RepoIndex createIndexer(Registry registry, LogService log) throws InvalidSyntaxException {
 		RepoIndex indexer;
 		if (log != null)
 			indexer = new RepoIndex(log);
@@ -258,12 +337,33 @@ public class R5RepoContentProvider implements IRepositoryContentProvider {
 				indexer.addAnalyzer(analyzer, null);
 			}
 		}
+		return indexer;
+	}
 
-		Map<String,String> config = new HashMap<String,String>();
-		config.put(ResourceIndexer.REPOSITORY_NAME, repoName);
-		config.put(ResourceIndexer.ROOT_URL, baseUri.toString());
-		config.put(ResourceIndexer.PRETTY, Boolean.toString(pretty));
-
-		indexer.index(files, output, config);
+	private static String escape(String value) {
+		StringBuilder sb = new StringBuilder(value.length());
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+				case '<' :
+					sb.append("&lt;");
+					break;
+				case '>' :
+					sb.append("&gt;");
+					break;
+				case '&' :
+					sb.append("&amp;");
+					break;
+				case '\'' :
+					sb.append("&apos;");
+					break;
+				case '"' :
+					sb.append("&quot;");
+					break;
+				default :
+					sb.append(c);
+			}
+		}
+		return sb.toString();
 	}
 }
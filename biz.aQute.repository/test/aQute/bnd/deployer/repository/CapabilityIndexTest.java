@@ -0,0 +1,96 @@
+package aQute.bnd.deployer.repository;
+
+import java.util.*;
+
+import junit.framework.*;
+
+import org.osgi.framework.*;
+import org.osgi.resource.*;
+
+import aQute.bnd.osgi.resource.*;
+
+public class CapabilityIndexTest extends TestCase {
+
+	public static void testGetKey() {
+		assertEquals("org.example", CapabilityIndex.getKey("(osgi.wiring.package=org.example)", "osgi.wiring.package"));
+		assertEquals("org.example", CapabilityIndex.getKey(
+				"(&(osgi.wiring.package=org.example)(version>=1.0.0)(!(version>=2.0.0)))", "osgi.wiring.package"));
+		assertEquals("org.example",
+				CapabilityIndex.getKey("(&(version>=1.0.0)(OSGI.WIRING.PACKAGE=org.example))", "osgi.wiring.package"));
+		assertEquals("org.example", CapabilityIndex.getKey("(&(&(osgi.identity=org.example)))", "osgi.identity"));
+
+		assertNull(CapabilityIndex.getKey("(osgi.wiring.package=org.*)", "osgi.wiring.package"));
+		assertNull(CapabilityIndex.getKey("(osgi.wiring.package~=org.example)", "osgi.wiring.package"));
+		assertNull(CapabilityIndex.getKey("(osgi.wiring.package>=org.example)", "osgi.wiring.package"));
+		assertNull(CapabilityIndex.getKey("(|(osgi.wiring.package=a)(osgi.wiring.package=b))", "osgi.wiring.package"));
+		assertNull(CapabilityIndex.getKey("(!(osgi.wiring.package=a))", "osgi.wiring.package"));
+		assertNull(CapabilityIndex.getKey("(&(!(osgi.wiring.package=a)))", "osgi.wiring.package"));
+		assertNull(CapabilityIndex.getKey("(osgi.wiring.packagex=a)", "osgi.wiring.package"));
+		assertNull(CapabilityIndex.getKey("(osgi.wiring.package=a\\)b)", "osgi.wiring.package"));
+		assertNull(CapabilityIndex.getKey("(osgi.wiring.package= a)", "osgi.wiring.package"));
+	}
+
+	public static void testPackageLookup() {
+		CapabilityIndex index = new CapabilityIndex();
+		Resource r = new ResourceBuilder().build();
+		index.addCapability(pkg(r, "org.example.a", "1.0.0"));
+		index.addCapability(pkg(r, "org.example.a", "2.0.0"));
+		index.addCapability(pkg(r, "org.example.b", "1.0.0"));
+
+		assertEquals(1, find(index, CapReqBuilder.createPackageRequirement("org.example.a", "[1,2)")).size());
+		assertEquals(2, find(index, CapReqBuilder.createPackageRequirement("org.example.a", null)).size());
+		assertEquals(0, find(index, CapReqBuilder.createPackageRequirement("org.example.c", null)).size());
+		assertEquals(3, find(index, filter("osgi.wiring.package", "(osgi.wiring.package=org.example.*)")).size());
+
+		List<Capability> all = find(index, new CapReqBuilder("osgi.wiring.package"));
+		assertEquals(3, all.size());
+		assertEquals("2.0.0", all.get(1).getAttributes().get("version").toString());
+
+		index.clear();
+		assertEquals(0, find(index, CapReqBuilder.createPackageRequirement("org.example.a", null)).size());
+	}
+
+	public static void testServiceLookup() {
+		CapabilityIndex index = new CapabilityIndex();
+		Resource r = new ResourceBuilder().build();
+		index.addCapability(new CapReqBuilder("osgi.service").setResource(r)
+				.addAttribute(Constants.OBJECTCLASS, Arrays.asList("org.example.A", "org.example.B"))
+				.buildCapability());
+		index.addCapability(new CapReqBuilder("osgi.service").setResource(r)
+				.addAttribute(Constants.OBJECTCLASS, "org.example.B").buildCapability());
+
+		assertEquals(1, find(index, filter("osgi.service", "(objectClass=org.example.A)")).size());
+		assertEquals(2, find(index, filter("osgi.service", "(objectClass=org.example.B)")).size());
+		assertEquals(0, find(index, filter("osgi.service", "(objectClass=org.example.C)")).size());
+	}
+
+	/**
+	 * A capability without the primary attribute must still be found
+	 */
+	public static void testUnkeyed() {
+		CapabilityIndex index = new CapabilityIndex();
+		Resource r = new ResourceBuilder().build();
+		index.addCapability(new CapReqBuilder("osgi.extender").setResource(r).addAttribute("other", "x")
+				.buildCapability());
+		index.addCapability(new CapReqBuilder("osgi.extender").setResource(r).addAttribute("osgi.extender", "y")
+				.buildCapability());
+
+		assertEquals(1, find(index, filter("osgi.extender", "(other=x)")).size());
+		assertEquals(1, find(index, filter("osgi.extender", "(osgi.extender=y)")).size());
+	}
+
+	private static Capability pkg(Resource r, String name, String version) {
+		return new CapReqBuilder("osgi.wiring.package").setResource(r).addAttribute("osgi.wiring.package", name)
+				.addAttribute("version", new Version(version)).buildCapability();
+	}
+
+	private static CapReqBuilder filter(String namespace, String filter) {
+		return new CapReqBuilder(namespace).addDirective(Namespace.REQUIREMENT_FILTER_DIRECTIVE, filter);
+	}
+
+	private static List<Capability> find(CapabilityIndex index, CapReqBuilder requirement) {
+		List<Capability> result = new ArrayList<Capability>();
+		index.appendMatchingCapabilities(requirement.buildSyntheticRequirement(), result);
+		return result;
+	}
+}
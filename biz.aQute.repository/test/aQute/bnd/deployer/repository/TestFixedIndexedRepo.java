@@ -5,7 +5,11 @@ import java.util.*;
 import java.util.concurrent.atomic.*;
 
 import junit.framework.*;
+
+import org.osgi.resource.*;
+
 import aQute.bnd.osgi.*;
+import aQute.bnd.osgi.resource.*;
 import aQute.bnd.service.*;
 import aQute.bnd.version.*;
 import aQute.lib.io.*;
@@ -87,6 +91,86 @@ public class TestFixedIndexedRepo extends TestCase {
 		assertEquals(0, reporter.getWarnings().size());
 	}
 
+	public static void testIndexSnapshot() throws Exception {
+		Processor reporter = new Processor();
+		Map<String,String> props = new HashMap<String,String>();
+		props.put("name", "index2");
+		props.put("locations", new File("testdata/index2.xml").toURI().toString());
+		props.put(FixedIndexedRepo.PROP_CACHE, tmp.getAbsolutePath());
+
+		FixedIndexedRepo repo = new FixedIndexedRepo();
+		repo.setProperties(props);
+		repo.setReporter(reporter);
+		assertEquals(56, countBundles(repo));
+
+		File[] locations = new File(tmp, ".snapshots").listFiles();
+		assertEquals(1, locations.length);
+		File[] snapshots = locations[0].listFiles();
+		assertEquals(1, snapshots.length);
+		IndexSnapshot snapshot = IndexSnapshot.read(snapshots[0]);
+		assertNotNull(snapshot);
+		assertEquals("R5", snapshot.provider);
+		assertEquals(56, snapshot.entries.size());
+
+		FixedIndexedRepo cached = new FixedIndexedRepo();
+		cached.setProperties(props);
+		cached.setReporter(reporter);
+		assertEquals(56, countBundles(cached));
+		assertEquals(repo.list(null), cached.list(null));
+		for (String bsn : repo.list(null))
+			assertEquals(repo.versions(bsn).toString(), cached.versions(bsn).toString());
+
+		Requirement requirement = CapReqBuilder.createPackageRequirement("org.apache.commons.logging", null)
+				.buildSyntheticRequirement();
+		Collection<Capability> expected = repo.findProviders(Collections.singleton(requirement)).get(requirement);
+		Collection<Capability> actual = cached.findProviders(Collections.singleton(requirement)).get(requirement);
+		assertEquals(1, expected.size());
+		assertEquals(expected.size(), actual.size());
+		assertEquals(expected.iterator().next().getAttributes(), actual.iterator().next().getAttributes());
+
+		assertEquals(0, reporter.getErrors().size());
+		assertEquals(0, reporter.getWarnings().size());
+	}
+
+	/**
+	 * A changed index replaces the snapshot of the old index
+	 */
+	public static void testIndexSnapshotReplaced() throws Exception {
+		Processor reporter = new Processor();
+		File index = new File(tmp, "index.xml");
+		File cache = new File(tmp, "cache");
+		cache.mkdirs();
+		IO.copy(new File("testdata/index1.xml"), index);
+
+		Map<String,String> props = new HashMap<String,String>();
+		props.put("name", "index");
+		props.put("locations", index.toURI().toString());
+		props.put(FixedIndexedRepo.PROP_CACHE, cache.getAbsolutePath());
+
+		FixedIndexedRepo repo = new FixedIndexedRepo();
+		repo.setProperties(props);
+		repo.setReporter(reporter);
+		assertEquals(2, repo.list(null).size());
+
+		File[] locations = new File(cache, ".snapshots").listFiles();
+		assertEquals(1, locations.length);
+		File[] first = locations[0].listFiles();
+		assertEquals(1, first.length);
+
+		IO.copy(new File("testdata/index2.xml"), index);
+		repo = new FixedIndexedRepo();
+		repo.setProperties(props);
+		repo.setReporter(reporter);
+		assertEquals(56, countBundles(repo));
+
+		File[] second = locations[0].listFiles();
+		assertEquals(1, second.length);
+		assertFalse(first[0].equals(second[0]));
+
+		assertEquals(0, reporter.getErrors().size());
+		assertEquals(0, reporter.getWarnings().size());
+	}
+
 	public static void testObr() throws Exception {
 		Processor reporter = new Processor();
 		FixedIndexedRepo repo = new FixedIndexedRepo();
@@ -1,11 +1,17 @@
 package aQute.bnd.deployer.repository;
 
 import java.io.*;
+import java.net.*;
 import java.util.*;
+import java.util.zip.*;
 
 import junit.framework.*;
+
+import org.osgi.service.log.*;
+
 import test.lib.*;
 import test.repository.*;
+import aQute.bnd.deployer.repository.providers.*;
 import aQute.bnd.osgi.*;
 import aQute.bnd.service.*;
 import aQute.bnd.service.RepositoryPlugin.PutResult;
@@ -70,6 +76,76 @@ public class TestLocalIndexGeneration extends TestCase {
 		assertEquals(deployedFile.getAbsoluteFile(), files[0]);
 	}
 	
+	public static void testIncrementalIndex() throws Exception {
+		CountingProvider provider = new CountingProvider();
+		MockRegistry registry = new MockRegistry();
+		registry.addPlugin(provider);
+
+		LocalIndexedRepo repo = new LocalIndexedRepo();
+		repo.setRegistry(registry);
+		repo.setReporter(reporter);
+		Map<String,String> config = new HashMap<String,String>();
+		config.put("local", outputDir.getAbsolutePath());
+		config.put("type", provider.getName());
+		repo.setProperties(config);
+
+		repo.put(new BufferedInputStream(new FileInputStream("testdata/bundles/name.njbartlett.osgi.emf.minimal-2.6.1.jar")), new RepositoryPlugin.PutOptions());
+		assertEquals(1, provider.indexed);
+		repo.put(new BufferedInputStream(new FileInputStream("testdata/bundles/name.njbartlett.osgi.emf.xmi-2.5.0.jar")), new RepositoryPlugin.PutOptions());
+		assertEquals(2, provider.indexed);
+
+		assertTrue(IO.getFile("generated/testoutput/.cache/" + provider.getName() + ".fragments").isFile());
+
+		AbstractIndexedRepo repo2 = createRepoForIndex(IO.getFile("generated/testoutput/index.xml.gz"));
+		assertEquals(1, repo2.get("name.njbartlett.osgi.emf.minimal", null).length);
+		assertEquals(1, repo2.get("name.njbartlett.osgi.emf.xmi", null).length);
+
+		// The index is compressed and the same as a full index of the files
+		String incremental = IO.collect(new GZIPInputStream(new FileInputStream(
+				IO.getFile("generated/testoutput/index.xml.gz"))), "UTF-8");
+		Set<File> files = new TreeSet<File>();
+		files.add(IO.getFile("generated/testoutput/name.njbartlett.osgi.emf.minimal/name.njbartlett.osgi.emf.minimal-2.6.1.jar")
+				.getCanonicalFile());
+		files.add(IO.getFile("generated/testoutput/name.njbartlett.osgi.emf.xmi/name.njbartlett.osgi.emf.xmi-2.5.0.jar")
+				.getCanonicalFile());
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new R5RepoContentProvider().generateIndex(files, out, repo.getName(), outputDir.getCanonicalFile().toURI(),
+				false, null, null);
+		String full = IO.collect(new GZIPInputStream(new ByteArrayInputStream(out.toByteArray())), "UTF-8");
+		assertEquals(full.replaceAll("increment='\\d+'", ""), incremental.replaceAll("increment='\\d+'", ""));
+
+		// a registered provider is reported as a duplicate on the next init
+		assertEquals(0, reporter.getErrors().size());
+		reporter.clear();
+	}
+
+	// A corrupt fragment store is read as empty
+	public static void testCorruptFragments() throws Exception {
+		File store = IO.getFile("generated/testoutput/.cache/R5.fragments");
+		store.getParentFile().mkdirs();
+		URI root = outputDir.getCanonicalFile().toURI();
+		for (int length : new int[] {
+				Integer.MAX_VALUE, -1
+		}) {
+			DataOutputStream out = new DataOutputStream(new FileOutputStream(store));
+			try {
+				out.writeInt(IndexFragments.VERSION);
+				out.writeUTF(root.toString());
+				out.writeInt(1);
+				out.writeUTF("a.jar");
+				out.writeLong(1);
+				out.writeLong(1);
+				out.writeInt(length);
+			}
+			finally {
+				out.close();
+			}
+			IndexFragments fragments = new IndexFragments(store, root);
+			fragments.read();
+			assertTrue(fragments.getContents().isEmpty());
+		}
+	}
+
 	public static void testOverwrite() throws Exception {
 		config.put("overwrite", "false");
 		repo.setProperties(config);
@@ -145,6 +221,22 @@ public class TestLocalIndexGeneration extends TestCase {
 
 	// UTILS
 
+	static class CountingProvider extends R5RepoContentProvider {
+		int	indexed;
+
+		@Override
+		public String getName() {
+			return "CountingR5";
+		}
+
+		@Override
+		public Map<File,String> generateFragments(Set<File> files, URI rootUri, boolean pretty, Registry registry,
+				LogService log) throws Exception {
+			indexed += files.size();
+			return super.generateFragments(files, rootUri, pretty, registry, log);
+		}
+	}
+
 	private static AbstractIndexedRepo createRepoForIndex(File index) {
 		FixedIndexedRepo newRepo = new FixedIndexedRepo();
 
@@ -5,6 +5,7 @@ import java.util.*;
 import java.util.concurrent.*;
 
 import org.osgi.framework.*;
+import org.osgi.service.startlevel.*;
 
 public class TestActivator implements BundleActivator {
 
@@ -113,6 +114,42 @@ public class TestActivator implements BundleActivator {
 			props.setProperty("main.thread", "true");
 			context.registerService(Callable.class.getName(), r, props);
 			// throws exception ...
+		} else if ("startlevel".equals(p)) {
+			ServiceReference ref = context.getServiceReference(StartLevel.class.getName());
+			final StartLevel startlevel = (StartLevel) context.getService(ref);
+			final List<Integer> levels = Collections.synchronizedList(new ArrayList<Integer>());
+			context.addBundleListener(new SynchronousBundleListener() {
+
+				public void bundleChanged(BundleEvent event) {
+					if (event.getType() == BundleEvent.STARTED)
+						levels.add(startlevel.getBundleStartLevel(event.getBundle()));
+				}
+
+			});
+			Callable<Integer> r = new Callable<Integer>() {
+
+				public Integer call() throws Exception {
+					// All bundles must be refreshed and started before main
+					for (Bundle b : context.getBundles()) {
+						if (b.getHeaders().get(Constants.FRAGMENT_HOST) != null)
+							continue;
+						if (b.getState() != Bundle.ACTIVE && b.getState() != Bundle.STARTING)
+							return -1;
+					}
+					// A start level is started after the lower start levels
+					int last = 0;
+					for (int level : levels) {
+						if (level < last)
+							return -2;
+						last = level;
+					}
+					return 42;
+				}
+
+			};
+			Properties props = new Properties();
+			props.setProperty("main.thread", "true");
+			context.registerService(Callable.class.getName(), r, props);
 		}
 
 		System.err.println("Done " + p);